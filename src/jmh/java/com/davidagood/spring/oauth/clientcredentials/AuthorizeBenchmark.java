@@ -0,0 +1,65 @@
+package com.davidagood.spring.oauth.clientcredentials;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.security.oauth2.client.AuthorizedClientServiceOAuth2AuthorizedClientManager;
+import org.springframework.security.oauth2.client.OAuth2AuthorizeRequest;
+import org.springframework.security.oauth2.client.OAuth2AuthorizedClient;
+import org.springframework.security.oauth2.client.OAuth2AuthorizedClientManager;
+import org.springframework.security.oauth2.client.OAuth2AuthorizedClientService;
+import org.springframework.security.oauth2.client.registration.ClientRegistrationRepository;
+
+import java.io.IOException;
+
+import static com.davidagood.spring.oauth.clientcredentials.AuthorizedWebClientConfig.ANONYMOUS_PRINCIPAL;
+import static com.davidagood.spring.oauth.clientcredentials.AuthorizedWebClientConfig.REGISTRATION_ID;
+
+/**
+ * Overhead of {@link OAuth2AuthorizedClientManager#authorize} when the access token is
+ * already stored, which the exchange filter function pays on every request. Compares a
+ * plain {@link AuthorizedClientServiceOAuth2AuthorizedClientManager} with the
+ * application's single flight wrapped manager
+ */
+@State(Scope.Benchmark)
+public class AuthorizeBenchmark {
+
+	private StubbedApplication application;
+
+	private OAuth2AuthorizedClientManager authorizedClientServiceManager;
+
+	private OAuth2AuthorizedClientManager applicationManager;
+
+	private OAuth2AuthorizeRequest authorizeRequest;
+
+	@Setup
+	public void setUp() {
+		application = StubbedApplication.start();
+		authorizedClientServiceManager = new AuthorizedClientServiceOAuth2AuthorizedClientManager(
+				application.getBean(ClientRegistrationRepository.class),
+				application.getBean(OAuth2AuthorizedClientService.class));
+		applicationManager = application.getBean("authorizedClientManager", OAuth2AuthorizedClientManager.class);
+		authorizeRequest = OAuth2AuthorizeRequest.withClientRegistrationId(REGISTRATION_ID)
+				.principal(ANONYMOUS_PRINCIPAL).build();
+		// Stores the token, every invocation after this is served from the store
+		applicationManager.authorize(authorizeRequest);
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		application.close();
+	}
+
+	@Benchmark
+	public OAuth2AuthorizedClient authorizedClientServiceManager() {
+		return authorizedClientServiceManager.authorize(authorizeRequest);
+	}
+
+	@Benchmark
+	public OAuth2AuthorizedClient applicationManager() {
+		return applicationManager.authorize(authorizeRequest);
+	}
+
+}
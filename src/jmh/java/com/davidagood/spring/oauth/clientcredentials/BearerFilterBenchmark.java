@@ -0,0 +1,91 @@
+package com.davidagood.spring.oauth.clientcredentials;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.security.oauth2.client.AuthorizedClientServiceOAuth2AuthorizedClientManager;
+import org.springframework.security.oauth2.client.InMemoryOAuth2AuthorizedClientService;
+import org.springframework.security.oauth2.client.OAuth2AuthorizedClient;
+import org.springframework.security.oauth2.client.registration.ClientRegistration;
+import org.springframework.security.oauth2.client.registration.InMemoryClientRegistrationRepository;
+import org.springframework.security.oauth2.client.web.reactive.function.client.ServletOAuth2AuthorizedClientExchangeFilterFunction;
+import org.springframework.security.oauth2.core.AuthorizationGrantType;
+import org.springframework.security.oauth2.core.OAuth2AccessToken;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.ExchangeFilterFunction;
+import org.springframework.web.reactive.function.client.ExchangeFunction;
+import reactor.core.publisher.Mono;
+
+import java.net.URI;
+import java.time.Duration;
+import java.time.Instant;
+
+import static com.davidagood.spring.oauth.clientcredentials.AuthorizedWebClientConfig.ANONYMOUS_PRINCIPAL;
+import static com.davidagood.spring.oauth.clientcredentials.AuthorizedWebClientConfig.REGISTRATION_ID;
+import static org.springframework.security.oauth2.client.web.reactive.function.client.ServletOAuth2AuthorizedClientExchangeFilterFunction.clientRegistrationId;
+
+/**
+ * Cost, and above all allocation per request from the gc profiler, of attaching a stored
+ * bearer token with ServletOAuth2AuthorizedClientExchangeFilterFunction compared to
+ * {@link CachingBearerExchangeFilterFunction}. The exchange itself returns a prebuilt
+ * response so that only the filters are measured
+ */
+@State(Scope.Benchmark)
+public class BearerFilterBenchmark {
+
+	private ExchangeFilterFunction servletFilter;
+
+	private ExchangeFilterFunction cachingFilter;
+
+	private ClientRequest request;
+
+	private ExchangeFunction next;
+
+	@Setup
+	public void setUp() {
+		// @formatter:off
+		ClientRegistration clientRegistration = ClientRegistration.withRegistrationId(REGISTRATION_ID)
+				.clientId("benchmark-client-id")
+				.clientSecret("benchmark-client-secret")
+				.authorizationGrantType(AuthorizationGrantType.CLIENT_CREDENTIALS)
+				.tokenUri("http://localhost/oauth/token")
+				.build();
+		// @formatter:on
+		var clientRegistrationRepository = new InMemoryClientRegistrationRepository(clientRegistration);
+		var authorizedClientService = new InMemoryOAuth2AuthorizedClientService(clientRegistrationRepository);
+		Instant issuedAt = Instant.now();
+		var accessToken = new OAuth2AccessToken(OAuth2AccessToken.TokenType.BEARER, "benchmark-access-token",
+				issuedAt, issuedAt.plus(Duration.ofDays(1)));
+		authorizedClientService.saveAuthorizedClient(
+				new OAuth2AuthorizedClient(clientRegistration, ANONYMOUS_PRINCIPAL.getName(), accessToken),
+				ANONYMOUS_PRINCIPAL);
+		var authorizedClientManager = new AuthorizedClientServiceOAuth2AuthorizedClientManager(
+				clientRegistrationRepository, authorizedClientService);
+
+		servletFilter = new ServletOAuth2AuthorizedClientExchangeFilterFunction(authorizedClientManager);
+		cachingFilter = new CachingBearerExchangeFilterFunction(authorizedClientManager,
+				(authorizationException, principal, attributes) -> {
+				});
+		request = ClientRequest.create(HttpMethod.GET, URI.create("http://localhost/api/words"))
+				.attributes(clientRegistrationId(REGISTRATION_ID)).build();
+		Mono<ClientResponse> response = Mono.just(ClientResponse.create(HttpStatus.OK).build());
+		next = authorizedRequest -> response;
+		// Fills the snapshot
+		cachingFilter.filter(request, next).block();
+	}
+
+	@Benchmark
+	public ClientResponse servletFilter() {
+		return servletFilter.filter(request, next).block();
+	}
+
+	@Benchmark
+	public ClientResponse cachingFilter() {
+		return cachingFilter.filter(request, next).block();
+	}
+
+}
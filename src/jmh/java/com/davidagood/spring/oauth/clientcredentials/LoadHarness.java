@@ -0,0 +1,530 @@
+package com.davidagood.spring.oauth.clientcredentials;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+import org.springframework.boot.convert.DurationStyle;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static com.davidagood.spring.oauth.clientcredentials.StartupBenchmark.awaitFirstWords;
+import static com.davidagood.spring.oauth.clientcredentials.StartupBenchmark.freePort;
+import static com.davidagood.spring.oauth.clientcredentials.StartupBenchmark.javaCommand;
+import static org.springframework.http.HttpHeaders.CONTENT_TYPE;
+import static org.springframework.http.MediaType.APPLICATION_JSON_VALUE;
+
+/**
+ * Launches the application in a new JVM against stub token and words servers whose
+ * latency and error rate are configurable, then sends requests to each endpoint at each
+ * of a list of fixed rates, regardless of how fast they are answered (open model).
+ * Latency is measured from the moment a request was due rather than when it was sent, so
+ * a sender falling behind does not hide queueing. For every endpoint and rate the
+ * latency distribution of the successful requests is written as an HdrHistogram .hgrm
+ * file, and the throughput, errors and percentiles of all runs to summary.json, along
+ * with the settings, for comparing builds. Settings are read from load.* system
+ * properties, see {@link Settings}. The application's classpath is passed in the
+ * load.classpath system property
+ */
+public final class LoadHarness {
+
+	private static final String TOKEN_PATH = "/oauth/token";
+
+	private static final String WORDS_PATH = "/api/words";
+
+	/**
+	 * Time the in-flight requests of a run get to complete on top of the request timeout
+	 */
+	private static final Duration DRAIN_GRACE = Duration.ofSeconds(5);
+
+	private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+
+	/**
+	 * Held so that its level sticks; MockWebServer warns about every pooled connection
+	 * the application closes without making a request
+	 */
+	private static final Logger MOCK_WEB_SERVER_LOGGER = Logger.getLogger(MockWebServer.class.getName());
+
+	private final Settings settings;
+
+	private final HttpClient httpClient;
+
+	private LoadHarness(Settings settings) {
+		this.settings = settings;
+		this.httpClient = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(5)).build();
+	}
+
+	/**
+	 * Arguments: the directory to write the reports and the application's log to
+	 */
+	public static void main(String[] args) throws Exception {
+		MOCK_WEB_SERVER_LOGGER.setLevel(Level.SEVERE);
+		Path reportDir = Files.createDirectories(Path.of(args[0]));
+		Settings settings = Settings.fromSystemProperties();
+		MockWebServer tokenServer = startStubServer(settings.token, () -> tokenResponse(settings.tokenExpiresIn));
+		MockWebServer wordsServer = startStubServer(settings.words, () -> wordsResponse(settings.wordCount));
+		int port = freePort();
+		Process application = launch(settings, port, tokenServer, wordsServer, reportDir.resolve("application.log"));
+		try {
+			URI base = URI.create("http://localhost:" + port);
+			awaitFirstWords(application, base.resolve(WORDS_PATH), reportDir.resolve("application.log"));
+			var harness = new LoadHarness(settings);
+			List<Result> results = new ArrayList<>();
+			for (String endpoint : settings.endpoints) {
+				for (int rate : settings.rates) {
+					harness.run(base.resolve(endpoint), rate, settings.warmUp);
+					Run run = harness.run(base.resolve(endpoint), rate, settings.duration);
+					Result result = Result.from(endpoint, rate, run);
+					writeHistogram(reportDir.resolve(result.getName() + ".hgrm"), run.histogram);
+					results.add(result);
+				}
+			}
+			print(results);
+			Map<String, Object> summary = new TreeMap<>();
+			summary.put("label", settings.label);
+			summary.put("settings", Settings.systemProperties());
+			summary.put("results", results);
+			OBJECT_MAPPER.writeValue(reportDir.resolve("summary.json").toFile(), summary);
+		}
+		finally {
+			application.destroy();
+			application.waitFor();
+			tokenServer.close();
+			wordsServer.close();
+		}
+	}
+
+	/**
+	 * Sends a request every 1/rate seconds for the given duration, then waits for the
+	 * requests still in flight
+	 */
+	private Run run(URI uri, int rate, Duration duration) throws InterruptedException {
+		var run = new Run();
+		HttpRequest request = HttpRequest.newBuilder(uri).timeout(settings.requestTimeout).build();
+		long intervalNanos = TimeUnit.SECONDS.toNanos(1) / rate;
+		long startNanos = System.nanoTime();
+		long endNanos = startNanos + duration.toNanos();
+		for (long dueNanos = startNanos; dueNanos < endNanos; dueNanos += intervalNanos) {
+			long waitNanos;
+			while ((waitNanos = dueNanos - System.nanoTime()) > 0) {
+				LockSupport.parkNanos(waitNanos);
+			}
+			run.sent(System.nanoTime() - dueNanos);
+			long due = dueNanos;
+			httpClient.sendAsync(request, HttpResponse.BodyHandlers.discarding())
+					.whenComplete((response, e) -> run.completed(due, response, e));
+		}
+		run.awaitInFlight(settings.requestTimeout.plus(DRAIN_GRACE));
+		run.finish(startNanos);
+		return run;
+	}
+
+	private static Process launch(Settings settings, int port, MockWebServer tokenServer, MockWebServer wordsServer,
+			Path log) throws IOException {
+		List<String> command = javaCommand(settings.jvmArgs.toArray(new String[0]));
+		// @formatter:off
+		command.addAll(List.of(
+				"-cp", settings.classpath,
+				SpringBootApp.class.getName(),
+				"--server.port=" + port,
+				"--secret-words-client.url=" + wordsServer.url(WORDS_PATH),
+				"--spring.security.oauth2.client.provider.my-client-provider.token-uri=" + tokenServer.url(TOKEN_PATH),
+				// Per request logging would dominate what is being measured
+				"--logging.level.com.davidagood=warn"));
+		// @formatter:on
+		command.addAll(settings.appArgs);
+		return new ProcessBuilder(command).redirectErrorStream(true).redirectOutput(log.toFile()).start();
+	}
+
+	private static MockWebServer startStubServer(StubProfile profile, Supplier<MockResponse> response) {
+		var mockWebServer = new MockWebServer();
+		mockWebServer.setDispatcher(new Dispatcher() {
+			@Override
+			public MockResponse dispatch(RecordedRequest request) {
+				return profile.apply(response.get());
+			}
+		});
+		try {
+			mockWebServer.start();
+		}
+		catch (IOException e) {
+			throw new UncheckedIOException("Failed to start stub server", e);
+		}
+		return mockWebServer;
+	}
+
+	private static MockResponse tokenResponse(Duration expiresIn) {
+		return jsonResponse(String.format(
+				"{\"access_token\":\"load-access-token-%d\",\"token_type\":\"Bearer\",\"expires_in\":%d}",
+				System.nanoTime(), expiresIn.toSeconds()));
+	}
+
+	private static MockResponse wordsResponse(int wordCount) {
+		return jsonResponse(IntStream.range(0, wordCount).mapToObj(i -> "\"secret-word-" + i + "\"")
+				.collect(Collectors.joining(",", "[", "]")));
+	}
+
+	private static MockResponse jsonResponse(String body) {
+		return new MockResponse().setResponseCode(200).setHeader(CONTENT_TYPE, APPLICATION_JSON_VALUE).setBody(body);
+	}
+
+	private static void writeHistogram(Path file, Histogram histogram) throws IOException {
+		try (var out = new PrintStream(Files.newOutputStream(file))) {
+			// Recorded in microseconds, reported in milliseconds
+			histogram.outputPercentileDistribution(out, 1000.0);
+		}
+	}
+
+	private static void print(List<Result> results) {
+		System.out.printf("%-32s %8s %9s %9s %8s %9s %9s %9s %9s%n", "Run", "Target/s", "Actual/s", "Requests",
+				"Errors", "p50 ms", "p99 ms", "p99.9 ms", "max ms");
+		results.forEach(result -> System.out.printf("%-32s %8d %9.1f %9d %8d %9.2f %9.2f %9.2f %9.2f%n",
+				result.getName(), result.getTargetRate(), result.getActualRate(), result.getRequests(),
+				result.getErrors().values().stream().mapToLong(Long::longValue).sum(), result.getP50Millis(),
+				result.getP99Millis(), result.getP999Millis(), result.getMaxMillis()));
+	}
+
+	/**
+	 * Latency, errors and timings of one run, filled from the HttpClient's threads
+	 */
+	private static final class Run {
+
+		/**
+		 * Values in microseconds, up to an hour at 3 significant digits
+		 */
+		private final Recorder recorder = new Recorder(TimeUnit.HOURS.toMicros(1), 3);
+
+		private final Map<String, LongAdder> errors = new ConcurrentHashMap<>();
+
+		private final AtomicInteger inFlight = new AtomicInteger();
+
+		private final AtomicLong lastCompletedNanos = new AtomicLong();
+
+		private long requests;
+
+		private long maxSendLagNanos;
+
+		private Histogram histogram;
+
+		private long elapsedNanos;
+
+		void sent(long sendLagNanos) {
+			requests++;
+			maxSendLagNanos = Math.max(maxSendLagNanos, sendLagNanos);
+			inFlight.incrementAndGet();
+		}
+
+		void completed(long dueNanos, HttpResponse<Void> response, Throwable e) {
+			long nowNanos = System.nanoTime();
+			if (e == null && response.statusCode() == 200) {
+				recorder.recordValue(TimeUnit.NANOSECONDS.toMicros(nowNanos - dueNanos));
+			}
+			else {
+				Throwable cause = (e instanceof CompletionException && e.getCause() != null) ? e.getCause() : e;
+				String error = (cause == null) ? Integer.toString(response.statusCode())
+						: cause.getClass().getSimpleName();
+				errors.computeIfAbsent(error, key -> new LongAdder()).increment();
+			}
+			lastCompletedNanos.accumulateAndGet(nowNanos, Math::max);
+			inFlight.decrementAndGet();
+		}
+
+		void awaitInFlight(Duration timeout) throws InterruptedException {
+			long deadline = System.nanoTime() + timeout.toNanos();
+			while (inFlight.get() > 0 && System.nanoTime() < deadline) {
+				Thread.sleep(10);
+			}
+		}
+
+		void finish(long startNanos) {
+			histogram = recorder.getIntervalHistogram();
+			elapsedNanos = Math.max(1, lastCompletedNanos.get() - startNanos);
+		}
+
+	}
+
+	static final class Result {
+
+		private final String endpoint;
+
+		private final int targetRate;
+
+		private final double actualRate;
+
+		private final long requests;
+
+		private final long successes;
+
+		private final Map<String, Long> errors;
+
+		private final long unanswered;
+
+		private final double maxSendLagMillis;
+
+		private final double p50Millis;
+
+		private final double p90Millis;
+
+		private final double p99Millis;
+
+		private final double p999Millis;
+
+		private final double maxMillis;
+
+		private Result(String endpoint, int targetRate, Run run) {
+			Histogram histogram = run.histogram;
+			this.endpoint = endpoint;
+			this.targetRate = targetRate;
+			this.successes = histogram.getTotalCount();
+			this.actualRate = successes / (run.elapsedNanos / 1e9);
+			this.requests = run.requests;
+			this.errors = new TreeMap<>();
+			run.errors.forEach((error, count) -> errors.put(error, count.sum()));
+			this.unanswered = run.inFlight.get();
+			this.maxSendLagMillis = run.maxSendLagNanos / 1e6;
+			this.p50Millis = histogram.getValueAtPercentile(50) / 1000.0;
+			this.p90Millis = histogram.getValueAtPercentile(90) / 1000.0;
+			this.p99Millis = histogram.getValueAtPercentile(99) / 1000.0;
+			this.p999Millis = histogram.getValueAtPercentile(99.9) / 1000.0;
+			this.maxMillis = histogram.getMaxValue() / 1000.0;
+		}
+
+		static Result from(String endpoint, int targetRate, Run run) {
+			return new Result(endpoint, targetRate, run);
+		}
+
+		/**
+		 * E.g. api-words-reactive-500rps
+		 */
+		public String getName() {
+			return endpoint.replaceAll("[^A-Za-z0-9]+", "-").replaceAll("^-", "") + "-" + targetRate + "rps";
+		}
+
+		public String getEndpoint() {
+			return endpoint;
+		}
+
+		public int getTargetRate() {
+			return targetRate;
+		}
+
+		/**
+		 * Successful responses per second, from the start of the run to the last
+		 * response
+		 */
+		public double getActualRate() {
+			return actualRate;
+		}
+
+		public long getRequests() {
+			return requests;
+		}
+
+		public long getSuccesses() {
+			return successes;
+		}
+
+		/**
+		 * Count by status code, or by exception for requests which got no response
+		 */
+		public Map<String, Long> getErrors() {
+			return errors;
+		}
+
+		/**
+		 * Requests still in flight when the run gave up waiting for them
+		 */
+		public long getUnanswered() {
+			return unanswered;
+		}
+
+		public double getMaxSendLagMillis() {
+			return maxSendLagMillis;
+		}
+
+		public double getP50Millis() {
+			return p50Millis;
+		}
+
+		public double getP90Millis() {
+			return p90Millis;
+		}
+
+		public double getP99Millis() {
+			return p99Millis;
+		}
+
+		public double getP999Millis() {
+			return p999Millis;
+		}
+
+		public double getMaxMillis() {
+			return maxMillis;
+		}
+
+	}
+
+	/**
+	 * Latency and errors of a stub server, from load.&lt;stub&gt;.latency,
+	 * load.&lt;stub&gt;.jitter, load.&lt;stub&gt;.error-rate and
+	 * load.&lt;stub&gt;.error-status. Each response is delayed by the latency plus a
+	 * random share of the jitter, and the error rate is the share of responses with the
+	 * error status instead
+	 */
+	static final class StubProfile {
+
+		private final Duration latency;
+
+		private final Duration jitter;
+
+		private final double errorRate;
+
+		private final int errorStatus;
+
+		private StubProfile(Duration latency, Duration jitter, double errorRate, int errorStatus) {
+			if (errorRate < 0 || errorRate > 1) {
+				throw new IllegalArgumentException("error-rate must be between 0 and 1 inclusive but was " + errorRate);
+			}
+			this.latency = latency;
+			this.jitter = jitter;
+			this.errorRate = errorRate;
+			this.errorStatus = errorStatus;
+		}
+
+		static StubProfile fromSystemProperties(String stub, String defaultLatency) {
+			String prefix = "load." + stub + ".";
+			return new StubProfile(duration(prefix + "latency", defaultLatency), duration(prefix + "jitter", "0ms"),
+					Double.parseDouble(System.getProperty(prefix + "error-rate", "0")),
+					Integer.getInteger(prefix + "error-status", 503));
+		}
+
+		MockResponse apply(MockResponse response) {
+			ThreadLocalRandom random = ThreadLocalRandom.current();
+			if (random.nextDouble() < errorRate) {
+				response = new MockResponse().setResponseCode(errorStatus);
+			}
+			long delayMillis = latency.toMillis() + (jitter.isZero() ? 0 : random.nextLong(jitter.toMillis() + 1));
+			return response.setHeadersDelay(delayMillis, TimeUnit.MILLISECONDS);
+		}
+
+	}
+
+	/**
+	 * <ul>
+	 * <li>load.endpoints: comma separated paths, default /api/words,/api/words/reactive
+	 * <li>load.rates: comma separated requests per second, default 250,500,1000
+	 * <li>load.warm-up: unmeasured load at each rate before the measured run, default 10s
+	 * <li>load.duration: measured run per endpoint and rate, default 30s
+	 * <li>load.request-timeout: default 10s
+	 * <li>load.token.*: {@link StubProfile} of the token endpoint, default latency 50ms
+	 * <li>load.token.expires-in: lifetime of the granted tokens, default 1h
+	 * <li>load.words.*: {@link StubProfile} of the words endpoint, default latency 20ms
+	 * <li>load.words.count: number of words in each response, default 4
+	 * <li>load.app-args and load.jvm-args: space separated arguments of the application
+	 * and its JVM, e.g. --spring.profiles.active=fast-startup or -Xmx512m
+	 * <li>load.label: written to summary.json to tell builds apart, default load
+	 * </ul>
+	 */
+	static final class Settings {
+
+		private final List<String> endpoints;
+
+		private final List<Integer> rates;
+
+		private final Duration warmUp;
+
+		private final Duration duration;
+
+		private final Duration requestTimeout;
+
+		private final StubProfile token;
+
+		private final Duration tokenExpiresIn;
+
+		private final StubProfile words;
+
+		private final int wordCount;
+
+		private final List<String> appArgs;
+
+		private final List<String> jvmArgs;
+
+		private final String label;
+
+		private final String classpath;
+
+		private Settings() {
+			this.endpoints = list("load.endpoints", "/api/words,/api/words/reactive", ",");
+			this.rates = list("load.rates", "250,500,1000", ",").stream().map(Integer::valueOf)
+					.collect(Collectors.toList());
+			this.warmUp = duration("load.warm-up", "10s");
+			this.duration = duration("load.duration", "30s");
+			this.requestTimeout = duration("load.request-timeout", "10s");
+			this.token = StubProfile.fromSystemProperties("token", "50ms");
+			this.tokenExpiresIn = duration("load.token.expires-in", "1h");
+			this.words = StubProfile.fromSystemProperties("words", "20ms");
+			this.wordCount = Integer.getInteger("load.words.count", 4);
+			this.appArgs = list("load.app-args", "", " ");
+			this.jvmArgs = list("load.jvm-args", "", " ");
+			this.label = System.getProperty("load.label", "load");
+			this.classpath = System.getProperty("load.classpath");
+		}
+
+		static Settings fromSystemProperties() {
+			return new Settings();
+		}
+
+		/**
+		 * The load.* system properties as given, without the classpath
+		 */
+		static Map<String, String> systemProperties() {
+			Map<String, String> properties = new TreeMap<>();
+			System.getProperties().stringPropertyNames().stream()
+					.filter(name -> name.startsWith("load.") && !name.equals("load.classpath"))
+					.forEach(name -> properties.put(name, System.getProperty(name)));
+			return properties;
+		}
+
+		private static List<String> list(String name, String defaultValue, String separator) {
+			return Arrays.stream(System.getProperty(name, defaultValue).split(separator)).map(String::trim)
+					.filter(value -> !value.isEmpty()).collect(Collectors.toList());
+		}
+
+	}
+
+	private static Duration duration(String name, String defaultValue) {
+		return DurationStyle.detectAndParse(System.getProperty(name, defaultValue));
+	}
+
+}
@@ -0,0 +1,87 @@
+package com.davidagood.spring.oauth.clientcredentials;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.codec.json.Jackson2JsonDecoder;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import reactor.core.publisher.Flux;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Cost of turning the resource server's word array into the /api/words response body:
+ * decoding it into a list and serializing a {@link SecretWordsDto}, as /api/words does,
+ * against copying it with {@link SecretWordsPassthrough}, as /api/words/passthrough
+ * does. Run with the gc profiler of the jmh task for allocation per operation. The array
+ * arrives in chunks the size of Reactor Netty's reads and the body is written to a
+ * stream which discards it
+ */
+@State(Scope.Benchmark)
+public class PassthroughBenchmark {
+
+	private static final int CHUNK_SIZE = 8192;
+
+	private static final ResolvableType WORDS_TYPE = ResolvableType.forClassWithGenerics(List.class, String.class);
+
+	private static final DefaultDataBufferFactory BUFFER_FACTORY = new DefaultDataBufferFactory();
+
+	private static final Instant CREATED_AT = Instant.parse("2020-12-20T00:00:00Z");
+
+	@Param({ "2", "1000", "100000" })
+	public int wordCount;
+
+	private ObjectMapper objectMapper;
+
+	private Jackson2JsonDecoder decoder;
+
+	private List<byte[]> chunks;
+
+	@Setup
+	public void setUp() {
+		objectMapper = Jackson2ObjectMapperBuilder.json()
+				.featuresToDisable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS).build();
+		decoder = new Jackson2JsonDecoder(objectMapper);
+		decoder.setMaxInMemorySize(-1);
+		byte[] body = IntStream.range(0, wordCount).mapToObj(i -> "\"secret-word-" + i + "\"")
+				.collect(Collectors.joining(",", "[", "]")).getBytes(StandardCharsets.UTF_8);
+		chunks = new ArrayList<>();
+		for (int offset = 0; offset < body.length; offset += CHUNK_SIZE) {
+			chunks.add(Arrays.copyOfRange(body, offset, Math.min(body.length, offset + CHUNK_SIZE)));
+		}
+	}
+
+	@Benchmark
+	@SuppressWarnings("unchecked")
+	public void decodeAndEncode() throws IOException {
+		List<String> words = (List<String>) decoder.decodeToMono(body(), WORDS_TYPE, null, Map.of()).block();
+		objectMapper.writeValue(OutputStream.nullOutputStream(), SecretWordsDto.from(words, CREATED_AT));
+	}
+
+	@Benchmark
+	public void passthrough() throws IOException {
+		SecretWordsPassthrough.write(body(), objectMapper.writeValueAsString(CREATED_AT),
+				OutputStream.nullOutputStream());
+	}
+
+	private Flux<DataBuffer> body() {
+		return Flux.fromIterable(chunks).map(BUFFER_FACTORY::wrap);
+	}
+
+}
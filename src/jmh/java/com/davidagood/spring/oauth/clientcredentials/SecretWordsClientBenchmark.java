@@ -0,0 +1,55 @@
+package com.davidagood.spring.oauth.clientcredentials;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.security.oauth2.client.OAuth2AuthorizedClientService;
+
+import java.io.IOException;
+import java.util.List;
+
+import static com.davidagood.spring.oauth.clientcredentials.AuthorizedWebClientConfig.ANONYMOUS_PRINCIPAL;
+import static com.davidagood.spring.oauth.clientcredentials.AuthorizedWebClientConfig.REGISTRATION_ID;
+
+/**
+ * End to end cost of {@link SecretWordsClient#getSecretWords()}, with the access token
+ * already in the {@link OAuth2AuthorizedClientService} and with a client credentials
+ * grant needed on every call
+ */
+@State(Scope.Benchmark)
+public class SecretWordsClientBenchmark {
+
+	private StubbedApplication application;
+
+	private SecretWordsClient secretWordsClient;
+
+	private OAuth2AuthorizedClientService authorizedClientService;
+
+	@Setup
+	public void setUp() throws AuthorizationException {
+		application = StubbedApplication.start();
+		secretWordsClient = application.getBean(SecretWordsClient.class);
+		authorizedClientService = application.getBean(OAuth2AuthorizedClientService.class);
+		secretWordsClient.getSecretWords();
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		application.close();
+	}
+
+	@Benchmark
+	public List<String> cachedToken() throws AuthorizationException {
+		return secretWordsClient.getSecretWords();
+	}
+
+	@Benchmark
+	public List<String> tokenGrant() throws AuthorizationException {
+		// Forgetting the token is a map removal, negligible next to the grant it forces
+		authorizedClientService.removeAuthorizedClient(REGISTRATION_ID, ANONYMOUS_PRINCIPAL.getName());
+		return secretWordsClient.getSecretWords();
+	}
+
+}
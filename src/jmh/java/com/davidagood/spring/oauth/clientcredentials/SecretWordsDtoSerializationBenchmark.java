@@ -0,0 +1,46 @@
+package com.davidagood.spring.oauth.clientcredentials;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Cost of writing the {@link SecretWordsDto} response body, configured the way
+ * application.yml configures the application's {@link ObjectMapper}
+ */
+@State(Scope.Benchmark)
+public class SecretWordsDtoSerializationBenchmark {
+
+	@Param({ "2", "1000" })
+	public int wordCount;
+
+	private ObjectMapper objectMapper;
+
+	private SecretWordsDto secretWordsDto;
+
+	@Setup
+	public void setUp() {
+		objectMapper = Jackson2ObjectMapperBuilder.json()
+				.featuresToDisable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS).build();
+		List<String> words = IntStream.range(0, wordCount).mapToObj(i -> "secret-word-" + i)
+				.collect(Collectors.toList());
+		secretWordsDto = SecretWordsDto.from(words, Instant.parse("2020-12-20T00:00:00Z"));
+	}
+
+	@Benchmark
+	public byte[] serialize() throws JsonProcessingException {
+		return objectMapper.writeValueAsBytes(secretWordsDto);
+	}
+
+}
@@ -0,0 +1,241 @@
+package com.davidagood.spring.oauth.clientcredentials;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import okhttp3.mockwebserver.MockWebServer;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.ConnectException;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToLongFunction;
+import java.util.stream.Collectors;
+import java.util.stream.StreamSupport;
+
+import static com.davidagood.spring.oauth.clientcredentials.StubbedApplication.TOKEN_PATH;
+import static com.davidagood.spring.oauth.clientcredentials.StubbedApplication.WORDS_PATH;
+
+/**
+ * Launches the application in new JVMs against the stub server of
+ * {@link StubbedApplication} and measures the time from launching the JVM to the first
+ * successful /api/words, along with the bean definitions and the classes loaded by then.
+ * Each run of the default configuration is followed by a run of the fast-startup profile
+ * and by one of the fast-startup profile with the AppCDS archive of a training run. Given
+ * the archive argument, it only creates that archive. The application's classpath is
+ * passed in the startup.classpath system property and must consist of jars only, which
+ * is all AppCDS archives classes from
+ */
+public final class StartupBenchmark {
+
+	private static final String CLASS_LIST = "app.classlist";
+
+	private static final String ARCHIVE = "app.jsa";
+
+	private static final Duration STARTUP_TIMEOUT = Duration.ofSeconds(60);
+
+	private static final HttpClient HTTP_CLIENT = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(1))
+			.build();
+
+	private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+
+	private final Path workDir;
+
+	private final String classpath;
+
+	private final MockWebServer stubServer;
+
+	private StartupBenchmark(Path workDir, String classpath, MockWebServer stubServer) {
+		this.workDir = workDir;
+		this.classpath = classpath;
+		this.stubServer = stubServer;
+	}
+
+	/**
+	 * Arguments: the directory for the archive and the application's logs, then either
+	 * archive, or the file to write the results to
+	 */
+	public static void main(String[] args) throws Exception {
+		Path workDir = Files.createDirectories(Path.of(args[0]));
+		String classpath = System.getProperty("startup.classpath");
+		int runs = Integer.getInteger("startup.runs", 5);
+		MockWebServer stubServer = StubbedApplication.startStubServer();
+		try {
+			var benchmark = new StartupBenchmark(workDir, classpath, stubServer);
+			benchmark.createArchive();
+			if ("archive".equals(args[1])) {
+				return;
+			}
+			Map<String, List<Result>> results = new LinkedHashMap<>();
+			for (int i = 0; i < runs; i++) {
+				results.computeIfAbsent("default", mode -> new ArrayList<>()).add(benchmark.measure(List.of()));
+				results.computeIfAbsent("fast-startup", mode -> new ArrayList<>())
+						.add(benchmark.measure(List.of(), "--spring.profiles.active=fast-startup"));
+				results.computeIfAbsent("fast-startup+appcds", mode -> new ArrayList<>()).add(benchmark.measure(
+						List.of("-XX:SharedArchiveFile=" + workDir.resolve(ARCHIVE)),
+						"--spring.profiles.active=fast-startup"));
+			}
+			print(results);
+			Path resultsFile = Path.of(args[1]);
+			Files.createDirectories(resultsFile.getParent());
+			OBJECT_MAPPER.writeValue(resultsFile.toFile(), results);
+		}
+		finally {
+			stubServer.close();
+		}
+	}
+
+	/**
+	 * Records the classes the fast-startup profile loads up to the first /api/words, then
+	 * dumps them into the archive, which is only valid for the same JVM and classpath
+	 */
+	private void createArchive() throws Exception {
+		Path classList = workDir.resolve(CLASS_LIST);
+		Files.deleteIfExists(classList);
+		measure(List.of("-XX:DumpLoadedClassList=" + classList), "--spring.profiles.active=fast-startup");
+		// @formatter:off
+		Process dump = new ProcessBuilder(javaCommand(
+						"-Xshare:dump",
+						"-XX:SharedClassListFile=" + classList,
+						"-XX:SharedArchiveFile=" + workDir.resolve(ARCHIVE),
+						"-cp", classpath))
+				.redirectErrorStream(true)
+				.redirectOutput(workDir.resolve("dump.log").toFile())
+				.start();
+		// @formatter:on
+		if (dump.waitFor() != 0) {
+			throw new IllegalStateException("Failed to dump the AppCDS archive, see " + workDir.resolve("dump.log"));
+		}
+	}
+
+	private Result measure(List<String> jvmArgs, String... appArgs) throws Exception {
+		int port = freePort();
+		List<String> command = javaCommand(jvmArgs.toArray(new String[0]));
+		// @formatter:off
+		command.addAll(List.of(
+				"-cp", classpath,
+				SpringBootApp.class.getName(),
+				"--server.port=" + port,
+				"--secret-words-client.url=" + stubServer.url(WORDS_PATH),
+				"--spring.security.oauth2.client.provider.my-client-provider.token-uri=" + stubServer.url(TOKEN_PATH),
+				"--management.endpoints.web.exposure.include=beans,metrics"));
+		// @formatter:on
+		command.addAll(List.of(appArgs));
+		Path log = workDir.resolve("application.log");
+		long start = System.nanoTime();
+		Process application = new ProcessBuilder(command).redirectErrorStream(true).redirectOutput(log.toFile())
+				.start();
+		try {
+			URI base = URI.create("http://localhost:" + port);
+			awaitFirstWords(application, base.resolve(WORDS_PATH), log);
+			long firstWordsMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+			// Read before the beans, whose descriptions load further classes
+			long classes = get(base.resolve("/actuator/metrics/jvm.classes.loaded")).at("/measurements/0/value")
+					.asLong();
+			JsonNode contexts = get(base.resolve("/actuator/beans")).get("contexts");
+			int beans = StreamSupport.stream(contexts.spliterator(), false)
+					.mapToInt(context -> context.get("beans").size()).sum();
+			return new Result(firstWordsMillis, beans, classes);
+		}
+		finally {
+			application.destroy();
+			application.waitFor();
+		}
+	}
+
+	static void awaitFirstWords(Process application, URI words, Path log) throws Exception {
+		long deadline = System.nanoTime() + STARTUP_TIMEOUT.toNanos();
+		while (System.nanoTime() < deadline) {
+			if (!application.isAlive()) {
+				throw new IllegalStateException("Application exited before serving " + words + ", see " + log);
+			}
+			try {
+				if (HTTP_CLIENT.send(HttpRequest.newBuilder(words).build(), HttpResponse.BodyHandlers.discarding())
+						.statusCode() == 200) {
+					return;
+				}
+			}
+			catch (ConnectException e) {
+				// Not listening yet
+			}
+			Thread.sleep(10);
+		}
+		throw new IllegalStateException("No successful " + words + " within " + STARTUP_TIMEOUT + ", see " + log);
+	}
+
+	private static JsonNode get(URI uri) throws Exception {
+		HttpResponse<String> response = HTTP_CLIENT.send(HttpRequest.newBuilder(uri).build(),
+				HttpResponse.BodyHandlers.ofString());
+		return OBJECT_MAPPER.readTree(response.body());
+	}
+
+	static List<String> javaCommand(String... jvmArgs) {
+		List<String> command = new ArrayList<>();
+		command.add(Path.of(System.getProperty("java.home"), "bin", "java").toString());
+		command.addAll(List.of(jvmArgs));
+		return command;
+	}
+
+	static int freePort() {
+		try (var socket = new ServerSocket(0)) {
+			return socket.getLocalPort();
+		}
+		catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	private static void print(Map<String, List<Result>> results) {
+		System.out.printf("%-22s %28s %8s %9s%n", "Mode", "First /api/words ms (median)", "Beans", "Classes");
+		results.forEach((mode, runs) -> System.out.printf("%-22s %28d %8d %9d%n", mode,
+				median(runs, Result::getFirstWordsMillis), median(runs, Result::getBeans),
+				median(runs, Result::getClasses)));
+	}
+
+	private static long median(Collection<Result> runs, ToLongFunction<Result> value) {
+		List<Long> sorted = runs.stream().map(value::applyAsLong).sorted().collect(Collectors.toList());
+		return sorted.get(sorted.size() / 2);
+	}
+
+	static final class Result {
+
+		private final long firstWordsMillis;
+
+		private final long beans;
+
+		private final long classes;
+
+		Result(long firstWordsMillis, long beans, long classes) {
+			this.firstWordsMillis = firstWordsMillis;
+			this.beans = beans;
+			this.classes = classes;
+		}
+
+		public long getFirstWordsMillis() {
+			return firstWordsMillis;
+		}
+
+		public long getBeans() {
+			return beans;
+		}
+
+		public long getClasses() {
+			return classes;
+		}
+
+	}
+
+}
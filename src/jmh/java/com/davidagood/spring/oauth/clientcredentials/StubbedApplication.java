@@ -0,0 +1,94 @@
+package com.davidagood.spring.oauth.clientcredentials;
+
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+import static org.springframework.http.HttpHeaders.CONTENT_TYPE;
+import static org.springframework.http.MediaType.APPLICATION_JSON_VALUE;
+
+/**
+ * The application context wired against a local {@link MockWebServer} which plays both
+ * the authorization server and the resource server, so benchmarks measure this project's
+ * request path rather than the network
+ */
+final class StubbedApplication implements AutoCloseable {
+
+	static final String TOKEN_PATH = "/oauth/token";
+
+	static final String WORDS_PATH = "/api/words";
+
+	private final MockWebServer mockWebServer;
+
+	private final ConfigurableApplicationContext context;
+
+	private StubbedApplication(MockWebServer mockWebServer, ConfigurableApplicationContext context) {
+		this.mockWebServer = mockWebServer;
+		this.context = context;
+	}
+
+	static StubbedApplication start() {
+		MockWebServer mockWebServer = startStubServer();
+		// @formatter:off
+		// Passed as arguments since default properties would lose to application.yml
+		ConfigurableApplicationContext context = new SpringApplicationBuilder(SpringBootApp.class)
+				.run(
+						"--server.port=0",
+						"--secret-words-client.url=" + mockWebServer.url(WORDS_PATH),
+						"--spring.security.oauth2.client.provider.my-client-provider.token-uri=" + mockWebServer.url(TOKEN_PATH),
+						// Per request logging would dominate what is being measured
+						"--logging.level.com.davidagood=warn",
+						"--logging.level.okhttp3=warn");
+		// @formatter:on
+		return new StubbedApplication(mockWebServer, context);
+	}
+
+	/**
+	 * Serves an access token at {@link #TOKEN_PATH} and secret words at any other path
+	 */
+	static MockWebServer startStubServer() {
+		var mockWebServer = new MockWebServer();
+		mockWebServer.setDispatcher(new Dispatcher() {
+			@Override
+			public MockResponse dispatch(RecordedRequest request) {
+				if (TOKEN_PATH.equals(request.getPath())) {
+					return jsonResponse(
+							"{\"access_token\":\"benchmark-access-token\",\"token_type\":\"Bearer\",\"expires_in\":3600}");
+				}
+				return jsonResponse("[\"speakers\",\"keyboard\",\"monitor\",\"headphones\"]");
+			}
+		});
+		try {
+			mockWebServer.start();
+		}
+		catch (IOException e) {
+			throw new UncheckedIOException("Failed to start stub server", e);
+		}
+		return mockWebServer;
+	}
+
+	<T> T getBean(Class<T> type) {
+		return context.getBean(type);
+	}
+
+	<T> T getBean(String name, Class<T> type) {
+		return context.getBean(name, type);
+	}
+
+	@Override
+	public void close() throws IOException {
+		context.close();
+		mockWebServer.close();
+	}
+
+	private static MockResponse jsonResponse(String body) {
+		return new MockResponse().setResponseCode(200).setHeader(CONTENT_TYPE, APPLICATION_JSON_VALUE).setBody(body);
+	}
+
+}
@@ -0,0 +1,121 @@
+package com.davidagood.spring.oauth.clientcredentials;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.time.Instant;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Size and cost of the {@link SecretWordsDto} response body in each format /api/words
+ * produces, with and without the gzip compression applied by server.compression. Decoding
+ * stands in for the caller, or for this application reading a compressed resource server
+ * response. The wireBytes counter is the size of one encoded body
+ */
+@State(Scope.Benchmark)
+public class WireFormatBenchmark {
+
+	@Param({ "json", "smile", "cbor" })
+	public String format;
+
+	@Param({ "false", "true" })
+	public boolean gzip;
+
+	@Param({ "1000", "100000" })
+	public int wordCount;
+
+	private ObjectMapper objectMapper;
+
+	private SecretWordsDto secretWordsDto;
+
+	private byte[] body;
+
+	@Setup
+	public void setUp() throws IOException {
+		objectMapper = Jackson2ObjectMapperBuilder.json().factory(factory())
+				.featuresToDisable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS).build();
+		List<String> words = IntStream.range(0, wordCount).mapToObj(i -> "secret-word-" + i)
+				.collect(Collectors.toList());
+		secretWordsDto = SecretWordsDto.from(words, Instant.parse("2020-12-20T00:00:00Z"));
+		var bytes = new ByteArrayOutputStream();
+		write(bytes);
+		body = bytes.toByteArray();
+	}
+
+	@Benchmark
+	public void encode(WireBytes wireBytes) throws IOException {
+		var bytes = new CountingOutputStream();
+		write(bytes);
+		wireBytes.wireBytes = bytes.count;
+	}
+
+	@Benchmark
+	public JsonNode decode() throws IOException {
+		InputStream bytes = new ByteArrayInputStream(body);
+		try (InputStream in = gzip ? new GZIPInputStream(bytes) : bytes) {
+			return objectMapper.readTree(in);
+		}
+	}
+
+	private void write(OutputStream bytes) throws IOException {
+		try (OutputStream out = gzip ? new GZIPOutputStream(bytes) : bytes) {
+			objectMapper.writeValue(out, secretWordsDto);
+		}
+	}
+
+	private JsonFactory factory() {
+		switch (format) {
+		case "smile":
+			return new SmileFactory();
+		case "cbor":
+			return new CBORFactory();
+		default:
+			return new JsonFactory();
+		}
+	}
+
+	@State(Scope.Thread)
+	@AuxCounters(AuxCounters.Type.EVENTS)
+	public static class WireBytes {
+
+		public long wireBytes;
+
+	}
+
+	private static final class CountingOutputStream extends OutputStream {
+
+		private long count;
+
+		@Override
+		public void write(int b) {
+			count++;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) {
+			count += len;
+		}
+
+	}
+
+}
@@ -0,0 +1,138 @@
+package com.davidagood.spring.oauth.clientcredentials;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+
+/**
+ * Limits the number of concurrent calls and adapts the limit to how the upstream copes
+ * (additive increase, multiplicative decrease). A call which completes within the latency
+ * threshold while the limit was at least half used raises the limit by one, a call which
+ * fails with a transient error or takes longer lowers it by the backoff ratio. Calls
+ * beyond the limit are not queued but rejected right away with a
+ * {@link ConcurrencyLimitExceededException}. The current limit and the number of calls in
+ * flight are exported as the concurrency.limit and concurrency.in.flight gauges,
+ * rejections in the concurrency.rejected counter, all tagged with the limiter's name
+ */
+public class AimdConcurrencyLimiter {
+
+	static final String LIMIT_GAUGE = "concurrency.limit";
+
+	static final String IN_FLIGHT_GAUGE = "concurrency.in.flight";
+
+	static final String REJECTED_COUNTER = "concurrency.rejected";
+
+	private final String name;
+
+	private final ConcurrencyLimitConfig.Limit config;
+
+	private final long latencyThresholdNanos;
+
+	private final Duration retryAfter;
+
+	private final AtomicInteger inFlight = new AtomicInteger();
+
+	private final Counter rejected;
+
+	private volatile int limit;
+
+	/**
+	 * Fractional limit the multiplicative decrease works on, the effective limit is its
+	 * integer part
+	 */
+	private double exactLimit;
+
+	public AimdConcurrencyLimiter(String name, ConcurrencyLimitConfig.Limit config, Duration retryAfter,
+			MeterRegistry meterRegistry) {
+		this.name = name;
+		this.config = config;
+		this.latencyThresholdNanos = config.getLatencyThreshold().toNanos();
+		this.retryAfter = retryAfter;
+		this.limit = config.getInitialLimit();
+		this.exactLimit = config.getInitialLimit();
+		Gauge.builder(LIMIT_GAUGE, this, AimdConcurrencyLimiter::getLimit).tag("name", name)
+				.description("Current adaptive concurrency limit").register(meterRegistry);
+		Gauge.builder(IN_FLIGHT_GAUGE, inFlight, AtomicInteger::get).tag("name", name)
+				.description("Calls currently in flight").register(meterRegistry);
+		this.rejected = Counter.builder(REJECTED_COUNTER).tag("name", name)
+				.description("Calls rejected because the concurrency limit was reached").register(meterRegistry);
+	}
+
+	/**
+	 * Subscribes to the call only if the limit permits it. Each subscription to the
+	 * returned Mono is a separate call. Errors for which isDrop is false, like a 404,
+	 * count by their latency alone, and a cancelled call does not change the limit
+	 */
+	public <T> Mono<T> limit(Mono<T> call, Predicate<Throwable> isDrop) {
+		return Mono.defer(() -> {
+			int inFlightAtStart = tryAcquire();
+			if (inFlightAtStart < 0) {
+				rejected.increment();
+				return Mono.error(new ConcurrencyLimitExceededException(name, limit, retryAfter));
+			}
+			long startNanos = System.nanoTime();
+			var released = new AtomicBoolean();
+			// @formatter:off
+			return call
+					.doOnSuccess(value -> release(released, startNanos, inFlightAtStart, false))
+					.doOnError(e -> release(released, startNanos, inFlightAtStart, isDrop.test(e)))
+					.doOnCancel(() -> {
+						if (released.compareAndSet(false, true)) {
+							inFlight.decrementAndGet();
+						}
+					});
+			// @formatter:on
+		});
+	}
+
+	int getLimit() {
+		return limit;
+	}
+
+	int getInFlight() {
+		return inFlight.get();
+	}
+
+	/**
+	 * @return the number of calls in flight including this one, or -1 if the limit has
+	 * been reached
+	 */
+	private int tryAcquire() {
+		while (true) {
+			int current = inFlight.get();
+			if (current >= limit) {
+				return -1;
+			}
+			if (inFlight.compareAndSet(current, current + 1)) {
+				return current + 1;
+			}
+		}
+	}
+
+	private void release(AtomicBoolean released, long startNanos, int inFlightAtStart, boolean dropped) {
+		if (!released.compareAndSet(false, true)) {
+			return;
+		}
+		inFlight.decrementAndGet();
+		adjust(dropped || System.nanoTime() - startNanos > latencyThresholdNanos, inFlightAtStart);
+	}
+
+	private synchronized void adjust(boolean overloaded, int inFlightAtStart) {
+		if (overloaded) {
+			exactLimit = Math.max(config.getMinLimit(), exactLimit * config.getBackoffRatio());
+		}
+		else if (inFlightAtStart * 2 >= limit) {
+			// Only when the limit was actually put to use, otherwise it would grow
+			// without bound while the load is low
+			exactLimit = Math.min(config.getMaxLimit(), exactLimit + 1);
+		}
+		limit = (int) exactLimit;
+	}
+
+}
@@ -0,0 +1,25 @@
+package com.davidagood.spring.oauth.clientcredentials;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.ConstructorBinding;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+@ConfigurationProperties("authorized-client-cache")
+@ConstructorBinding
+public class AuthorizedClientCacheConfig {
+
+	/**
+	 * Whether authenticatedWebClient uses CachingBearerExchangeFilterFunction instead of
+	 * ServletOAuth2AuthorizedClientExchangeFilterFunction
+	 */
+	private final boolean enabled;
+
+	public AuthorizedClientCacheConfig(@DefaultValue("true") boolean enabled) {
+		this.enabled = enabled;
+	}
+
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+}
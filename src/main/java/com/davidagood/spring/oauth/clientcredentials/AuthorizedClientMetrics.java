@@ -0,0 +1,85 @@
+package com.davidagood.spring.oauth.clientcredentials;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.security.oauth2.client.OAuth2AuthorizedClient;
+import org.springframework.security.oauth2.client.OAuth2AuthorizedClientService;
+import org.springframework.security.oauth2.core.OAuth2AccessToken;
+import org.springframework.stereotype.Component;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static com.davidagood.spring.oauth.clientcredentials.AuthorizedWebClientConfig.ANONYMOUS_PRINCIPAL;
+import static com.davidagood.spring.oauth.clientcredentials.AuthorizedWebClientConfig.REGISTRATION_ID;
+
+/**
+ * Gauges on the stored access token's age and time to expiry, both NaN while no token is
+ * stored, for the default client registration and those of the configured upstreams
+ */
+@Component
+public class AuthorizedClientMetrics implements MeterBinder {
+
+	private final OAuth2AuthorizedClientService authorizedClientService;
+
+	private final Set<String> clientRegistrationIds = new LinkedHashSet<>();
+
+	private final Clock clock = Clock.systemUTC();
+
+	public AuthorizedClientMetrics(OAuth2AuthorizedClientService authorizedClientService,
+			UpstreamsConfig upstreamsConfig) {
+		this.authorizedClientService = authorizedClientService;
+		this.clientRegistrationIds.add(REGISTRATION_ID);
+		upstreamsConfig.getRegistrations().values()
+				.forEach(upstream -> clientRegistrationIds.add(upstream.getRegistrationId()));
+	}
+
+	@Override
+	public void bindTo(MeterRegistry registry) {
+		for (String clientRegistrationId : clientRegistrationIds) {
+			// @formatter:off
+			Gauge.builder("oauth2.token.time.to.expiry", () -> timeToExpirySeconds(clientRegistrationId))
+					.description("Time until the stored access token expires")
+					.tag("clientRegistrationId", clientRegistrationId)
+					.baseUnit("seconds")
+					.register(registry);
+			Gauge.builder("oauth2.token.age", () -> ageSeconds(clientRegistrationId))
+					.description("Time since the stored access token was issued")
+					.tag("clientRegistrationId", clientRegistrationId)
+					.baseUnit("seconds")
+					.register(registry);
+			// @formatter:on
+		}
+	}
+
+	private double timeToExpirySeconds(String clientRegistrationId) {
+		OAuth2AccessToken accessToken = loadAccessToken(clientRegistrationId);
+		if (accessToken == null || accessToken.getExpiresAt() == null) {
+			return Double.NaN;
+		}
+		return seconds(Duration.between(clock.instant(), accessToken.getExpiresAt()));
+	}
+
+	private double ageSeconds(String clientRegistrationId) {
+		OAuth2AccessToken accessToken = loadAccessToken(clientRegistrationId);
+		if (accessToken == null || accessToken.getIssuedAt() == null) {
+			return Double.NaN;
+		}
+		return seconds(Duration.between(accessToken.getIssuedAt(), clock.instant()));
+	}
+
+	private OAuth2AccessToken loadAccessToken(String clientRegistrationId) {
+		OAuth2AuthorizedClient authorizedClient = authorizedClientService.loadAuthorizedClient(clientRegistrationId,
+				ANONYMOUS_PRINCIPAL.getName());
+		return authorizedClient == null ? null : authorizedClient.getAccessToken();
+	}
+
+	static double seconds(Duration duration) {
+		return duration.toMillis() / (double) TimeUnit.SECONDS.toMillis(1);
+	}
+
+}
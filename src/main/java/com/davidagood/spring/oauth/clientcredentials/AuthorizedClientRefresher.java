@@ -0,0 +1,171 @@
+package com.davidagood.spring.oauth.clientcredentials;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.security.oauth2.client.OAuth2AuthorizationSuccessHandler;
+import org.springframework.security.oauth2.client.OAuth2AuthorizedClient;
+import org.springframework.security.oauth2.client.OAuth2AuthorizedClientService;
+import org.springframework.security.oauth2.client.endpoint.OAuth2AccessTokenResponseClient;
+import org.springframework.security.oauth2.client.endpoint.OAuth2ClientCredentialsGrantRequest;
+import org.springframework.security.oauth2.client.registration.ClientRegistrationRepository;
+import org.springframework.security.oauth2.core.OAuth2AccessToken;
+import org.springframework.security.oauth2.core.OAuth2AuthorizationException;
+import org.springframework.security.oauth2.core.endpoint.OAuth2AccessTokenResponse;
+import org.springframework.stereotype.Component;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static com.davidagood.spring.oauth.clientcredentials.AuthorizedWebClientConfig.ANONYMOUS_PRINCIPAL;
+
+/**
+ * Renews the authorized client of every client_credentials registration, the upstreams'
+ * included, in the background once a configurable fraction of its access token's lifetime
+ * has elapsed, so that the request path keeps finding a valid token in the
+ * OAuth2AuthorizedClientService and never has to wait for a grant request. The first
+ * token is still acquired lazily by the request path, unless {@link StartupWarmUp}
+ * acquires it at startup. Created eagerly even with spring.main.lazy-initialization, as
+ * nothing else would create it to be scheduled
+ */
+@Component
+@Lazy(false)
+@ConditionalOnProperty(prefix = "token-refresh", name = "enabled", havingValue = "true")
+public class AuthorizedClientRefresher {
+
+	private static final Logger log = LoggerFactory.getLogger(AuthorizedClientRefresher.class);
+
+	private final OAuth2AuthorizedClientService authorizedClientService;
+
+	private final OAuth2AccessTokenResponseClient<OAuth2ClientCredentialsGrantRequest> tokenResponseClient;
+
+	private final OAuth2AuthorizationSuccessHandler authorizationSuccessHandler;
+
+	private final TokenRefreshConfig config;
+
+	/**
+	 * Only set with a shared token store, where it keeps other nodes, and this node's
+	 * request path, from renewing the same token at the same time
+	 */
+	private final TokenGrantLock grantLock;
+
+	private final Clock clock = Clock.systemUTC();
+
+	private final List<String> registrationIds;
+
+	private final Map<String, Duration> lastRefreshLeadTimes = new ConcurrentHashMap<>();
+
+	public AuthorizedClientRefresher(ClientRegistrationRepository clientRegistrationRepository,
+			OAuth2AuthorizedClientService authorizedClientService,
+			OAuth2AccessTokenResponseClient<OAuth2ClientCredentialsGrantRequest> tokenResponseClient,
+			@Qualifier("authorizationServerAuthorizationSuccessHandler") OAuth2AuthorizationSuccessHandler authorizationSuccessHandler,
+			TokenRefreshConfig config, MeterRegistry meterRegistry, ObjectProvider<TokenGrantLock> tokenGrantLock) {
+		this.authorizedClientService = authorizedClientService;
+		this.grantLock = tokenGrantLock.getIfAvailable();
+		this.tokenResponseClient = tokenResponseClient;
+		this.authorizationSuccessHandler = authorizationSuccessHandler;
+		this.config = config;
+		this.registrationIds = StartupWarmUp.clientCredentialsRegistrationIds(clientRegistrationRepository);
+		for (String registrationId : registrationIds) {
+			// @formatter:off
+			Gauge.builder("oauth2.token.refresh.lead.time", this, r -> {
+						Duration leadTime = r.getLastRefreshLeadTime(registrationId);
+						return leadTime == null ? Double.NaN : AuthorizedClientMetrics.seconds(leadTime);
+					})
+					.description("How long before expiry the previous token was last refreshed in the background")
+					.tag("clientRegistrationId", registrationId)
+					.baseUnit("seconds")
+					.register(meterRegistry);
+			// @formatter:on
+		}
+	}
+
+	@Scheduled(fixedDelayString = "${token-refresh.check-interval:PT5S}")
+	void refreshIfDue() {
+		for (String registrationId : registrationIds) {
+			refreshIfDue(registrationId);
+		}
+	}
+
+	private void refreshIfDue(String registrationId) {
+		OAuth2AuthorizedClient authorizedClient = authorizedClientService.loadAuthorizedClient(registrationId,
+				ANONYMOUS_PRINCIPAL.getName());
+		if (authorizedClient == null) {
+			return;
+		}
+		OAuth2AccessToken accessToken = authorizedClient.getAccessToken();
+		if (accessToken.getIssuedAt() == null || accessToken.getExpiresAt() == null) {
+			return;
+		}
+		Instant now = clock.instant();
+		Duration lifetime = Duration.between(accessToken.getIssuedAt(), accessToken.getExpiresAt());
+		Instant refreshAt = accessToken.getIssuedAt()
+				.plusMillis((long) (lifetime.toMillis() * config.getRefreshFraction()));
+		if (now.isBefore(refreshAt)) {
+			return;
+		}
+		Duration leadTime = Duration.between(now, accessToken.getExpiresAt());
+		if (grantLock == null) {
+			refresh(authorizedClient, leadTime);
+			return;
+		}
+		String lease = grantLock.tryLock(registrationId, ANONYMOUS_PRINCIPAL.getName());
+		if (lease == null) {
+			// Another node, or the request path of this one, is renewing it
+			return;
+		}
+		try {
+			if (!isRenewedElsewhere(registrationId, accessToken)) {
+				refresh(authorizedClient, leadTime);
+			}
+		}
+		finally {
+			grantLock.unlock(registrationId, ANONYMOUS_PRINCIPAL.getName(), lease);
+		}
+	}
+
+	private boolean isRenewedElsewhere(String registrationId, OAuth2AccessToken accessToken) {
+		OAuth2AuthorizedClient stored = grantLock.loadFromStore(registrationId, ANONYMOUS_PRINCIPAL.getName());
+		return stored != null && !stored.getAccessToken().getTokenValue().equals(accessToken.getTokenValue());
+	}
+
+	private void refresh(OAuth2AuthorizedClient authorizedClient, Duration leadTime) {
+		var clientRegistration = authorizedClient.getClientRegistration();
+		OAuth2AccessTokenResponse tokenResponse;
+		try {
+			tokenResponse = tokenResponseClient
+					.getTokenResponse(new OAuth2ClientCredentialsGrantRequest(clientRegistration));
+		}
+		catch (OAuth2AuthorizationException | ConcurrencyLimitExceededException e) {
+			// Keep serving the current token, it is still valid; try again next run
+			log.warn("Background token refresh failed for clientRegistrationId={}, leadTime={}",
+					clientRegistration.getRegistrationId(), leadTime, e);
+			return;
+		}
+		var refreshed = new OAuth2AuthorizedClient(clientRegistration, authorizedClient.getPrincipalName(),
+				tokenResponse.getAccessToken());
+		authorizationSuccessHandler.onAuthorizationSuccess(refreshed, ANONYMOUS_PRINCIPAL, Map.of());
+		lastRefreshLeadTimes.put(clientRegistration.getRegistrationId(), leadTime);
+		log.info("Refreshed token in background for clientRegistrationId={}, leadTime={}",
+				clientRegistration.getRegistrationId(), leadTime);
+	}
+
+	/**
+	 * How long before the previous token's expiry the most recent background refresh of
+	 * the client registration happened, or null if none has happened yet
+	 */
+	public Duration getLastRefreshLeadTime(String registrationId) {
+		return lastRefreshLeadTimes.get(registrationId);
+	}
+
+}
@@ -1,12 +1,18 @@
 package com.davidagood.spring.oauth.clientcredentials;
 
+import io.micrometer.core.instrument.MeterRegistry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.security.authentication.AnonymousAuthenticationToken;
 import org.springframework.security.core.Authentication;
+import org.springframework.security.core.authority.AuthorityUtils;
 import org.springframework.security.oauth2.client.AuthorizedClientServiceOAuth2AuthorizedClientManager;
+import org.springframework.security.oauth2.client.AuthorizedClientServiceReactiveOAuth2AuthorizedClientManager;
 import org.springframework.security.oauth2.client.OAuth2AuthorizationFailureHandler;
 import org.springframework.security.oauth2.client.OAuth2AuthorizationSuccessHandler;
 import org.springframework.security.oauth2.client.OAuth2AuthorizedClient;
@@ -14,60 +20,220 @@ import org.springframework.security.oauth2.client.OAuth2AuthorizedClientManager;
 import org.springframework.security.oauth2.client.OAuth2AuthorizedClientProvider;
 import org.springframework.security.oauth2.client.OAuth2AuthorizedClientProviderBuilder;
 import org.springframework.security.oauth2.client.OAuth2AuthorizedClientService;
+import org.springframework.security.oauth2.client.ReactiveOAuth2AuthorizationFailureHandler;
+import org.springframework.security.oauth2.client.ReactiveOAuth2AuthorizationSuccessHandler;
+import org.springframework.security.oauth2.client.ReactiveOAuth2AuthorizedClientManager;
+import org.springframework.security.oauth2.client.ReactiveOAuth2AuthorizedClientProvider;
+import org.springframework.security.oauth2.client.ReactiveOAuth2AuthorizedClientProviderBuilder;
 import org.springframework.security.oauth2.client.RemoveAuthorizedClientOAuth2AuthorizationFailureHandler;
-import org.springframework.security.oauth2.client.endpoint.DefaultClientCredentialsTokenResponseClient;
 import org.springframework.security.oauth2.client.endpoint.OAuth2AccessTokenResponseClient;
 import org.springframework.security.oauth2.client.endpoint.OAuth2ClientCredentialsGrantRequest;
+import org.springframework.security.oauth2.client.endpoint.ReactiveOAuth2AccessTokenResponseClient;
+import org.springframework.security.oauth2.client.endpoint.WebClientReactiveClientCredentialsTokenResponseClient;
 import org.springframework.security.oauth2.client.registration.ClientRegistrationRepository;
+import org.springframework.security.oauth2.client.registration.InMemoryReactiveClientRegistrationRepository;
+import org.springframework.security.oauth2.client.web.reactive.function.client.ServerOAuth2AuthorizedClientExchangeFilterFunction;
 import org.springframework.security.oauth2.client.web.reactive.function.client.ServletOAuth2AuthorizedClientExchangeFilterFunction;
 import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
 
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.Map;
+import java.util.Set;
 
 @Configuration
 public class AuthorizedWebClientConfig {
 
 	public static final String REGISTRATION_ID = "my-client";
 
+	/**
+	 * The same principal ServletOAuth2AuthorizedClientExchangeFilterFunction uses when
+	 * there is no authenticated user, which is always the case for client credentials
+	 */
+	static final Authentication ANONYMOUS_PRINCIPAL = new AnonymousAuthenticationToken("anonymous", "anonymousUser",
+			AuthorityUtils.createAuthorityList("ROLE_ANONYMOUS"));
+
+	static final String TOKEN_EVICTIONS_COUNTER = "oauth2.token.evictions";
+
 	private static final Logger log = LoggerFactory.getLogger(AuthorizedWebClientConfig.class);
 
+	/**
+	 * Unless disabled, the bearer token is attached by
+	 * CachingBearerExchangeFilterFunction, which skips the OAuth2AuthorizedClientManager
+	 * while the OAuth2AuthorizedClientService still holds its token and that token is not
+	 * about to expire
+	 */
 	@Bean("authenticatedWebClient")
 	WebClient webClient(WebClient.Builder webClientBuilder, OAuth2AuthorizedClientManager authorizedClientManager,
-			@Qualifier("resourceServerAuthorizationFailureHandler") OAuth2AuthorizationFailureHandler failureHandler) {
+			@Qualifier("resourceServerAuthorizationFailureHandler") OAuth2AuthorizationFailureHandler failureHandler,
+			OAuth2AuthorizedClientService authorizedClientService,
+			AuthorizedClientCacheConfig authorizedClientCacheConfig, UnauthorizedRetryConfig unauthorizedRetryConfig,
+			MeterRegistry meterRegistry) {
+		if (authorizedClientCacheConfig.isEnabled()) {
+			// @formatter:off
+			return withUnauthorizedRetry(webClientBuilder, unauthorizedRetryConfig, meterRegistry)
+					.filter(new CachingBearerExchangeFilterFunction(authorizedClientManager, failureHandler,
+							authorizedClientService))
+					.build();
+			// @formatter:on
+		}
 		ServletOAuth2AuthorizedClientExchangeFilterFunction oauth2Client = new ServletOAuth2AuthorizedClientExchangeFilterFunction(
 				authorizedClientManager);
-		oauth2Client.setAuthorizationFailureHandler(failureHandler);
 		// @formatter:off
-		return webClientBuilder
+		return withUnauthorizedRetry(webClientBuilder, unauthorizedRetryConfig, meterRegistry)
 				.apply(oauth2Client.oauth2Configuration())
+				.filter(new RejectedTokenExchangeFilterFunction(failureHandler))
 				.build();
 		// @formatter:on
 	}
 
+	/**
+	 * Non-blocking counterpart of authenticatedWebClient. The token is acquired by a
+	 * ReactiveOAuth2AuthorizedClientManager without blocking a thread, and the authorized
+	 * clients are shared with the blocking path through the same
+	 * OAuth2AuthorizedClientService, as are the success and failure handlers. A 401 is
+	 * handed to the failure handler by RejectedTokenExchangeFilterFunction, as on the
+	 * blocking path without the authorized client cache
+	 */
+	@Bean("reactiveAuthenticatedWebClient")
+	WebClient reactiveWebClient(WebClient.Builder webClientBuilder,
+			ReactiveOAuth2AuthorizedClientManager reactiveAuthorizedClientManager,
+			@Qualifier("resourceServerAuthorizationFailureHandler") OAuth2AuthorizationFailureHandler failureHandler,
+			UnauthorizedRetryConfig unauthorizedRetryConfig, MeterRegistry meterRegistry) {
+		ServerOAuth2AuthorizedClientExchangeFilterFunction oauth2Client = new ServerOAuth2AuthorizedClientExchangeFilterFunction(
+				reactiveAuthorizedClientManager);
+		// @formatter:off
+		return withUnauthorizedRetry(webClientBuilder, unauthorizedRetryConfig, meterRegistry)
+				.filter(oauth2Client)
+				.filter(new RejectedTokenExchangeFilterFunction(failureHandler))
+				.build();
+		// @formatter:on
+	}
+
+	/**
+	 * The retry filter has to come before, and so wrap, the filter which attaches the
+	 * token
+	 */
+	static WebClient.Builder withUnauthorizedRetry(WebClient.Builder webClientBuilder, UnauthorizedRetryConfig config,
+			MeterRegistry meterRegistry) {
+		if (!config.isEnabled()) {
+			return webClientBuilder;
+		}
+		return webClientBuilder.filter(new UnauthorizedRetryExchangeFilterFunction(meterRegistry));
+	}
+
+	@Bean
+	ReactiveOAuth2AuthorizedClientManager reactiveAuthorizedClientManager(
+			ClientRegistrationRepository clientRegistrationRepository,
+			OAuth2AuthorizedClientService oAuth2AuthorizedClientService,
+			ReactiveOAuth2AccessTokenResponseClient<OAuth2ClientCredentialsGrantRequest> reactiveTokenResponseClient,
+			@Qualifier("authorizationServerAuthorizationSuccessHandler") OAuth2AuthorizationSuccessHandler authorizationSuccessHandler,
+			@Qualifier("authorizationServerAuthorizationFailureHandler") OAuth2AuthorizationFailureHandler authorizationFailureHandler,
+			TokenStoreConfig tokenStoreConfig, ObjectProvider<TokenGrantLock> tokenGrantLock) {
+		ReactiveOAuth2AuthorizedClientProvider authorizedClientProvider = ReactiveOAuth2AuthorizedClientProviderBuilder
+				.builder().clientCredentials(r -> r.accessTokenResponseClient(reactiveTokenResponseClient)).build();
+		var authorizedClientManager = new AuthorizedClientServiceReactiveOAuth2AuthorizedClientManager(
+				new InMemoryReactiveClientRegistrationRepository(
+						clientRegistrationRepository.findByRegistrationId(REGISTRATION_ID)),
+				new ReactiveOAuth2AuthorizedClientServiceAdapter(oAuth2AuthorizedClientService,
+						tokenStoreConfig.getType() == TokenStoreConfig.Type.IN_MEMORY ? Schedulers.immediate()
+								: Schedulers.boundedElastic()));
+		authorizedClientManager.setAuthorizedClientProvider(authorizedClientProvider);
+		authorizedClientManager.setAuthorizationSuccessHandler(toReactive(authorizationSuccessHandler));
+		authorizedClientManager.setAuthorizationFailureHandler(toReactive(authorizationFailureHandler));
+		TokenGrantLock grantLock = tokenGrantLock.getIfAvailable();
+		if (grantLock == null) {
+			return new SingleFlightReactiveOAuth2AuthorizedClientManager(authorizedClientManager);
+		}
+		return new SingleFlightReactiveOAuth2AuthorizedClientManager(
+				new LockingReactiveOAuth2AuthorizedClientManager(authorizedClientManager, grantLock));
+	}
+
+	/**
+	 * The handlers save to and remove from the OAuth2AuthorizedClientService, which may
+	 * block, so they are not called on the event loop that delivered the response
+	 */
+	private static ReactiveOAuth2AuthorizationSuccessHandler toReactive(OAuth2AuthorizationSuccessHandler handler) {
+		return (authorizedClient, principal, attributes) -> Mono
+				.<Void>fromRunnable(() -> handler.onAuthorizationSuccess(authorizedClient, principal, attributes))
+				.subscribeOn(Schedulers.boundedElastic());
+	}
+
+	private static ReactiveOAuth2AuthorizationFailureHandler toReactive(OAuth2AuthorizationFailureHandler handler) {
+		return (authorizationException, principal, attributes) -> Mono
+				.<Void>fromRunnable(() -> handler.onAuthorizationFailure(authorizationException, principal, attributes))
+				.subscribeOn(Schedulers.boundedElastic());
+	}
+
 	@Bean("resourceServerAuthorizationFailureHandler")
 	OAuth2AuthorizationFailureHandler resourceServerAuthorizationFailureHandler(
-			OAuth2AuthorizedClientService authorizedClientService) {
+			OAuth2AuthorizedClientService authorizedClientService, MeterRegistry meterRegistry,
+			ObjectProvider<TokenGrantLock> tokenGrantLock) {
+		TokenGrantLock grantLock = tokenGrantLock.getIfAvailable();
 		return new RemoveAuthorizedClientOAuth2AuthorizationFailureHandler(
 				(clientRegistrationId, principal, attributes) -> {
+					if (isAlreadyReplaced(authorizedClientService, grantLock, clientRegistrationId, principal,
+							attributes)) {
+						log.info("Rejected token for clientRegistrationId={} has already been removed",
+								clientRegistrationId);
+						if (authorizedClientService instanceof NearCachingOAuth2AuthorizedClientService) {
+							// This node may still hold it, the store's token is loaded
+							// instead
+							((NearCachingOAuth2AuthorizedClientService) authorizedClientService)
+									.invalidateCachedAuthorizedClient(clientRegistrationId, principal.getName());
+						}
+						return;
+					}
 					log.info("Resource server authorization failure for clientRegistrationId={}", clientRegistrationId);
+					meterRegistry.counter(TOKEN_EVICTIONS_COUNTER, "clientRegistrationId", clientRegistrationId,
+							"reason", "resource_server_unauthorized").increment();
 					authorizedClientService.removeAuthorizedClient(clientRegistrationId, principal.getName());
 				});
 	}
 
+	/**
+	 * Whether the stored authorized client no longer holds the token the resource server
+	 * rejected, because a concurrent request rejected it too and it has been removed or
+	 * replaced since. Only known when the rejected token is among the attributes, as
+	 * CachingBearerExchangeFilterFunction and RejectedTokenExchangeFilterFunction put it
+	 * there. With a shared token store the store itself is read, as this node's near
+	 * cache may still hold the rejected token after another node has replaced it
+	 */
+	private static boolean isAlreadyReplaced(OAuth2AuthorizedClientService authorizedClientService,
+			TokenGrantLock grantLock, String clientRegistrationId, Authentication principal,
+			Map<String, Object> attributes) {
+		Object rejectedTokenValue = attributes.get(CachingBearerExchangeFilterFunction.REJECTED_ACCESS_TOKEN_ATTR_NAME);
+		if (rejectedTokenValue == null) {
+			return false;
+		}
+		OAuth2AuthorizedClient stored = (grantLock != null)
+				? grantLock.loadFromStore(clientRegistrationId, principal.getName())
+				: authorizedClientService.loadAuthorizedClient(clientRegistrationId, principal.getName());
+		return stored == null || !rejectedTokenValue.equals(stored.getAccessToken().getTokenValue());
+	}
+
 	/**
 	 * Since we do not want the client credentials grant request to be tied to specific
 	 * HTTP session via the context of a servlet request, we do not use the
 	 * DefaultOAuth2AuthorizedClientManager here. Instead we use the
 	 * AuthorizedClientServiceOAuth2AuthorizedClientManager which is designed for use
 	 * outside of a servlet context and behaves like we would expect for
-	 * service-to-service authorization
+	 * service-to-service authorization. It is wrapped so that concurrent requests
+	 * arriving while the token is missing or expired share a single grant request instead
+	 * of each making their own. With a shared token store, nodes additionally take turns
+	 * through the TokenGrantLock
 	 */
 	@Bean
 	OAuth2AuthorizedClientManager authorizedClientManager(ClientRegistrationRepository clientRegistrationRepository,
 			OAuth2AuthorizedClientService oAuth2AuthorizedClientService,
 			OAuth2AccessTokenResponseClient<OAuth2ClientCredentialsGrantRequest> tokenResponseClient,
 			@Qualifier("authorizationServerAuthorizationSuccessHandler") OAuth2AuthorizationSuccessHandler authorizationSuccessHandler,
-			@Qualifier("authorizationServerAuthorizationFailureHandler") OAuth2AuthorizationFailureHandler authorizationFailureHandler) {
+			@Qualifier("authorizationServerAuthorizationFailureHandler") OAuth2AuthorizationFailureHandler authorizationFailureHandler,
+			ObjectProvider<TokenGrantLock> tokenGrantLock) {
 		OAuth2AuthorizedClientProvider authorizedClientProvider = OAuth2AuthorizedClientProviderBuilder.builder()
 				.clientCredentials(r -> r.accessTokenResponseClient(tokenResponseClient)).clientCredentials().build();
 		var authorizedClientManager = new AuthorizedClientServiceOAuth2AuthorizedClientManager(
@@ -75,7 +241,12 @@ public class AuthorizedWebClientConfig {
 		authorizedClientManager.setAuthorizedClientProvider(authorizedClientProvider);
 		authorizedClientManager.setAuthorizationSuccessHandler(authorizationSuccessHandler);
 		authorizedClientManager.setAuthorizationFailureHandler(authorizationFailureHandler);
-		return authorizedClientManager;
+		TokenGrantLock grantLock = tokenGrantLock.getIfAvailable();
+		if (grantLock == null) {
+			return new SingleFlightOAuth2AuthorizedClientManager(authorizedClientManager);
+		}
+		return new SingleFlightOAuth2AuthorizedClientManager(
+				new LockingOAuth2AuthorizedClientManager(authorizedClientManager, grantLock));
 	}
 
 	@Bean("authorizationServerAuthorizationSuccessHandler")
@@ -105,8 +276,95 @@ public class AuthorizedWebClientConfig {
 	}
 
 	@Bean
-	OAuth2AccessTokenResponseClient<OAuth2ClientCredentialsGrantRequest> tokenResponseClient() {
-		return new DefaultClientCredentialsTokenResponseClient();
+	OAuth2AccessTokenResponseClient<OAuth2ClientCredentialsGrantRequest> tokenResponseClient(
+			ReactiveOAuth2AccessTokenResponseClient<OAuth2ClientCredentialsGrantRequest> reactiveTokenResponseClient) {
+		return new WebClientClientCredentialsTokenResponseClient(reactiveTokenResponseClient);
+	}
+
+	/**
+	 * Grant requests are timed by MeteredReactiveTokenResponseClient, and like every
+	 * request made with a WebClient built from Spring Boot's WebClient.Builder they are
+	 * also recorded in http.client.requests along with their status. Timeouts and retries
+	 * are applied around the metered client, so every attempt is recorded, one which
+	 * timed out with the CANCELLED outcome. With concurrency-limit.enabled each attempt
+	 * also has to get past the concurrency limiter of its client registration, named
+	 * token-grant-{registrationId}. Upstreams may set their own token-grant timeout and
+	 * retries, which apply to every grant request of their client registration.
+	 * TokenEndpointStatusExchangeFilterFunction is the outermost filter, so
+	 * http.client.requests still records the status it classifies
+	 */
+	@Bean
+	ReactiveOAuth2AccessTokenResponseClient<OAuth2ClientCredentialsGrantRequest> reactiveTokenResponseClient(
+			WebClient.Builder webClientBuilder, MeterRegistry meterRegistry,
+			SecretWordsClientConfig secretWordsClientConfig, UpstreamsConfig upstreamsConfig,
+			ConcurrencyLimitConfig concurrencyLimitConfig) {
+		var reactiveTokenResponseClient = new WebClientReactiveClientCredentialsTokenResponseClient();
+		reactiveTokenResponseClient.setWebClient(webClientBuilder.clone()
+				.filters(filters -> filters.add(0, new TokenEndpointStatusExchangeFilterFunction())).build());
+		ReactiveOAuth2AccessTokenResponseClient<OAuth2ClientCredentialsGrantRequest> metered = new MeteredReactiveTokenResponseClient(
+				reactiveTokenResponseClient, meterRegistry);
+		Map<String, SecretWordsClientConfig.Call> tokenGrants = tokenGrantsByRegistrationId(upstreamsConfig);
+		Set<String> registrationIds = new LinkedHashSet<>();
+		registrationIds.add(REGISTRATION_ID);
+		upstreamsConfig.getRegistrations().values()
+				.forEach(upstream -> registrationIds.add(upstream.getRegistrationId()));
+		return new PerRegistrationReactiveTokenResponseClient(registrationIds, registrationId -> {
+			SecretWordsClientConfig.Call tokenGrant = tokenGrants.getOrDefault(registrationId,
+					secretWordsClientConfig.getTokenGrant());
+			if (!concurrencyLimitConfig.isEnabled()) {
+				return new ResilientReactiveTokenResponseClient(metered, tokenGrant);
+			}
+			var limiter = new AimdConcurrencyLimiter("token-grant-" + registrationId,
+					concurrencyLimitConfig.getTokenGrant(), concurrencyLimitConfig.getRetryAfter(), meterRegistry);
+			return new ResilientReactiveTokenResponseClient(grantRequest -> limiter
+					.limit(metered.getTokenResponse(grantRequest), ResilientReactiveTokenResponseClient::isTransient),
+					tokenGrant);
+		});
+	}
+
+	/**
+	 * Fails at startup when upstreams which share a client registration both set their
+	 * own token-grant, as only one of them could apply
+	 */
+	private static Map<String, SecretWordsClientConfig.Call> tokenGrantsByRegistrationId(
+			UpstreamsConfig upstreamsConfig) {
+		Map<String, SecretWordsClientConfig.Call> tokenGrants = new HashMap<>();
+		upstreamsConfig.getRegistrations().forEach((name, upstream) -> {
+			if (upstream.getTokenGrant() != null
+					&& tokenGrants.putIfAbsent(upstream.getRegistrationId(), upstream.getTokenGrant()) != null) {
+				throw new IllegalStateException(String.format(
+						"upstreams.registrations.%s.token-grant is set, but another upstream of client registration %s already sets it",
+						name, upstream.getRegistrationId()));
+			}
+		});
+		return tokenGrants;
+	}
+
+	/**
+	 * Spring Boot applies a ClientHttpConnector bean to every WebClient.Builder it
+	 * creates, so the resource server WebClients and the token response clients all share
+	 * this HttpClient along with its connection pool and timeouts
+	 */
+	@Bean
+	ReactorClientHttpConnector clientHttpConnector(HttpClient httpClient) {
+		return new ReactorClientHttpConnector(httpClient);
+	}
+
+	@Bean
+	HttpClient httpClient(HttpClientConfig config, ConnectionProvider connectionProvider) {
+		return config.createHttpClient(connectionProvider);
+	}
+
+	/**
+	 * Pool gauges (total, active, idle and pending connections per remote address) are
+	 * registered with Micrometer under reactor.netty.connection.provider
+	 */
+	@Bean(destroyMethod = "dispose")
+	ConnectionProvider connectionProvider(HttpClientConfig config) {
+		ConnectionProvider.Builder builder = config.getPool().applyTo(ConnectionProvider.builder("http-client"));
+		config.getHosts().forEach((host, pool) -> builder.forRemoteHost(HttpClientConfig.parseHost(host),
+				hostSpec -> pool.applyTo(hostSpec)));
+		return builder.build();
 	}
 
 }
@@ -0,0 +1,31 @@
+package com.davidagood.spring.oauth.clientcredentials;
+
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.converter.cbor.MappingJackson2CborHttpMessageConverter;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.http.converter.smile.MappingJackson2SmileHttpMessageConverter;
+
+/**
+ * Smile and CBOR encodings of the JSON responses, for internal callers which accept
+ * application/x-jackson-smile or application/cbor. Spring MVC registers converters for
+ * both on its own once they are on the classpath, but their ObjectMapper would ignore the
+ * spring.jackson properties; these take their place, after the JSON converter, so callers
+ * which accept anything still get JSON
+ */
+@Configuration
+public class BinaryFormatsConfig {
+
+	@Bean
+	MappingJackson2SmileHttpMessageConverter smileHttpMessageConverter(Jackson2ObjectMapperBuilder builder) {
+		return new MappingJackson2SmileHttpMessageConverter(builder.factory(new SmileFactory()).build());
+	}
+
+	@Bean
+	MappingJackson2CborHttpMessageConverter cborHttpMessageConverter(Jackson2ObjectMapperBuilder builder) {
+		return new MappingJackson2CborHttpMessageConverter(builder.factory(new CBORFactory()).build());
+	}
+
+}
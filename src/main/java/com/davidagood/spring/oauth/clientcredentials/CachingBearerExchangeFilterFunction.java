@@ -0,0 +1,205 @@
+package com.davidagood.spring.oauth.clientcredentials;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.security.oauth2.client.ClientAuthorizationException;
+import org.springframework.security.oauth2.client.OAuth2AuthorizationFailureHandler;
+import org.springframework.security.oauth2.client.OAuth2AuthorizeRequest;
+import org.springframework.security.oauth2.client.OAuth2AuthorizedClient;
+import org.springframework.security.oauth2.client.OAuth2AuthorizedClientManager;
+import org.springframework.security.oauth2.client.OAuth2AuthorizedClientService;
+import org.springframework.security.oauth2.core.OAuth2AccessToken;
+import org.springframework.security.oauth2.core.OAuth2Error;
+import org.springframework.security.oauth2.core.OAuth2ErrorCodes;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.ExchangeFilterFunction;
+import org.springframework.web.reactive.function.client.ExchangeFunction;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static com.davidagood.spring.oauth.clientcredentials.AuthorizedWebClientConfig.ANONYMOUS_PRINCIPAL;
+
+/**
+ * Replacement for ServletOAuth2AuthorizedClientExchangeFilterFunction on the blocking
+ * path which does not go through the OAuth2AuthorizedClientManager, and so does not
+ * resolve the principal, while it already has a token which is not about to expire. The
+ * token and its prebuilt Authorization header are held per client registration in an
+ * immutable snapshot, read with a single volatile read and swapped with compare-and-set.
+ * Every request checks the snapshot against the authorized client the
+ * OAuth2AuthorizedClientService holds without blocking, which for
+ * NearCachingOAuth2AuthorizedClientService is the one in memory, so a token that the
+ * background refresher, the reactive path or another node replaced or removed is not sent
+ * again. Reads the same client registration id request attribute as the Spring Security
+ * filter functions
+ */
+public class CachingBearerExchangeFilterFunction implements ExchangeFilterFunction {
+
+	static final String CLIENT_REGISTRATION_ID_ATTR_NAME = OAuth2AuthorizedClient.class.getName()
+			.concat(".CLIENT_REGISTRATION_ID");
+
+	/**
+	 * Failure handler attribute holding the value of the token the resource server
+	 * rejected, so that a token which has already been replaced is not removed
+	 */
+	static final String REJECTED_ACCESS_TOKEN_ATTR_NAME = OAuth2AccessToken.class.getName()
+			.concat(".REJECTED_TOKEN_VALUE");
+
+	private static final Executor BOUNDED_ELASTIC = task -> Schedulers.boundedElastic().schedule(task);
+
+	private final OAuth2AuthorizedClientManager authorizedClientManager;
+
+	private final OAuth2AuthorizationFailureHandler authorizationFailureHandler;
+
+	private final OAuth2AuthorizedClientService authorizedClientService;
+
+	private final ConcurrentMap<String, AtomicReference<Snapshot>> snapshots = new ConcurrentHashMap<>();
+
+	public CachingBearerExchangeFilterFunction(OAuth2AuthorizedClientManager authorizedClientManager,
+			OAuth2AuthorizationFailureHandler authorizationFailureHandler,
+			OAuth2AuthorizedClientService authorizedClientService) {
+		this.authorizedClientManager = authorizedClientManager;
+		this.authorizationFailureHandler = authorizationFailureHandler;
+		this.authorizedClientService = authorizedClientService;
+	}
+
+	@Override
+	public Mono<ClientResponse> filter(ClientRequest request, ExchangeFunction next) {
+		Object clientRegistrationId = request.attributes().get(CLIENT_REGISTRATION_ID_ATTR_NAME);
+		if (!(clientRegistrationId instanceof String)) {
+			return next.exchange(request);
+		}
+		AtomicReference<Snapshot> current = snapshots.get(clientRegistrationId);
+		if (current == null) {
+			current = snapshots.computeIfAbsent((String) clientRegistrationId, id -> new AtomicReference<>());
+		}
+		Snapshot snapshot = current.get();
+		Snapshot stored = storedSnapshot((String) clientRegistrationId, snapshot);
+		if (stored != null) {
+			if (stored != snapshot) {
+				current.compareAndSet(snapshot, stored);
+			}
+			return exchange(request, next, current, stored);
+		}
+		AtomicReference<Snapshot> reference = current;
+		// The manager blocks while it makes a grant request, as it does for the Spring
+		// Security filter function. Cancelling, e.g. on a timeout, must not interrupt the
+		// thread: the grant request may be shared with concurrent callers and the token
+		// is still worth having, so it is run as a CompletableFuture, whose cancellation
+		// leaves the task alone
+		// @formatter:off
+		return Mono.fromFuture(() -> CompletableFuture.supplyAsync(
+						() -> authorize((String) clientRegistrationId, reference, snapshot), BOUNDED_ELASTIC))
+				.flatMap(authorized -> exchange(request, next, reference, authorized))
+				.switchIfEmpty(Mono.defer(() -> next.exchange(request)));
+		// @formatter:on
+	}
+
+	/**
+	 * The snapshot of the authorized client the service holds, which is the given one
+	 * while it still holds that token, or null if it holds none which is not about to
+	 * expire, so that the manager has to be asked
+	 */
+	private Snapshot storedSnapshot(String clientRegistrationId, Snapshot snapshot) {
+		OAuth2AuthorizedClient authorizedClient = loadWithoutBlocking(clientRegistrationId);
+		if (authorizedClient == null) {
+			return null;
+		}
+		if (snapshot == null || !snapshot.holds(authorizedClient)) {
+			snapshot = new Snapshot(authorizedClient);
+		}
+		return snapshot.isUsable(System.currentTimeMillis()) ? snapshot : null;
+	}
+
+	private OAuth2AuthorizedClient loadWithoutBlocking(String clientRegistrationId) {
+		if (authorizedClientService instanceof NearCachingOAuth2AuthorizedClientService) {
+			return ((NearCachingOAuth2AuthorizedClientService) authorizedClientService)
+					.loadCachedAuthorizedClient(clientRegistrationId, ANONYMOUS_PRINCIPAL.getName());
+		}
+		return authorizedClientService.loadAuthorizedClient(clientRegistrationId, ANONYMOUS_PRINCIPAL.getName());
+	}
+
+	private Snapshot authorize(String clientRegistrationId, AtomicReference<Snapshot> reference, Snapshot stale) {
+		OAuth2AuthorizeRequest authorizeRequest = OAuth2AuthorizeRequest.withClientRegistrationId(clientRegistrationId)
+				.principal(ANONYMOUS_PRINCIPAL).build();
+		OAuth2AuthorizedClient authorizedClient = authorizedClientManager.authorize(authorizeRequest);
+		if (authorizedClient == null) {
+			return null;
+		}
+		var fresh = new Snapshot(authorizedClient);
+		// Loses to a concurrent caller which installed its snapshot first, both hold the
+		// same token since the manager is single flight
+		reference.compareAndSet(stale, fresh);
+		return fresh;
+	}
+
+	private Mono<ClientResponse> exchange(ClientRequest request, ExchangeFunction next,
+			AtomicReference<Snapshot> reference, Snapshot snapshot) {
+		ClientRequest authorizedRequest = ClientRequest.from(request)
+				.header(HttpHeaders.AUTHORIZATION, snapshot.authorizationHeader).build();
+		return next.exchange(authorizedRequest).flatMap(response -> {
+			if (response.rawStatusCode() != HttpStatus.UNAUTHORIZED.value()) {
+				return Mono.just(response);
+			}
+			return invalidate(reference, snapshot).thenReturn(response);
+		});
+	}
+
+	/**
+	 * Drops the snapshot unless it has already been replaced, and lets the failure
+	 * handler remove the authorized client, like the Spring Security filter functions do
+	 * for a 401, unless the stored one already holds a different token
+	 */
+	private Mono<Void> invalidate(AtomicReference<Snapshot> reference, Snapshot snapshot) {
+		reference.compareAndSet(snapshot, null);
+		String clientRegistrationId = snapshot.authorizedClient.getClientRegistration().getRegistrationId();
+		var exception = new ClientAuthorizationException(new OAuth2Error(OAuth2ErrorCodes.INVALID_TOKEN),
+				clientRegistrationId);
+		Map<String, Object> attributes = Map.of(REJECTED_ACCESS_TOKEN_ATTR_NAME,
+				snapshot.authorizedClient.getAccessToken().getTokenValue());
+		// @formatter:off
+		return Mono.<Void>fromRunnable(() -> authorizationFailureHandler.onAuthorizationFailure(exception,
+						ANONYMOUS_PRINCIPAL, attributes))
+				.subscribeOn(Schedulers.boundedElastic());
+		// @formatter:on
+	}
+
+	private static final class Snapshot {
+
+		private final OAuth2AuthorizedClient authorizedClient;
+
+		private final String[] authorizationHeader;
+
+		/**
+		 * From then on the manager is asked again, which renews the token, allowing for
+		 * the same clock skew as the provider does
+		 */
+		private final long renewAtMillis;
+
+		private Snapshot(OAuth2AuthorizedClient authorizedClient) {
+			OAuth2AccessToken accessToken = authorizedClient.getAccessToken();
+			this.authorizedClient = authorizedClient;
+			this.authorizationHeader = new String[] { "Bearer " + accessToken.getTokenValue() };
+			this.renewAtMillis = accessToken.getExpiresAt() == null ? Long.MAX_VALUE : accessToken.getExpiresAt()
+					.minus(NearCachingOAuth2AuthorizedClientService.CLOCK_SKEW).toEpochMilli();
+		}
+
+		private boolean isUsable(long nowMillis) {
+			return nowMillis < renewAtMillis;
+		}
+
+		private boolean holds(OAuth2AuthorizedClient other) {
+			return other == authorizedClient
+					|| other.getAccessToken().getTokenValue().equals(authorizedClient.getAccessToken().getTokenValue());
+		}
+
+	}
+
+}
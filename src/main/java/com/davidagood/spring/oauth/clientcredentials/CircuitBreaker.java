@@ -0,0 +1,171 @@
+package com.davidagood.spring.oauth.clientcredentials;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.publisher.Mono;
+
+import java.util.function.Predicate;
+
+/**
+ * Count based circuit breaker. While closed it records the outcome of the last
+ * sliding-window-size calls and opens once at least minimum-number-of-calls are recorded
+ * and the share of failures among them reaches the failure rate threshold. While open
+ * every call is rejected with an {@link OpenException} without being made. Once the wait
+ * duration has passed a single trial call is let through (half-open): if it succeeds the
+ * circuit breaker closes with an empty window, if it fails it opens again. Errors which
+ * are not failures, e.g. 4xx responses, count neither way
+ */
+public class CircuitBreaker {
+
+	private static final Logger log = LoggerFactory.getLogger(CircuitBreaker.class);
+
+	enum State {
+
+		CLOSED, OPEN, HALF_OPEN
+
+	}
+
+	private final String name;
+
+	private final SecretWordsClientConfig.CircuitBreakerPolicy policy;
+
+	private final long waitDurationInOpenStateNanos;
+
+	/**
+	 * Ring buffer of the recorded outcomes, true for a failure
+	 */
+	private final boolean[] window;
+
+	private int windowIndex;
+
+	private int recordedCalls;
+
+	private int failedCalls;
+
+	private State state = State.CLOSED;
+
+	private long openedAtNanos;
+
+	private boolean trialCallInFlight;
+
+	public CircuitBreaker(String name, SecretWordsClientConfig.CircuitBreakerPolicy policy) {
+		this.name = name;
+		this.policy = policy;
+		this.waitDurationInOpenStateNanos = policy.getWaitDurationInOpenState().toNanos();
+		this.window = new boolean[policy.getSlidingWindowSize()];
+	}
+
+	/**
+	 * Subscribes to the call only if the circuit breaker permits it, and records its
+	 * outcome. Each subscription to the returned Mono, e.g. each retry, is a separate
+	 * call
+	 */
+	public <T> Mono<T> protect(Mono<T> call, Predicate<Throwable> isFailure) {
+		if (!policy.isEnabled()) {
+			return call;
+		}
+		return Mono.defer(() -> {
+			if (!tryAcquirePermission()) {
+				return Mono.error(new OpenException(name));
+			}
+			// @formatter:off
+			return call
+					.doOnSuccess(value -> onSuccess())
+					.doOnError(e -> {
+						if (isFailure.test(e)) {
+							onFailure();
+						}
+						else {
+							releasePermission();
+						}
+					})
+					.doOnCancel(this::releasePermission);
+			// @formatter:on
+		});
+	}
+
+	synchronized State getState() {
+		return state;
+	}
+
+	private synchronized boolean tryAcquirePermission() {
+		if (state == State.CLOSED) {
+			return true;
+		}
+		if (state == State.OPEN && System.nanoTime() - openedAtNanos >= waitDurationInOpenStateNanos) {
+			transitionTo(State.HALF_OPEN);
+		}
+		if (state == State.HALF_OPEN && !trialCallInFlight) {
+			trialCallInFlight = true;
+			return true;
+		}
+		return false;
+	}
+
+	private synchronized void releasePermission() {
+		trialCallInFlight = false;
+	}
+
+	private synchronized void onSuccess() {
+		if (state == State.HALF_OPEN) {
+			transitionTo(State.CLOSED);
+			return;
+		}
+		record(false);
+	}
+
+	private synchronized void onFailure() {
+		if (state == State.HALF_OPEN) {
+			transitionTo(State.OPEN);
+			return;
+		}
+		record(true);
+		if (state == State.CLOSED && recordedCalls >= policy.getMinimumNumberOfCalls()
+				&& failedCalls >= policy.getFailureRateThreshold() * recordedCalls) {
+			transitionTo(State.OPEN);
+		}
+	}
+
+	private void record(boolean failure) {
+		if (recordedCalls == window.length) {
+			if (window[windowIndex]) {
+				failedCalls--;
+			}
+		}
+		else {
+			recordedCalls++;
+		}
+		window[windowIndex] = failure;
+		if (failure) {
+			failedCalls++;
+		}
+		windowIndex = (windowIndex + 1) % window.length;
+	}
+
+	private void transitionTo(State newState) {
+		log.warn("Circuit breaker name={} changing state from={} to={}, failedCalls={}, recordedCalls={}", name, state,
+				newState, failedCalls, recordedCalls);
+		state = newState;
+		trialCallInFlight = false;
+		if (newState == State.OPEN) {
+			openedAtNanos = System.nanoTime();
+		}
+		else if (newState == State.CLOSED) {
+			windowIndex = 0;
+			recordedCalls = 0;
+			failedCalls = 0;
+		}
+	}
+
+	/**
+	 * Signalled instead of making the call while the circuit breaker is open
+	 */
+	public static class OpenException extends RuntimeException {
+
+		OpenException(String name) {
+			super("Circuit breaker " + name + " is open");
+		}
+
+	}
+
+}
@@ -0,0 +1,116 @@
+package com.davidagood.spring.oauth.clientcredentials;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.ConstructorBinding;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+@ConfigurationProperties("concurrency-limit")
+@ConstructorBinding
+public class ConcurrencyLimitConfig {
+
+	private final boolean enabled;
+
+	/**
+	 * Sent as the Retry-After header of the 503 Service Unavailable response when a
+	 * request is rejected
+	 */
+	private final Duration retryAfter;
+
+	/**
+	 * Limit of concurrent requests to the resource server
+	 */
+	private final Limit resourceServer;
+
+	/**
+	 * Limit of concurrent client credentials grant requests, applied to each client
+	 * registration on its own
+	 */
+	private final Limit tokenGrant;
+
+	public ConcurrencyLimitConfig(@DefaultValue("false") boolean enabled, @DefaultValue("1s") Duration retryAfter,
+			@DefaultValue Limit resourceServer, @DefaultValue Limit tokenGrant) {
+		this.enabled = enabled;
+		this.retryAfter = retryAfter;
+		this.resourceServer = resourceServer;
+		this.tokenGrant = tokenGrant;
+	}
+
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	public Duration getRetryAfter() {
+		return retryAfter;
+	}
+
+	public Limit getResourceServer() {
+		return resourceServer;
+	}
+
+	public Limit getTokenGrant() {
+		return tokenGrant;
+	}
+
+	public static class Limit {
+
+		private final int initialLimit;
+
+		private final int minLimit;
+
+		private final int maxLimit;
+
+		/**
+		 * Factor the limit is multiplied by when a request fails with a transient error
+		 * or takes longer than the latency threshold
+		 */
+		private final double backoffRatio;
+
+		/**
+		 * Requests taking longer than this count as a sign of overload, like a failure
+		 */
+		private final Duration latencyThreshold;
+
+		public Limit(@DefaultValue("20") int initialLimit, @DefaultValue("1") int minLimit,
+				@DefaultValue("200") int maxLimit, @DefaultValue("0.9") double backoffRatio,
+				@DefaultValue("2s") Duration latencyThreshold) {
+			if (minLimit < 1 || minLimit > initialLimit || initialLimit > maxLimit) {
+				throw new IllegalArgumentException(String.format(
+						"Expected 1 <= min-limit <= initial-limit <= max-limit but was min-limit=%s, initial-limit=%s, max-limit=%s",
+						minLimit, initialLimit, maxLimit));
+			}
+			if (backoffRatio <= 0 || backoffRatio >= 1) {
+				throw new IllegalArgumentException(
+						"backoff-ratio must be between 0 and 1 exclusive but was " + backoffRatio);
+			}
+			this.initialLimit = initialLimit;
+			this.minLimit = minLimit;
+			this.maxLimit = maxLimit;
+			this.backoffRatio = backoffRatio;
+			this.latencyThreshold = latencyThreshold;
+		}
+
+		public int getInitialLimit() {
+			return initialLimit;
+		}
+
+		public int getMinLimit() {
+			return minLimit;
+		}
+
+		public int getMaxLimit() {
+			return maxLimit;
+		}
+
+		public double getBackoffRatio() {
+			return backoffRatio;
+		}
+
+		public Duration getLatencyThreshold() {
+			return latencyThreshold;
+		}
+
+	}
+
+}
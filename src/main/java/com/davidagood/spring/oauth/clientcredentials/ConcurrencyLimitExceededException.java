@@ -0,0 +1,22 @@
+package com.davidagood.spring.oauth.clientcredentials;
+
+import java.time.Duration;
+
+/**
+ * Signalled instead of making a request while as many requests as the limit allows are
+ * already in flight
+ */
+public class ConcurrencyLimitExceededException extends RuntimeException {
+
+	private final Duration retryAfter;
+
+	public ConcurrencyLimitExceededException(String name, int limit, Duration retryAfter) {
+		super(String.format("Concurrency limit %s of %s reached", limit, name));
+		this.retryAfter = retryAfter;
+	}
+
+	public Duration getRetryAfter() {
+		return retryAfter;
+	}
+
+}
@@ -1,14 +1,33 @@
 package com.davidagood.spring.oauth.clientcredentials;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.TextNode;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.util.DigestUtils;
+import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.context.request.async.WebAsyncUtils;
 import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 
+import java.nio.charset.StandardCharsets;
 import java.time.Instant;
+import java.util.List;
 import java.util.function.Supplier;
 
 @RestController
@@ -19,22 +38,205 @@ public class Controller {
 
 	private final SecretWordsClient secretWordsClient;
 
+	private final SecretWordsCache secretWordsCache;
+
 	private final Supplier<Instant> timestampSupplier;
 
-	public Controller(SecretWordsClient secretWordsClient, Supplier<Instant> timestampSupplier) {
+	private final UpstreamClients upstreamClients;
+
+	private final SecretWordsFanOut secretWordsFanOut;
+
+	private final SecretWordLookup secretWordLookup;
+
+	private final ObjectMapper objectMapper;
+
+	public Controller(SecretWordsClient secretWordsClient, SecretWordsCache secretWordsCache,
+			Supplier<Instant> timestampSupplier, UpstreamClients upstreamClients, SecretWordsFanOut secretWordsFanOut,
+			SecretWordLookup secretWordLookup, ObjectMapper objectMapper) {
 		this.secretWordsClient = secretWordsClient;
+		this.secretWordsCache = secretWordsCache;
 		this.timestampSupplier = timestampSupplier;
+		this.upstreamClients = upstreamClients;
+		this.secretWordsFanOut = secretWordsFanOut;
+		this.secretWordLookup = secretWordLookup;
+		this.objectMapper = objectMapper;
 	}
 
+	/**
+	 * Responses carry an ETag derived from the words, callers revalidating with
+	 * If-None-Match get 304 Not Modified without a body while the words are unchanged
+	 */
 	@GetMapping("/words")
-	public SecretWordsDto getSecretWords() {
+	public ResponseEntity<SecretWordsDto> getSecretWords(
+			@RequestHeader(name = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
 		log.info("Getting secret words");
 		try {
-			return SecretWordsDto.from(secretWordsClient.getSecretWords(), timestampSupplier.get());
+			return conditionalResponse(secretWordsCache.getSecretWords(), ifNoneMatch);
 		}
 		catch (AuthorizationException | SecretWordsRequestException e) {
 			throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, e.getMessage());
 		}
 	}
 
+	/**
+	 * Same as {@link #getSecretWords(String)} but the servlet thread is released while
+	 * the upstream calls are in progress, so concurrency is bounded by connections rather
+	 * than by the size of the servlet container's thread pool
+	 */
+	@GetMapping("/words/reactive")
+	public Mono<ResponseEntity<SecretWordsDto>> getSecretWordsReactive(
+			@RequestHeader(name = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+		log.info("Getting secret words reactively");
+		// @formatter:off
+		return secretWordsCache.getSecretWordsAsync()
+				.map(words -> conditionalResponse(words, ifNoneMatch))
+				.onErrorMap(e -> e instanceof AuthorizationException || e instanceof SecretWordsRequestException,
+						e -> new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, e.getMessage()));
+		// @formatter:on
+	}
+
+	/**
+	 * Same body as {@link #getSecretWords(String)}, but the resource server's word array
+	 * is copied into it as received instead of being decoded and encoded again. The body
+	 * is written by Spring MVC's async task executor once the resource server's response
+	 * headers have arrived, and released unwritten if that never happens. Bypasses the
+	 * cache and carries no ETag
+	 */
+	@GetMapping(path = "/words/passthrough", produces = MediaType.APPLICATION_JSON_VALUE)
+	public ResponseEntity<StreamingResponseBody> getSecretWordsPassthrough(WebRequest request)
+			throws JsonProcessingException {
+		log.info("Getting secret words for passthrough");
+		// Serialized first so that nothing can fail between receiving the words and
+		// writing them
+		String createdAt = objectMapper.writeValueAsString(timestampSupplier.get());
+		Flux<DataBuffer> words;
+		try {
+			words = secretWordsClient.getSecretWordsPayload();
+		}
+		catch (AuthorizationException | SecretWordsRequestException e) {
+			throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, e.getMessage());
+		}
+		return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON)
+				.body(SecretWordsPassthrough.body(words, createdAt, WebAsyncUtils.getAsyncManager(request)));
+	}
+
+	/**
+	 * Streams the words as newline delimited JSON strings while they are still being
+	 * received from the resource server, for word lists too large to hold in memory.
+	 * Bypasses the cache
+	 */
+	@GetMapping(path = "/words/stream", produces = MediaType.APPLICATION_NDJSON_VALUE)
+	public Flux<TextNode> streamSecretWords() {
+		log.info("Streaming secret words");
+		// @formatter:off
+		return secretWordsClient.streamSecretWords()
+				.map(TextNode::valueOf)
+				.onErrorMap(e -> e instanceof AuthorizationException || e instanceof SecretWordsRequestException,
+						e -> new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, e.getMessage()));
+		// @formatter:on
+	}
+
+	/**
+	 * Words of one of the upstreams configured under upstreams.registrations, fetched
+	 * with the token of its own client registration. Bypasses the cache
+	 */
+	@GetMapping("/upstreams/{name}/words")
+	public Mono<SecretWordsDto> getUpstreamSecretWords(@PathVariable String name) {
+		log.info("Getting secret words from upstream={}", name);
+		UpstreamClient upstreamClient = upstreamClients.get(name)
+				.orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Unknown upstream " + name));
+		// @formatter:off
+		return upstreamClient.getSecretWords()
+				.map(words -> SecretWordsDto.from(words, timestampSupplier.get()))
+				.onErrorMap(e -> e instanceof AuthorizationException || e instanceof SecretWordsRequestException,
+						e -> new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, e.getMessage()));
+		// @formatter:on
+	}
+
+	/**
+	 * Words of all the shards configured under fan-out.urls, queried in parallel with a
+	 * single token. Shards which fail or time out are listed in failedShards and the
+	 * response is partial, it is only an error when every shard failed. Bypasses the
+	 * cache
+	 */
+	@GetMapping("/words/fan-out")
+	public Mono<FanOutSecretWordsDto> getFanOutSecretWords() {
+		log.info("Getting secret words from all shards");
+		// @formatter:off
+		return secretWordsFanOut.getSecretWords()
+				.flatMap(result -> result.isFailed()
+						? Mono.error(new SecretWordsRequestException("All shards failed: " + result.getFailedShards()))
+						: Mono.just(FanOutSecretWordsDto.from(result, timestampSupplier.get())))
+				.onErrorMap(e -> e instanceof AuthorizationException || e instanceof SecretWordsRequestException,
+						e -> new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, e.getMessage()));
+		// @formatter:on
+	}
+
+	/**
+	 * Whether a single word is a secret word. Concurrent lookups are combined into one
+	 * resource server request when micro-batch.enabled. Bypasses the cache
+	 */
+	@GetMapping("/words/lookup")
+	public Mono<WordLookupDto> lookUpSecretWord(@RequestParam String word) {
+		log.info("Looking up secret word");
+		// @formatter:off
+		return secretWordLookup.isSecretWord(word)
+				.map(secret -> WordLookupDto.from(word, secret))
+				.onErrorMap(e -> e instanceof AuthorizationException || e instanceof SecretWordsRequestException,
+						e -> new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, e.getMessage()));
+		// @formatter:on
+	}
+
+	/**
+	 * Rejected rather than queued while the upstream is at its concurrency limit, callers
+	 * are told when to try again
+	 */
+	@ExceptionHandler(ConcurrencyLimitExceededException.class)
+	public ResponseEntity<Void> concurrencyLimitExceeded(ConcurrencyLimitExceededException e) {
+		log.info("Rejecting request, {}", e.getMessage());
+		long retryAfterSeconds = Math.max(1, (e.getRetryAfter().toMillis() + 999) / 1000);
+		return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+				.header(HttpHeaders.RETRY_AFTER, Long.toString(retryAfterSeconds)).build();
+	}
+
+	/*
+	 * The body is JSON, Smile or CBOR depending on the Accept header, see
+	 * BinaryFormatsConfig
+	 */
+	private ResponseEntity<SecretWordsDto> conditionalResponse(List<String> words, String ifNoneMatch) {
+		String etag = etag(words);
+		if (matches(ifNoneMatch, etag)) {
+			return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).varyBy(HttpHeaders.ACCEPT).build();
+		}
+		return ResponseEntity.ok().eTag(etag).varyBy(HttpHeaders.ACCEPT)
+				.body(SecretWordsDto.from(words, timestampSupplier.get()));
+	}
+
+	/*
+	 * createdAt is deliberately left out, it changes with every response, which makes the
+	 * ETag weak. Tomcat would not compress responses with a strong one either. Each word
+	 * is prefixed with its length, so that no other list of words hashes the same input,
+	 * e.g. ["a\nb"] and ["a", "b"] when joined by newlines
+	 */
+	private static String etag(List<String> words) {
+		var hashInput = new StringBuilder();
+		words.forEach(word -> hashInput.append(word.length()).append(':').append(word));
+		return "W/\"" + DigestUtils.md5DigestAsHex(hashInput.toString().getBytes(StandardCharsets.UTF_8)) + "\"";
+	}
+
+	private static boolean matches(String ifNoneMatch, String etag) {
+		if (ifNoneMatch == null) {
+			return false;
+		}
+		// Weak comparison, as If-None-Match calls for
+		String opaqueTag = etag.substring(2);
+		for (String candidate : ifNoneMatch.split(",")) {
+			String trimmed = candidate.trim();
+			if (trimmed.equals("*") || trimmed.equals(etag) || trimmed.equals(opaqueTag)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
 }
@@ -0,0 +1,39 @@
+package com.davidagood.spring.oauth.clientcredentials;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.ConstructorBinding;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+import java.util.List;
+
+@ConfigurationProperties("fan-out")
+@ConstructorBinding
+public class FanOutConfig {
+
+	/**
+	 * Secret words resource servers (shards) whose word lists are combined, all called
+	 * with the token of the default client registration
+	 */
+	private final List<String> urls;
+
+	/**
+	 * How long a single shard may take before the combined response is returned without
+	 * its words
+	 */
+	private final Duration shardTimeout;
+
+	public FanOutConfig(List<String> urls, @DefaultValue("5s") Duration shardTimeout) {
+		this.urls = (urls != null) ? urls : List.of();
+		this.shardTimeout = shardTimeout;
+	}
+
+	public List<String> getUrls() {
+		return urls;
+	}
+
+	public Duration getShardTimeout() {
+		return shardTimeout;
+	}
+
+}
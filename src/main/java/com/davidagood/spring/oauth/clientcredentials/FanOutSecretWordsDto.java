@@ -0,0 +1,65 @@
+package com.davidagood.spring.oauth.clientcredentials;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Objects;
+
+public class FanOutSecretWordsDto {
+
+	private final List<String> words;
+
+	private final Instant createdAt;
+
+	private final List<String> failedShards;
+
+	private FanOutSecretWordsDto(List<String> words, Instant createdAt, List<String> failedShards) {
+		this.words = words;
+		this.createdAt = createdAt;
+		this.failedShards = failedShards;
+	}
+
+	public static FanOutSecretWordsDto from(SecretWordsFanOut.Result result, Instant createdAt) {
+		return new FanOutSecretWordsDto(result.getWords(), createdAt, result.getFailedShards());
+	}
+
+	public List<String> getWords() {
+		return words;
+	}
+
+	public Instant getCreatedAt() {
+		return createdAt;
+	}
+
+	/**
+	 * Urls of the shards whose words are missing because they failed or timed out
+	 */
+	public List<String> getFailedShards() {
+		return failedShards;
+	}
+
+	public boolean isPartial() {
+		return !failedShards.isEmpty();
+	}
+
+	@Override
+	public String toString() {
+		return "FanOutSecretWordsDto{" + "words=" + words + ", createdAt=" + createdAt + ", failedShards="
+				+ failedShards + '}';
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (this == o)
+			return true;
+		if (o == null || getClass() != o.getClass())
+			return false;
+		FanOutSecretWordsDto that = (FanOutSecretWordsDto) o;
+		return words.equals(that.words) && createdAt.equals(that.createdAt) && failedShards.equals(that.failedShards);
+	}
+
+	@Override
+	public int hashCode() {
+		return Objects.hash(words, createdAt, failedShards);
+	}
+
+}
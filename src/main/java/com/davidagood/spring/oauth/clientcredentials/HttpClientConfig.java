@@ -0,0 +1,199 @@
+package com.davidagood.spring.oauth.clientcredentials;
+
+import io.netty.channel.ChannelOption;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.ConstructorBinding;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+import reactor.netty.http.HttpProtocol;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.net.InetSocketAddress;
+import java.time.Duration;
+import java.util.Map;
+
+@ConfigurationProperties("http-client")
+@ConstructorBinding
+public class HttpClientConfig {
+
+	private static final String ACCEPT_ENCODING = "gzip, deflate";
+
+	private final Duration connectTimeout;
+
+	/**
+	 * Maximum time to wait for the response once the request has been sent, applies to
+	 * the resource server and the authorization server alike
+	 */
+	private final Duration responseTimeout;
+
+	private final boolean keepAlive;
+
+	/**
+	 * Offer HTTP/2 via ALPN and fall back to HTTP/1.1; requires https upstreams
+	 */
+	private final boolean http2;
+
+	/**
+	 * Ask upstreams for gzip or deflate compressed responses, which are decompressed
+	 * before they are decoded
+	 */
+	private final boolean compression;
+
+	private final Pool pool;
+
+	/**
+	 * Pool settings for specific upstream hosts keyed by host:port, use the bracket
+	 * notation in YAML, e.g. "[auth-server:443]". Hosts not listed here use the default
+	 * pool settings
+	 */
+	private final Map<String, Pool> hosts;
+
+	public HttpClientConfig(@DefaultValue("5s") Duration connectTimeout, @DefaultValue("10s") Duration responseTimeout,
+			@DefaultValue("true") boolean keepAlive, @DefaultValue("false") boolean http2,
+			@DefaultValue("true") boolean compression, @DefaultValue Pool pool, Map<String, Pool> hosts) {
+		this.connectTimeout = connectTimeout;
+		this.responseTimeout = responseTimeout;
+		this.keepAlive = keepAlive;
+		this.http2 = http2;
+		this.compression = compression;
+		this.pool = pool;
+		this.hosts = (hosts != null) ? hosts : Map.of();
+	}
+
+	public Duration getConnectTimeout() {
+		return connectTimeout;
+	}
+
+	public Duration getResponseTimeout() {
+		return responseTimeout;
+	}
+
+	public boolean isKeepAlive() {
+		return keepAlive;
+	}
+
+	public boolean isHttp2() {
+		return http2;
+	}
+
+	public boolean isCompression() {
+		return compression;
+	}
+
+	public Pool getPool() {
+		return pool;
+	}
+
+	public Map<String, Pool> getHosts() {
+		return hosts;
+	}
+
+	public static class Pool {
+
+		private final int maxConnections;
+
+		/**
+		 * How long a request may wait for a connection once all are in use
+		 */
+		private final Duration pendingAcquireTimeout;
+
+		/**
+		 * How many requests may wait for a connection at the same time, further requests
+		 * fail immediately
+		 */
+		private final int pendingAcquireMaxCount;
+
+		private final Duration maxIdleTime;
+
+		private final Duration maxLifeTime;
+
+		/**
+		 * How often idle and expired connections are evicted in the background rather
+		 * than only when they are next acquired
+		 */
+		private final Duration evictionInterval;
+
+		public Pool(@DefaultValue("50") int maxConnections, @DefaultValue("5s") Duration pendingAcquireTimeout,
+				@DefaultValue("500") int pendingAcquireMaxCount, @DefaultValue("30s") Duration maxIdleTime,
+				@DefaultValue("5m") Duration maxLifeTime, @DefaultValue("30s") Duration evictionInterval) {
+			this.maxConnections = maxConnections;
+			this.pendingAcquireTimeout = pendingAcquireTimeout;
+			this.pendingAcquireMaxCount = pendingAcquireMaxCount;
+			this.maxIdleTime = maxIdleTime;
+			this.maxLifeTime = maxLifeTime;
+			this.evictionInterval = evictionInterval;
+		}
+
+		public int getMaxConnections() {
+			return maxConnections;
+		}
+
+		public Duration getPendingAcquireTimeout() {
+			return pendingAcquireTimeout;
+		}
+
+		public int getPendingAcquireMaxCount() {
+			return pendingAcquireMaxCount;
+		}
+
+		public Duration getMaxIdleTime() {
+			return maxIdleTime;
+		}
+
+		public Duration getMaxLifeTime() {
+			return maxLifeTime;
+		}
+
+		public Duration getEvictionInterval() {
+			return evictionInterval;
+		}
+
+		<S extends ConnectionProvider.ConnectionPoolSpec<S>> S applyTo(S spec) {
+			// @formatter:off
+			return spec.maxConnections(maxConnections)
+					.pendingAcquireTimeout(pendingAcquireTimeout)
+					.pendingAcquireMaxCount(pendingAcquireMaxCount)
+					.maxIdleTime(maxIdleTime)
+					.maxLifeTime(maxLifeTime)
+					.evictInBackground(evictionInterval)
+					.metrics(true);
+			// @formatter:on
+		}
+
+	}
+
+	/**
+	 * HttpClient with the connect and response timeouts, keep-alive, protocol and
+	 * compression settings on top of the given pool
+	 */
+	HttpClient createHttpClient(ConnectionProvider connectionProvider) {
+		// @formatter:off
+		HttpClient httpClient = HttpClient.create(connectionProvider)
+				.option(ChannelOption.CONNECT_TIMEOUT_MILLIS, (int) connectTimeout.toMillis())
+				.option(ChannelOption.SO_KEEPALIVE, keepAlive)
+				.keepAlive(keepAlive)
+				.responseTimeout(responseTimeout);
+		// @formatter:on
+		if (http2) {
+			httpClient = httpClient.protocol(HttpProtocol.H2, HttpProtocol.HTTP11).secure();
+		}
+		if (compression) {
+			// compress only offers gzip, its decompressor also handles deflate
+			httpClient = httpClient.compress(true)
+					.headers(headers -> headers.set(HttpHeaderNames.ACCEPT_ENCODING, ACCEPT_ENCODING));
+		}
+		return httpClient;
+	}
+
+	static InetSocketAddress parseHost(String hostAndPort) {
+		int separator = hostAndPort.lastIndexOf(':');
+		if (separator <= 0 || separator == hostAndPort.length() - 1) {
+			throw new IllegalArgumentException(
+					"http-client.hosts keys must have the form host:port but was " + hostAndPort);
+		}
+		return InetSocketAddress.createUnresolved(hostAndPort.substring(0, separator),
+				Integer.parseInt(hostAndPort.substring(separator + 1)));
+	}
+
+}
@@ -0,0 +1,68 @@
+package com.davidagood.spring.oauth.clientcredentials;
+
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcOperations;
+
+import java.sql.Timestamp;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.UUID;
+
+/**
+ * LeaseLock backed by a row per lock in the oauth2_authorized_client_lock table, see
+ * token-store-lock-schema.sql. A lock is taken by inserting its row, or by taking over a
+ * row whose lease has expired. Each acquisition writes its own owner, the node ID
+ * followed by a random lease ID, so that two callers on the same node cannot both hold
+ * the lock and one cannot release it while the other holds it. Lease expiry is compared
+ * using the nodes' clocks, which only need to agree to well within the lease time
+ */
+public class JdbcLeaseLock implements LeaseLock {
+
+	private static final String TAKE_OVER_SQL = "UPDATE oauth2_authorized_client_lock SET owner = ?, lease_expires_at = ? "
+			+ "WHERE lock_name = ? AND lease_expires_at < ?";
+
+	private static final String INSERT_SQL = "INSERT INTO oauth2_authorized_client_lock (lock_name, owner, lease_expires_at) "
+			+ "VALUES (?, ?, ?)";
+
+	private static final String RELEASE_SQL = "DELETE FROM oauth2_authorized_client_lock WHERE lock_name = ? AND owner = ?";
+
+	private final JdbcOperations jdbcOperations;
+
+	private final String nodeId;
+
+	private final Clock clock;
+
+	public JdbcLeaseLock(JdbcOperations jdbcOperations, String nodeId) {
+		this(jdbcOperations, nodeId, Clock.systemUTC());
+	}
+
+	JdbcLeaseLock(JdbcOperations jdbcOperations, String nodeId, Clock clock) {
+		this.jdbcOperations = jdbcOperations;
+		this.nodeId = nodeId;
+		this.clock = clock;
+	}
+
+	@Override
+	public String tryAcquire(String name, Duration leaseTime) {
+		String lease = nodeId + "/" + UUID.randomUUID();
+		Instant now = clock.instant();
+		Timestamp leaseExpiresAt = Timestamp.from(now.plus(leaseTime));
+		if (jdbcOperations.update(TAKE_OVER_SQL, lease, leaseExpiresAt, name, Timestamp.from(now)) == 1) {
+			return lease;
+		}
+		try {
+			return jdbcOperations.update(INSERT_SQL, name, lease, leaseExpiresAt) == 1 ? lease : null;
+		}
+		catch (DuplicateKeyException e) {
+			// Held by another node, or another caller on this one
+			return null;
+		}
+	}
+
+	@Override
+	public void release(String name, String lease) {
+		jdbcOperations.update(RELEASE_SQL, name, lease);
+	}
+
+}
@@ -0,0 +1,39 @@
+package com.davidagood.spring.oauth.clientcredentials;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.jdbc.core.JdbcOperations;
+import org.springframework.security.oauth2.client.JdbcOAuth2AuthorizedClientService;
+import org.springframework.security.oauth2.client.registration.ClientRegistrationRepository;
+
+/**
+ * Shares authorized clients between nodes through the oauth2_authorized_client table of
+ * Spring Security's oauth2-client-schema.sql, and coordinates their grant requests
+ * through the oauth2_authorized_client_lock table of token-store-lock-schema.sql. The
+ * InMemoryOAuth2AuthorizedClientService of {@link OAuth2ClientConfig} gives way to the
+ * OAuth2AuthorizedClientService defined here, so the success and failure handlers save to
+ * and remove from the shared store unchanged
+ */
+@Configuration
+@ConditionalOnProperty(prefix = "token-store", name = "type", havingValue = "jdbc")
+public class JdbcTokenStoreConfig {
+
+	@Bean
+	NearCachingOAuth2AuthorizedClientService authorizedClientService(JdbcOperations jdbcOperations,
+			ClientRegistrationRepository clientRegistrationRepository, TokenStoreConfig config) {
+		return new NearCachingOAuth2AuthorizedClientService(
+				new JdbcOAuth2AuthorizedClientService(jdbcOperations, clientRegistrationRepository),
+				config.getNearCacheTtl());
+	}
+
+	@Bean
+	TokenGrantLock tokenGrantLock(JdbcOperations jdbcOperations,
+			ClientRegistrationRepository clientRegistrationRepository,
+			NearCachingOAuth2AuthorizedClientService authorizedClientService, TokenStoreConfig config) {
+		return new TokenGrantLock(new JdbcLeaseLock(jdbcOperations, config.getNodeId()),
+				new JdbcOAuth2AuthorizedClientService(jdbcOperations, clientRegistrationRepository),
+				authorizedClientService, config);
+	}
+
+}
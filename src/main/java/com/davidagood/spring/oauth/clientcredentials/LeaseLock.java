@@ -0,0 +1,25 @@
+package com.davidagood.spring.oauth.clientcredentials;
+
+import java.time.Duration;
+
+/**
+ * A lock shared by every node which is held for at most a lease time, so that a node
+ * which dies while holding it cannot block the others for longer than that
+ */
+public interface LeaseLock {
+
+	/**
+	 * Acquires the lock unless it is held, whether by another node or by another caller
+	 * on this node, and its lease has not expired
+	 * @return the lease, which identifies this acquisition to {@link #release}, or null
+	 * if the lock is held
+	 */
+	String tryAcquire(String name, Duration leaseTime);
+
+	/**
+	 * Releases the lock if it is still held under the given lease, i.e. unless the lease
+	 * expired and someone else has taken the lock over since
+	 */
+	void release(String name, String lease);
+
+}
@@ -0,0 +1,42 @@
+package com.davidagood.spring.oauth.clientcredentials;
+
+import org.springframework.security.oauth2.client.OAuth2AuthorizeRequest;
+import org.springframework.security.oauth2.client.OAuth2AuthorizedClient;
+import org.springframework.security.oauth2.client.OAuth2AuthorizedClientManager;
+
+/**
+ * Only lets the delegate make a grant request while this node holds the
+ * {@link TokenGrantLock}; while another node holds it, waits for that node's token to
+ * appear in the shared store and lets the delegate return it instead. While the near
+ * cache holds a token that is not about to expire the lock is not involved at all
+ */
+public class LockingOAuth2AuthorizedClientManager implements OAuth2AuthorizedClientManager {
+
+	private final OAuth2AuthorizedClientManager delegate;
+
+	private final TokenGrantLock grantLock;
+
+	public LockingOAuth2AuthorizedClientManager(OAuth2AuthorizedClientManager delegate, TokenGrantLock grantLock) {
+		this.delegate = delegate;
+		this.grantLock = grantLock;
+	}
+
+	@Override
+	public OAuth2AuthorizedClient authorize(OAuth2AuthorizeRequest authorizeRequest) {
+		String clientRegistrationId = authorizeRequest.getClientRegistrationId();
+		String principalName = authorizeRequest.getPrincipal().getName();
+		if (grantLock.isNearCachedTokenFresh(clientRegistrationId, principalName)) {
+			return delegate.authorize(authorizeRequest);
+		}
+		String lease = grantLock.awaitTurn(clientRegistrationId, principalName);
+		try {
+			return delegate.authorize(authorizeRequest);
+		}
+		finally {
+			if (lease != null) {
+				grantLock.unlock(clientRegistrationId, principalName, lease);
+			}
+		}
+	}
+
+}
@@ -0,0 +1,52 @@
+package com.davidagood.spring.oauth.clientcredentials;
+
+import org.springframework.security.oauth2.client.OAuth2AuthorizeRequest;
+import org.springframework.security.oauth2.client.OAuth2AuthorizedClient;
+import org.springframework.security.oauth2.client.ReactiveOAuth2AuthorizedClientManager;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.Optional;
+
+/**
+ * Reactive counterpart of {@link LockingOAuth2AuthorizedClientManager}. Taking, waiting
+ * for and releasing the lock block, so they happen on the bounded elastic scheduler. The
+ * near cache is checked first on the calling thread, so while it holds a token that is
+ * not about to expire the request path neither blocks nor reads the shared store
+ */
+public class LockingReactiveOAuth2AuthorizedClientManager implements ReactiveOAuth2AuthorizedClientManager {
+
+	private final ReactiveOAuth2AuthorizedClientManager delegate;
+
+	private final TokenGrantLock grantLock;
+
+	public LockingReactiveOAuth2AuthorizedClientManager(ReactiveOAuth2AuthorizedClientManager delegate,
+			TokenGrantLock grantLock) {
+		this.delegate = delegate;
+		this.grantLock = grantLock;
+	}
+
+	@Override
+	public Mono<OAuth2AuthorizedClient> authorize(OAuth2AuthorizeRequest authorizeRequest) {
+		String clientRegistrationId = authorizeRequest.getClientRegistrationId();
+		String principalName = authorizeRequest.getPrincipal().getName();
+		return Mono.defer(() -> grantLock.isNearCachedTokenFresh(clientRegistrationId, principalName)
+				? delegate.authorize(authorizeRequest)
+				: lockedAuthorize(authorizeRequest, clientRegistrationId, principalName));
+	}
+
+	private Mono<OAuth2AuthorizedClient> lockedAuthorize(OAuth2AuthorizeRequest authorizeRequest,
+			String clientRegistrationId, String principalName) {
+		// @formatter:off
+		return Mono.usingWhen(
+				Mono.fromCallable(() -> Optional.ofNullable(grantLock.awaitTurn(clientRegistrationId, principalName)))
+						.subscribeOn(Schedulers.boundedElastic()),
+				lease -> delegate.authorize(authorizeRequest),
+				lease -> lease.isPresent()
+						? Mono.fromRunnable(() -> grantLock.unlock(clientRegistrationId, principalName, lease.get()))
+								.subscribeOn(Schedulers.boundedElastic())
+						: Mono.empty());
+		// @formatter:on
+	}
+
+}
@@ -0,0 +1,65 @@
+package com.davidagood.spring.oauth.clientcredentials;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.security.oauth2.client.endpoint.OAuth2ClientCredentialsGrantRequest;
+import org.springframework.security.oauth2.client.endpoint.ReactiveOAuth2AccessTokenResponseClient;
+import org.springframework.security.oauth2.client.registration.ClientRegistration;
+import org.springframework.security.oauth2.core.OAuth2AuthorizationException;
+import org.springframework.security.oauth2.core.endpoint.OAuth2AccessTokenResponse;
+import reactor.core.publisher.Mono;
+
+/**
+ * Times every client credentials grant request in the oauth2.token.grant timer, tagged
+ * with the client registration, the token URI, the outcome and, for failures, the OAuth
+ * 2.0 error code. A grant request which is cancelled before it completes, usually because
+ * secret-words-client.token-grant.timeout expired, is recorded with the CANCELLED
+ * outcome. Both the blocking and the reactive path make their grant requests through this
+ * client
+ */
+public class MeteredReactiveTokenResponseClient
+		implements ReactiveOAuth2AccessTokenResponseClient<OAuth2ClientCredentialsGrantRequest> {
+
+	static final String TOKEN_GRANT_TIMER = "oauth2.token.grant";
+
+	private final ReactiveOAuth2AccessTokenResponseClient<OAuth2ClientCredentialsGrantRequest> delegate;
+
+	private final MeterRegistry meterRegistry;
+
+	public MeteredReactiveTokenResponseClient(
+			ReactiveOAuth2AccessTokenResponseClient<OAuth2ClientCredentialsGrantRequest> delegate,
+			MeterRegistry meterRegistry) {
+		this.delegate = delegate;
+		this.meterRegistry = meterRegistry;
+	}
+
+	@Override
+	public Mono<OAuth2AccessTokenResponse> getTokenResponse(OAuth2ClientCredentialsGrantRequest grantRequest) {
+		return Mono.defer(() -> {
+			Timer.Sample sample = Timer.start(meterRegistry);
+			ClientRegistration clientRegistration = grantRequest.getClientRegistration();
+			// @formatter:off
+			return delegate.getTokenResponse(grantRequest)
+					.doOnSuccess(r -> record(sample, clientRegistration, "SUCCESS", "none"))
+					.doOnError(e -> record(sample, clientRegistration, "ERROR", errorCode(e)))
+					.doOnCancel(() -> record(sample, clientRegistration, "CANCELLED", "none"));
+			// @formatter:on
+		});
+	}
+
+	private void record(Timer.Sample sample, ClientRegistration clientRegistration, String outcome, String error) {
+		Tags tags = Tags.of("clientRegistrationId", clientRegistration.getRegistrationId(), "tokenUri",
+				clientRegistration.getProviderDetails().getTokenUri(), "outcome", outcome, "error", error);
+		sample.stop(Timer.builder(TOKEN_GRANT_TIMER).description("Client credentials grant requests").tags(tags)
+				.register(meterRegistry));
+	}
+
+	private static String errorCode(Throwable e) {
+		if (e instanceof OAuth2AuthorizationException) {
+			return ((OAuth2AuthorizationException) e).getError().getErrorCode();
+		}
+		return e.getClass().getSimpleName();
+	}
+
+}
@@ -0,0 +1,67 @@
+package com.davidagood.spring.oauth.clientcredentials;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.ConstructorBinding;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+@ConfigurationProperties("micro-batch")
+@ConstructorBinding
+public class MicroBatchConfig {
+
+	/**
+	 * Whether concurrent word lookups are combined into batches, otherwise each lookup is
+	 * a request of its own
+	 */
+	private final boolean enabled;
+
+	/**
+	 * How long the first lookup of a batch waits for further lookups before the batch is
+	 * sent
+	 */
+	private final Duration window;
+
+	/**
+	 * Number of distinct words at which a batch is sent without waiting for the window to
+	 * end
+	 */
+	private final int maxBatchSize;
+
+	/**
+	 * Whether a lookup is sent right away when no batch is in flight, so lookups only
+	 * wait while the resource server is busy with an earlier batch
+	 */
+	private final boolean flushOnIdle;
+
+	public MicroBatchConfig(@DefaultValue("false") boolean enabled, @DefaultValue("10ms") Duration window,
+			@DefaultValue("100") int maxBatchSize, @DefaultValue("false") boolean flushOnIdle) {
+		if (window.isNegative() || window.isZero()) {
+			throw new IllegalArgumentException("Expected window > 0 but was " + window);
+		}
+		if (maxBatchSize < 1) {
+			throw new IllegalArgumentException("Expected max-batch-size >= 1 but was " + maxBatchSize);
+		}
+		this.enabled = enabled;
+		this.window = window;
+		this.maxBatchSize = maxBatchSize;
+		this.flushOnIdle = flushOnIdle;
+	}
+
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	public Duration getWindow() {
+		return window;
+	}
+
+	public int getMaxBatchSize() {
+		return maxBatchSize;
+	}
+
+	public boolean isFlushOnIdle() {
+		return flushOnIdle;
+	}
+
+}
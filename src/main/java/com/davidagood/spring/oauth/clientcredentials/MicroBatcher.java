@@ -0,0 +1,134 @@
+package com.davidagood.spring.oauth.clientcredentials;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Collects the keys of concurrent lookups and loads them with one call per batch. A batch
+ * is sent when it reaches the max batch size, when the window started by its first key
+ * ends or, with flush on idle, right away while no other batch is in flight. A key looked
+ * up several times within a batch is loaded once. Every waiting caller receives the value
+ * of its own key, completes empty when the batch result has none and fails with the batch
+ * when the call fails. Batch sizes are recorded in the micro.batch.size summary, whose
+ * count is the number of calls made
+ */
+public class MicroBatcher<K, V> {
+
+	static final String BATCH_SIZE_SUMMARY = "micro.batch.size";
+
+	private final MicroBatchConfig config;
+
+	private final Function<Set<K>, Mono<Map<K, V>>> batchLoader;
+
+	private final DistributionSummary batchSize;
+
+	private Map<K, List<Sinks.One<V>>> pending = new LinkedHashMap<>();
+
+	private Disposable scheduledFlush;
+
+	private int inFlight;
+
+	public MicroBatcher(String name, MicroBatchConfig config, Function<Set<K>, Mono<Map<K, V>>> batchLoader,
+			MeterRegistry meterRegistry) {
+		this.config = config;
+		this.batchLoader = batchLoader;
+		this.batchSize = DistributionSummary.builder(BATCH_SIZE_SUMMARY).description("Distinct keys per batch call")
+				.tag("name", name).register(meterRegistry);
+	}
+
+	public Mono<V> load(K key) {
+		return Mono.defer(() -> {
+			Sinks.One<V> sink = Sinks.one();
+			Map<K, List<Sinks.One<V>>> batch = null;
+			synchronized (this) {
+				pending.computeIfAbsent(key, k -> new ArrayList<>()).add(sink);
+				if (pending.size() >= config.getMaxBatchSize() || (config.isFlushOnIdle() && inFlight == 0)) {
+					batch = takePending();
+				}
+				else if (scheduledFlush == null) {
+					scheduledFlush = Schedulers.parallel().schedule(this::flushWindow, config.getWindow().toNanos(),
+							TimeUnit.NANOSECONDS);
+				}
+			}
+			if (batch != null) {
+				send(batch);
+			}
+			return sink.asMono();
+		});
+	}
+
+	private void flushWindow() {
+		Map<K, List<Sinks.One<V>>> batch;
+		synchronized (this) {
+			scheduledFlush = null;
+			batch = pending.isEmpty() ? null : takePending();
+		}
+		if (batch != null) {
+			send(batch);
+		}
+	}
+
+	/**
+	 * Must be called while holding the lock
+	 */
+	private Map<K, List<Sinks.One<V>>> takePending() {
+		Map<K, List<Sinks.One<V>>> batch = pending;
+		pending = new LinkedHashMap<>();
+		if (scheduledFlush != null) {
+			scheduledFlush.dispose();
+			scheduledFlush = null;
+		}
+		inFlight++;
+		return batch;
+	}
+
+	private void send(Map<K, List<Sinks.One<V>>> batch) {
+		batchSize.record(batch.size());
+		// @formatter:off
+		Mono.defer(() -> batchLoader.apply(batch.keySet()))
+				.doFinally(signal -> batchCompleted())
+				.subscribe(values -> batch.forEach((key, sinks) -> {
+					V value = values.get(key);
+					sinks.forEach(sink -> {
+						if (value == null) {
+							sink.tryEmitEmpty();
+						}
+						else {
+							sink.tryEmitValue(value);
+						}
+					});
+				}), e -> batch.values().forEach(sinks -> sinks.forEach(sink -> sink.tryEmitError(e))),
+						() -> batch.values().forEach(sinks -> sinks.forEach(Sinks.One::tryEmitEmpty)));
+		// @formatter:on
+	}
+
+	/**
+	 * With flush on idle, lookups which arrived while the resource server was busy are
+	 * sent as soon as it is not
+	 */
+	private void batchCompleted() {
+		Map<K, List<Sinks.One<V>>> batch = null;
+		synchronized (this) {
+			inFlight--;
+			if (config.isFlushOnIdle() && inFlight == 0 && !pending.isEmpty()) {
+				batch = takePending();
+			}
+		}
+		if (batch != null) {
+			send(batch);
+		}
+	}
+
+}
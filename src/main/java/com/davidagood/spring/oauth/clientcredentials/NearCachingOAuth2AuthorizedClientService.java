@@ -0,0 +1,101 @@
+package com.davidagood.spring.oauth.clientcredentials;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.oauth2.client.OAuth2AuthorizedClient;
+import org.springframework.security.oauth2.client.OAuth2AuthorizedClientService;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+
+/**
+ * Keeps the authorized clients a node loads from a shared OAuth2AuthorizedClientService
+ * in memory for a short time so that the request path does not read the shared store on
+ * every request. Writes go through to the shared store. A client whose access token is
+ * about to expire is never served from memory, so a token renewed by another node is
+ * picked up from the shared store before the provider would make a grant request of its
+ * own
+ */
+public class NearCachingOAuth2AuthorizedClientService implements OAuth2AuthorizedClientService {
+
+	/**
+	 * Same default as ClientCredentialsOAuth2AuthorizedClientProvider's clock skew
+	 */
+	static final Duration CLOCK_SKEW = Duration.ofSeconds(60);
+
+	private final OAuth2AuthorizedClientService delegate;
+
+	private final Cache<String, OAuth2AuthorizedClient> nearCache;
+
+	private final Clock clock = Clock.systemUTC();
+
+	public NearCachingOAuth2AuthorizedClientService(OAuth2AuthorizedClientService delegate, Duration ttl) {
+		this.delegate = delegate;
+		this.nearCache = Caffeine.newBuilder().expireAfterWrite(ttl).maximumSize(100).build();
+	}
+
+	@Override
+	public <T extends OAuth2AuthorizedClient> T loadAuthorizedClient(String clientRegistrationId,
+			String principalName) {
+		T cached = loadCachedAuthorizedClient(clientRegistrationId, principalName);
+		if (cached != null) {
+			return cached;
+		}
+		String key = key(clientRegistrationId, principalName);
+		T loaded = delegate.loadAuthorizedClient(clientRegistrationId, principalName);
+		if (loaded != null) {
+			nearCache.put(key, loaded);
+		}
+		else {
+			nearCache.invalidate(key);
+		}
+		return loaded;
+	}
+
+	/**
+	 * The authorized client held in memory, or null if there is none or its access token
+	 * is about to expire. Never reads the shared store, so it does not block
+	 */
+	@SuppressWarnings("unchecked")
+	public <T extends OAuth2AuthorizedClient> T loadCachedAuthorizedClient(String clientRegistrationId,
+			String principalName) {
+		OAuth2AuthorizedClient cached = nearCache.getIfPresent(key(clientRegistrationId, principalName));
+		if (cached == null || isExpiring(cached, clock.instant())) {
+			return null;
+		}
+		return (T) cached;
+	}
+
+	@Override
+	public void saveAuthorizedClient(OAuth2AuthorizedClient authorizedClient, Authentication principal) {
+		delegate.saveAuthorizedClient(authorizedClient, principal);
+		nearCache.put(key(authorizedClient.getClientRegistration().getRegistrationId(), principal.getName()),
+				authorizedClient);
+	}
+
+	@Override
+	public void removeAuthorizedClient(String clientRegistrationId, String principalName) {
+		nearCache.invalidate(key(clientRegistrationId, principalName));
+		delegate.removeAuthorizedClient(clientRegistrationId, principalName);
+	}
+
+	/**
+	 * Forgets the authorized client held in memory without removing it from the shared
+	 * store, so that it is loaded from the store again
+	 */
+	public void invalidateCachedAuthorizedClient(String clientRegistrationId, String principalName) {
+		nearCache.invalidate(key(clientRegistrationId, principalName));
+	}
+
+	static boolean isExpiring(OAuth2AuthorizedClient authorizedClient, Instant now) {
+		Instant expiresAt = authorizedClient.getAccessToken().getExpiresAt();
+		return expiresAt != null && now.isAfter(expiresAt.minus(CLOCK_SKEW));
+	}
+
+	private static String key(String clientRegistrationId, String principalName) {
+		return clientRegistrationId + ":" + principalName;
+	}
+
+}
@@ -0,0 +1,42 @@
+package com.davidagood.spring.oauth.clientcredentials;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.security.oauth2.client.OAuth2ClientProperties;
+import org.springframework.boot.autoconfigure.security.oauth2.client.OAuth2ClientPropertiesRegistrationAdapter;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.security.oauth2.client.InMemoryOAuth2AuthorizedClientService;
+import org.springframework.security.oauth2.client.OAuth2AuthorizedClientService;
+import org.springframework.security.oauth2.client.registration.ClientRegistrationRepository;
+import org.springframework.security.oauth2.client.registration.InMemoryClientRegistrationRepository;
+
+import java.util.ArrayList;
+
+/**
+ * The client registrations and authorized client service of Spring Boot's
+ * OAuth2ClientAutoConfiguration, which is excluded along with the rest of the servlet
+ * security auto-configuration: this application only calls resource servers, so it has no
+ * use for the security filter chain that auto-configuration would otherwise set up
+ */
+@Configuration
+@EnableConfigurationProperties(OAuth2ClientProperties.class)
+public class OAuth2ClientConfig {
+
+	@Bean
+	InMemoryClientRegistrationRepository clientRegistrationRepository(OAuth2ClientProperties properties) {
+		return new InMemoryClientRegistrationRepository(
+				new ArrayList<>(OAuth2ClientPropertiesRegistrationAdapter.getClientRegistrations(properties).values()));
+	}
+
+	/**
+	 * Replaced by the shared store of {@link JdbcTokenStoreConfig} when token-store.type
+	 * is jdbc
+	 */
+	@Bean
+	@ConditionalOnProperty(prefix = "token-store", name = "type", havingValue = "in-memory", matchIfMissing = true)
+	OAuth2AuthorizedClientService authorizedClientService(ClientRegistrationRepository clientRegistrationRepository) {
+		return new InMemoryOAuth2AuthorizedClientService(clientRegistrationRepository);
+	}
+
+}
@@ -0,0 +1,38 @@
+package com.davidagood.spring.oauth.clientcredentials;
+
+import org.springframework.security.oauth2.client.endpoint.OAuth2ClientCredentialsGrantRequest;
+import org.springframework.security.oauth2.client.endpoint.ReactiveOAuth2AccessTokenResponseClient;
+import org.springframework.security.oauth2.core.endpoint.OAuth2AccessTokenResponse;
+import reactor.core.publisher.Mono;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * Makes each grant request through the client of its client registration, so that every
+ * registration has its own timeout, retries and concurrency limiter and a slow
+ * authorization server only holds up the registrations it serves. The clients of the
+ * given registrations are created up front, those of any other registration on its first
+ * grant request
+ */
+public class PerRegistrationReactiveTokenResponseClient
+		implements ReactiveOAuth2AccessTokenResponseClient<OAuth2ClientCredentialsGrantRequest> {
+
+	private final Map<String, ReactiveOAuth2AccessTokenResponseClient<OAuth2ClientCredentialsGrantRequest>> clients = new ConcurrentHashMap<>();
+
+	private final Function<String, ReactiveOAuth2AccessTokenResponseClient<OAuth2ClientCredentialsGrantRequest>> clientFactory;
+
+	public PerRegistrationReactiveTokenResponseClient(Iterable<String> registrationIds,
+			Function<String, ReactiveOAuth2AccessTokenResponseClient<OAuth2ClientCredentialsGrantRequest>> clientFactory) {
+		this.clientFactory = clientFactory;
+		registrationIds.forEach(registrationId -> clients.put(registrationId, clientFactory.apply(registrationId)));
+	}
+
+	@Override
+	public Mono<OAuth2AccessTokenResponse> getTokenResponse(OAuth2ClientCredentialsGrantRequest grantRequest) {
+		String registrationId = grantRequest.getClientRegistration().getRegistrationId();
+		return clients.computeIfAbsent(registrationId, clientFactory).getTokenResponse(grantRequest);
+	}
+
+}
@@ -0,0 +1,47 @@
+package com.davidagood.spring.oauth.clientcredentials;
+
+import org.springframework.security.core.Authentication;
+import org.springframework.security.oauth2.client.OAuth2AuthorizedClient;
+import org.springframework.security.oauth2.client.OAuth2AuthorizedClientService;
+import org.springframework.security.oauth2.client.ReactiveOAuth2AuthorizedClientService;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+
+/**
+ * Exposes an OAuth2AuthorizedClientService as a ReactiveOAuth2AuthorizedClientService so
+ * that the reactive and the blocking request paths share the same authorized clients, and
+ * therefore the same access tokens. The delegate is called on the given scheduler, which
+ * can be Schedulers.immediate() for InMemoryOAuth2AuthorizedClientService since it never
+ * blocks, but has to be one which may block for a store like the JDBC one
+ */
+public class ReactiveOAuth2AuthorizedClientServiceAdapter implements ReactiveOAuth2AuthorizedClientService {
+
+	private final OAuth2AuthorizedClientService delegate;
+
+	private final Scheduler scheduler;
+
+	public ReactiveOAuth2AuthorizedClientServiceAdapter(OAuth2AuthorizedClientService delegate, Scheduler scheduler) {
+		this.delegate = delegate;
+		this.scheduler = scheduler;
+	}
+
+	@Override
+	public <T extends OAuth2AuthorizedClient> Mono<T> loadAuthorizedClient(String clientRegistrationId,
+			String principalName) {
+		return Mono.<T>fromSupplier(() -> delegate.loadAuthorizedClient(clientRegistrationId, principalName))
+				.subscribeOn(scheduler);
+	}
+
+	@Override
+	public Mono<Void> saveAuthorizedClient(OAuth2AuthorizedClient authorizedClient, Authentication principal) {
+		return Mono.<Void>fromRunnable(() -> delegate.saveAuthorizedClient(authorizedClient, principal))
+				.subscribeOn(scheduler);
+	}
+
+	@Override
+	public Mono<Void> removeAuthorizedClient(String clientRegistrationId, String principalName) {
+		return Mono.<Void>fromRunnable(() -> delegate.removeAuthorizedClient(clientRegistrationId, principalName))
+				.subscribeOn(scheduler);
+	}
+
+}
@@ -0,0 +1,69 @@
+package com.davidagood.spring.oauth.clientcredentials;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.security.oauth2.client.ClientAuthorizationException;
+import org.springframework.security.oauth2.client.OAuth2AuthorizationFailureHandler;
+import org.springframework.security.oauth2.core.OAuth2Error;
+import org.springframework.security.oauth2.core.OAuth2ErrorCodes;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.ExchangeFilterFunction;
+import org.springframework.web.reactive.function.client.ExchangeFunction;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.Map;
+
+import static com.davidagood.spring.oauth.clientcredentials.AuthorizedWebClientConfig.ANONYMOUS_PRINCIPAL;
+import static com.davidagood.spring.oauth.clientcredentials.CachingBearerExchangeFilterFunction.CLIENT_REGISTRATION_ID_ATTR_NAME;
+import static com.davidagood.spring.oauth.clientcredentials.CachingBearerExchangeFilterFunction.REJECTED_ACCESS_TOKEN_ATTR_NAME;
+
+/**
+ * Lets the failure handler remove the authorized client when the resource server answers
+ * 401, telling it which token was rejected, read from the request's Authorization header,
+ * so that a token which a concurrent request has already replaced is not removed. Takes
+ * the place of the 401 handling of the Spring Security filter functions, which only pass
+ * the servlet request or server exchange to the handler, so they are left without a
+ * failure handler. Registered after, and so inside, the filter function which attaches
+ * the token, which is the only place the Authorization header is seen
+ */
+public class RejectedTokenExchangeFilterFunction implements ExchangeFilterFunction {
+
+	private static final String BEARER_PREFIX = "Bearer ";
+
+	private final OAuth2AuthorizationFailureHandler authorizationFailureHandler;
+
+	public RejectedTokenExchangeFilterFunction(OAuth2AuthorizationFailureHandler authorizationFailureHandler) {
+		this.authorizationFailureHandler = authorizationFailureHandler;
+	}
+
+	@Override
+	public Mono<ClientResponse> filter(ClientRequest request, ExchangeFunction next) {
+		return next.exchange(request).flatMap(response -> {
+			if (response.rawStatusCode() != HttpStatus.UNAUTHORIZED.value()) {
+				return Mono.just(response);
+			}
+			Object clientRegistrationId = request.attributes().get(CLIENT_REGISTRATION_ID_ATTR_NAME);
+			String authorization = request.headers().getFirst(HttpHeaders.AUTHORIZATION);
+			if (!(clientRegistrationId instanceof String) || authorization == null
+					|| !authorization.startsWith(BEARER_PREFIX)) {
+				return Mono.just(response);
+			}
+			return onRejected((String) clientRegistrationId, authorization.substring(BEARER_PREFIX.length()))
+					.thenReturn(response);
+		});
+	}
+
+	private Mono<Void> onRejected(String clientRegistrationId, String rejectedTokenValue) {
+		var exception = new ClientAuthorizationException(new OAuth2Error(OAuth2ErrorCodes.INVALID_TOKEN),
+				clientRegistrationId);
+		Map<String, Object> attributes = Map.of(REJECTED_ACCESS_TOKEN_ATTR_NAME, rejectedTokenValue);
+		// @formatter:off
+		return Mono.<Void>fromRunnable(() -> authorizationFailureHandler.onAuthorizationFailure(exception,
+						ANONYMOUS_PRINCIPAL, attributes))
+				.subscribeOn(Schedulers.boundedElastic());
+		// @formatter:on
+	}
+
+}
@@ -0,0 +1,241 @@
+package com.davidagood.spring.oauth.clientcredentials;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.Disposable;
+import reactor.core.Disposables;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Sends a request to one of several replicas and, if it has not been answered within the
+ * hedge delay, the same request to the next replica as well. Whichever answers first is
+ * used and the other is cancelled. The hedge delay is the configured percentile of the
+ * recent response times, so only the slowest requests are hedged. A request which fails
+ * before its hedge is sent fails right away, once the hedge is sent it only fails if both
+ * do. Sent hedges, hedges which won and hedges not sent because max-hedges-in-flight was
+ * reached are counted in the hedge.requests counter, tagged with the hedger's name and
+ * the outcome
+ */
+public class RequestHedger {
+
+	private static final Logger log = LoggerFactory.getLogger(RequestHedger.class);
+
+	static final String HEDGE_COUNTER = "hedge.requests";
+
+	private final String name;
+
+	private final SecretWordsClientConfig.HedgingPolicy policy;
+
+	private final List<String> urls;
+
+	private final AtomicInteger nextUrl = new AtomicInteger();
+
+	private final AtomicInteger hedgesInFlight = new AtomicInteger();
+
+	private final long minDelayNanos;
+
+	/**
+	 * Ring buffer of the most recent response times
+	 */
+	private final long[] latencies;
+
+	private int latencyIndex;
+
+	private int recordedLatencies;
+
+	private volatile long delayNanos;
+
+	private final Counter sent;
+
+	private final Counter won;
+
+	private final Counter skipped;
+
+	public RequestHedger(String name, String url, SecretWordsClientConfig.HedgingPolicy policy,
+			MeterRegistry meterRegistry) {
+		this.name = name;
+		this.policy = policy;
+		this.urls = new ArrayList<>();
+		this.urls.add(url);
+		this.urls.addAll(policy.getReplicas());
+		this.minDelayNanos = policy.getMinDelay().toNanos();
+		this.latencies = new long[policy.getLatencyWindowSize()];
+		this.delayNanos = Math.max(minDelayNanos, policy.getInitialDelay().toNanos());
+		this.sent = counter(meterRegistry, "sent", "Hedges sent");
+		this.won = counter(meterRegistry, "won", "Hedges answered before the request they hedged");
+		this.skipped = counter(meterRegistry, "skipped", "Hedges not sent because max-hedges-in-flight was reached");
+	}
+
+	/**
+	 * Calls the request function with the URL of a replica, and once more with the URL of
+	 * the next replica for the hedge. Each subscription to the returned Mono, e.g. each
+	 * retry, is hedged on its own
+	 */
+	public <T> Mono<T> hedge(Function<String, Mono<T>> request) {
+		return Mono.defer(() -> {
+			int index = Math.floorMod(nextUrl.getAndIncrement(), urls.size());
+			String url = urls.get(index);
+			String hedgeUrl = urls.get((index + 1) % urls.size());
+			return Mono.<T>create(sink -> new HedgedCall<>(sink, request).start(url, hedgeUrl));
+		});
+	}
+
+	Duration getDelay() {
+		return Duration.ofNanos(delayNanos);
+	}
+
+	int getHedgesInFlight() {
+		return hedgesInFlight.get();
+	}
+
+	private boolean tryAcquireHedge() {
+		while (true) {
+			int current = hedgesInFlight.get();
+			if (current >= policy.getMaxHedgesInFlight()) {
+				return false;
+			}
+			if (hedgesInFlight.compareAndSet(current, current + 1)) {
+				return true;
+			}
+		}
+	}
+
+	/**
+	 * Records how long a call took from sending its request until the first answer,
+	 * whether the request or its hedge answered. Recomputes the delay from the window
+	 * once it is full, until then the initial delay applies
+	 */
+	private synchronized void recordLatency(long nanos) {
+		latencies[latencyIndex] = nanos;
+		latencyIndex = (latencyIndex + 1) % latencies.length;
+		recordedLatencies = Math.min(recordedLatencies + 1, latencies.length);
+		if (recordedLatencies == latencies.length) {
+			long[] sorted = latencies.clone();
+			Arrays.sort(sorted);
+			int rank = (int) Math.ceil(policy.getDelayPercentile() * sorted.length) - 1;
+			delayNanos = Math.max(minDelayNanos, sorted[Math.max(0, rank)]);
+		}
+	}
+
+	private Counter counter(MeterRegistry meterRegistry, String outcome, String description) {
+		return Counter.builder(HEDGE_COUNTER).tag("name", name).tag("outcome", outcome).description(description)
+				.register(meterRegistry);
+	}
+
+	/**
+	 * The request and its hedge, answering the sink with whichever value arrives first.
+	 * State changes are guarded by the instance's monitor
+	 */
+	private final class HedgedCall<T> {
+
+		private final MonoSink<T> sink;
+
+		private final Function<String, Mono<T>> request;
+
+		private final Disposable.Composite attempts = Disposables.composite();
+
+		private boolean done;
+
+		private boolean hedgeSent;
+
+		private int failedAttempts;
+
+		private Throwable firstError;
+
+		private long startNanos;
+
+		private HedgedCall(MonoSink<T> sink, Function<String, Mono<T>> request) {
+			this.sink = sink;
+			this.request = request;
+		}
+
+		void start(String url, String hedgeUrl) {
+			// Cancels whatever is still in flight once the sink is answered or cancelled
+			sink.onDispose(attempts);
+			startNanos = System.nanoTime();
+			attempts.add(Mono.delay(Duration.ofNanos(delayNanos)).subscribe(tick -> sendHedge(hedgeUrl)));
+			attempts.add(subscribe(url, false));
+		}
+
+		private void sendHedge(String hedgeUrl) {
+			synchronized (this) {
+				if (done) {
+					return;
+				}
+				if (!tryAcquireHedge()) {
+					skipped.increment();
+					return;
+				}
+				hedgeSent = true;
+			}
+			sent.increment();
+			log.info("Hedging request name={}, url={}, delay={}", name, hedgeUrl, getDelay());
+			attempts.add(subscribe(hedgeUrl, true));
+		}
+
+		private Disposable subscribe(String url, boolean hedge) {
+			Mono<T> attempt = request.apply(url).contextWrite(sink.currentContext());
+			if (hedge) {
+				attempt = attempt.doFinally(signal -> hedgesInFlight.decrementAndGet());
+			}
+			// @formatter:off
+			return attempt.subscribe(
+					value -> onValue(value, hedge),
+					e -> onError(e),
+					() -> onValue(null, hedge));
+			// @formatter:on
+		}
+
+		private void onValue(T value, boolean hedge) {
+			synchronized (this) {
+				if (done) {
+					return;
+				}
+				done = true;
+			}
+			// A hedge which won answered late for the request, recording only its own
+			// time would pull the delay below the latency it is meant to cut off
+			recordLatency(System.nanoTime() - startNanos);
+			if (hedge) {
+				won.increment();
+			}
+			if (value == null) {
+				sink.success();
+			}
+			else {
+				sink.success(value);
+			}
+		}
+
+		private void onError(Throwable e) {
+			synchronized (this) {
+				if (done) {
+					return;
+				}
+				failedAttempts++;
+				if (firstError == null) {
+					firstError = e;
+				}
+				// A request which failed before its hedge was sent is not hedged again,
+				// retrying it is up to the caller
+				if (hedgeSent && failedAttempts < 2) {
+					return;
+				}
+				done = true;
+			}
+			sink.error(firstError);
+		}
+
+	}
+
+}
@@ -0,0 +1,60 @@
+package com.davidagood.spring.oauth.clientcredentials;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.security.oauth2.client.endpoint.OAuth2ClientCredentialsGrantRequest;
+import org.springframework.security.oauth2.client.endpoint.ReactiveOAuth2AccessTokenResponseClient;
+import org.springframework.security.oauth2.core.OAuth2AuthorizationException;
+import org.springframework.security.oauth2.core.OAuth2ErrorCodes;
+import org.springframework.security.oauth2.core.endpoint.OAuth2AccessTokenResponse;
+import org.springframework.web.reactive.function.client.WebClientRequestException;
+import reactor.core.publisher.Mono;
+
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Times out each client credentials grant request after secret-words-client.token-grant
+ * .timeout and retries it with exponential backoff and jitter when it failed because the
+ * authorization server could not be reached, did not answer in time or answered with the
+ * server_error or temporarily_unavailable error code. Bare 500, 502, 503 and 504 answers
+ * get these error codes from TokenEndpointStatusExchangeFilterFunction. Other errors,
+ * e.g. invalid_client, fail immediately
+ */
+public class ResilientReactiveTokenResponseClient
+		implements ReactiveOAuth2AccessTokenResponseClient<OAuth2ClientCredentialsGrantRequest> {
+
+	private static final Logger log = LoggerFactory.getLogger(ResilientReactiveTokenResponseClient.class);
+
+	private final ReactiveOAuth2AccessTokenResponseClient<OAuth2ClientCredentialsGrantRequest> delegate;
+
+	private final SecretWordsClientConfig.Call tokenGrant;
+
+	public ResilientReactiveTokenResponseClient(
+			ReactiveOAuth2AccessTokenResponseClient<OAuth2ClientCredentialsGrantRequest> delegate,
+			SecretWordsClientConfig.Call tokenGrant) {
+		this.delegate = delegate;
+		this.tokenGrant = tokenGrant;
+	}
+
+	@Override
+	public Mono<OAuth2AccessTokenResponse> getTokenResponse(OAuth2ClientCredentialsGrantRequest grantRequest) {
+		String tokenUri = grantRequest.getClientRegistration().getProviderDetails().getTokenUri();
+		// @formatter:off
+		return Mono.defer(() -> delegate.getTokenResponse(grantRequest))
+				.timeout(tokenGrant.getTimeout())
+				.retryWhen(tokenGrant.getRetry().toRetrySpec(ResilientReactiveTokenResponseClient::isTransient)
+						.doBeforeRetry(signal -> log.warn("Retrying grant request tokenUri={}, retry={}, error={}",
+								tokenUri, signal.totalRetries() + 1, signal.failure().toString())));
+		// @formatter:on
+	}
+
+	static boolean isTransient(Throwable e) {
+		if (e instanceof OAuth2AuthorizationException) {
+			String errorCode = ((OAuth2AuthorizationException) e).getError().getErrorCode();
+			return OAuth2ErrorCodes.SERVER_ERROR.equals(errorCode)
+					|| OAuth2ErrorCodes.TEMPORARILY_UNAVAILABLE.equals(errorCode);
+		}
+		return e instanceof WebClientRequestException || e instanceof TimeoutException;
+	}
+
+}
@@ -0,0 +1,53 @@
+package com.davidagood.spring.oauth.clientcredentials;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Looks up whether single words are secret words. With micro-batch.enabled the lookups of
+ * concurrent callers are combined by a {@link MicroBatcher} into one resource server
+ * request per batch, otherwise every lookup is a request of its own
+ */
+@Component
+public class SecretWordLookup {
+
+	private final SecretWordsClient secretWordsClient;
+
+	/**
+	 * Null unless micro-batch.enabled
+	 */
+	private final MicroBatcher<String, Boolean> microBatcher;
+
+	public SecretWordLookup(SecretWordsClient secretWordsClient, MicroBatchConfig config, MeterRegistry meterRegistry) {
+		this.secretWordsClient = secretWordsClient;
+		this.microBatcher = config.isEnabled()
+				? new MicroBatcher<>("secret-word-lookup", config, this::lookUp, meterRegistry) : null;
+	}
+
+	/**
+	 * Errors are those of {@link SecretWordsClient#lookUpSecretWords}, shared by every
+	 * lookup of the failed batch
+	 */
+	public Mono<Boolean> isSecretWord(String word) {
+		if (microBatcher == null) {
+			return secretWordsClient.lookUpSecretWords(Set.of(word)).map(secretWords -> secretWords.contains(word));
+		}
+		return microBatcher.load(word).defaultIfEmpty(false);
+	}
+
+	/**
+	 * Words the resource server does not return are left out, the batcher completes their
+	 * lookups empty
+	 */
+	private Mono<Map<String, Boolean>> lookUp(Set<String> words) {
+		return secretWordsClient.lookUpSecretWords(words)
+				.map(secretWords -> secretWords.stream().collect(Collectors.toMap(Function.identity(), word -> true)));
+	}
+
+}
@@ -0,0 +1,75 @@
+package com.davidagood.spring.oauth.clientcredentials;
+
+import com.github.benmanes.caffeine.cache.AsyncLoadingCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Optional cache in front of {@link SecretWordsClient}, enabled with
+ * secret-words-cache.enabled. Once an entry is older than refresh-after it is still
+ * served while a single background request replaces it (stale-while-revalidate).
+ * Concurrent misses share one upstream request. When disabled every call goes straight to
+ * the client. Hit, miss and eviction counts are exported as Micrometer cache metrics
+ * named secret-words
+ */
+@Component
+public class SecretWordsCache {
+
+	private final SecretWordsClient secretWordsClient;
+
+	private final String key;
+
+	private final AsyncLoadingCache<String, List<String>> cache;
+
+	public SecretWordsCache(SecretWordsClient secretWordsClient, SecretWordsClientConfig clientConfig,
+			SecretWordsCacheConfig config, MeterRegistry meterRegistry) {
+		this.secretWordsClient = secretWordsClient;
+		this.key = clientConfig.getUrl();
+		if (config.isEnabled()) {
+			// @formatter:off
+			this.cache = Caffeine.newBuilder()
+					.maximumSize(config.getMaximumSize())
+					.expireAfterWrite(config.getTtl())
+					.refreshAfterWrite(config.getRefreshAfter())
+					.recordStats()
+					.buildAsync((url, executor) -> secretWordsClient.getSecretWordsAsync().toFuture());
+			// @formatter:on
+			CaffeineCacheMetrics.monitor(meterRegistry, cache.synchronous(), "secret-words");
+		}
+		else {
+			this.cache = null;
+		}
+	}
+
+	public List<String> getSecretWords() throws AuthorizationException {
+		if (cache == null) {
+			return secretWordsClient.getSecretWords();
+		}
+		try {
+			return cache.get(key).join();
+		}
+		catch (CompletionException e) {
+			if (e.getCause() instanceof AuthorizationException) {
+				throw (AuthorizationException) e.getCause();
+			}
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw e;
+		}
+	}
+
+	public Mono<List<String>> getSecretWordsAsync() {
+		if (cache == null) {
+			return secretWordsClient.getSecretWordsAsync();
+		}
+		return Mono.fromFuture(() -> cache.get(key));
+	}
+
+}
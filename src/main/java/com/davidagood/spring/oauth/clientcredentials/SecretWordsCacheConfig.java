@@ -0,0 +1,57 @@
+package com.davidagood.spring.oauth.clientcredentials;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.ConstructorBinding;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+@ConfigurationProperties("secret-words-cache")
+@ConstructorBinding
+public class SecretWordsCacheConfig {
+
+	private final boolean enabled;
+
+	/**
+	 * How long a cached word list may be served at all; once exceeded the next request
+	 * waits for the resource server again
+	 */
+	private final Duration ttl;
+
+	/**
+	 * Age after which a cached word list is still served but refreshed in the background,
+	 * shorter than the ttl
+	 */
+	private final Duration refreshAfter;
+
+	private final long maximumSize;
+
+	public SecretWordsCacheConfig(@DefaultValue("false") boolean enabled, @DefaultValue("5m") Duration ttl,
+			@DefaultValue("1m") Duration refreshAfter, @DefaultValue("100") long maximumSize) {
+		if (refreshAfter.compareTo(ttl) >= 0) {
+			throw new IllegalArgumentException(String.format(
+					"refresh-after must be shorter than ttl but was refresh-after=%s, ttl=%s", refreshAfter, ttl));
+		}
+		this.enabled = enabled;
+		this.ttl = ttl;
+		this.refreshAfter = refreshAfter;
+		this.maximumSize = maximumSize;
+	}
+
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	public Duration getTtl() {
+		return ttl;
+	}
+
+	public Duration getRefreshAfter() {
+		return refreshAfter;
+	}
+
+	public long getMaximumSize() {
+		return maximumSize;
+	}
+
+}
@@ -1,15 +1,39 @@
 package com.davidagood.spring.oauth.clientcredentials;
 
+import com.fasterxml.jackson.databind.JsonNode;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.core.codec.CodecException;
+import org.springframework.core.io.buffer.DataBufferLimitException;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.UnsupportedMediaTypeException;
 import org.springframework.web.reactive.function.client.WebClient;
 import org.springframework.web.reactive.function.client.WebClientException;
+import org.springframework.web.reactive.function.client.WebClientRequestException;
 import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 
+import java.io.IOException;
+import java.net.URI;
+import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.Function;
 
 import static com.davidagood.spring.oauth.clientcredentials.AuthorizedWebClientConfig.REGISTRATION_ID;
 import static org.springframework.security.oauth2.client.web.reactive.function.client.ServerOAuth2AuthorizedClientExchangeFilterFunction.clientRegistrationId;
@@ -19,13 +43,64 @@ public class SecretWordsClient {
 
 	private static final Logger log = LoggerFactory.getLogger(SecretWordsClient.class);
 
+	/**
+	 * Built once rather than per request
+	 */
+	private static final Consumer<Map<String, Object>> CLIENT_REGISTRATION_ATTRIBUTES = clientRegistrationId(
+			REGISTRATION_ID);
+
+	/**
+	 * Statuses of an overloaded or unreachable resource server, as opposed to e.g. 501
+	 * Not Implemented, which a retry would only repeat
+	 */
+	private static final Set<Integer> TRANSIENT_STATUSES = Set.of(HttpStatus.INTERNAL_SERVER_ERROR.value(),
+			HttpStatus.BAD_GATEWAY.value(), HttpStatus.SERVICE_UNAVAILABLE.value(), HttpStatus.GATEWAY_TIMEOUT.value());
+
+	private static final ParameterizedTypeReference<List<String>> SECRET_WORDS_TYPE = new ParameterizedTypeReference<>() {
+	};
+
+	/**
+	 * Query parameter repeated for every word of a lookup
+	 */
+	static final String LOOKUP_PARAMETER = "word";
+
 	private final WebClient webClient;
 
+	private final WebClient reactiveWebClient;
+
 	private final SecretWordsClientConfig config;
 
-	public SecretWordsClient(WebClient webClient, SecretWordsClientConfig config) {
+	private final CircuitBreaker circuitBreaker;
+
+	/**
+	 * Null unless concurrency-limit.enabled
+	 */
+	private final AimdConcurrencyLimiter concurrencyLimiter;
+
+	/**
+	 * Null unless secret-words-client.hedging.enabled
+	 */
+	private final RequestHedger hedger;
+
+	private final AtomicReference<ValidatedWords> lastResponse = new AtomicReference<>();
+
+	/**
+	 * Words of the last successful response, served while the circuit breaker is open
+	 */
+	private final AtomicReference<List<String>> lastKnownGood = new AtomicReference<>();
+
+	public SecretWordsClient(@Qualifier("authenticatedWebClient") WebClient webClient,
+			@Qualifier("reactiveAuthenticatedWebClient") WebClient reactiveWebClient, SecretWordsClientConfig config,
+			ConcurrencyLimitConfig concurrencyLimitConfig, MeterRegistry meterRegistry) {
 		this.webClient = webClient;
+		this.reactiveWebClient = reactiveWebClient;
 		this.config = config;
+		this.circuitBreaker = new CircuitBreaker("secret-words-client", config.getCircuitBreaker());
+		this.concurrencyLimiter = concurrencyLimitConfig.isEnabled() ? new AimdConcurrencyLimiter("resource-server",
+				concurrencyLimitConfig.getResourceServer(), concurrencyLimitConfig.getRetryAfter(), meterRegistry)
+				: null;
+		this.hedger = config.getHedging().isEnabled()
+				? new RequestHedger("resource-server", config.getUrl(), config.getHedging(), meterRegistry) : null;
 	}
 
 	public List<String> getSecretWords() throws AuthorizationException {
@@ -33,26 +108,310 @@ public class SecretWordsClient {
 		var url = config.getUrl();
 		log.info("Making HTTP request method={}, url={}", get, url);
 		try {
-			// @formatter:off
-			return webClient.method(get)
-					.uri(url)
-					.attributes(clientRegistrationId(REGISTRATION_ID))
-					.retrieve()
-					.bodyToMono(new ParameterizedTypeReference<List<String>>() {})
-					.block();
-			// @formatter:on
+			return withResilience(hedged(replicaUrl -> exchange(webClient, get, replicaUrl)), get, url).block();
+		}
+		catch (DataBufferLimitException | CodecException | UnsupportedMediaTypeException e) {
+			throw unreadableBody(get, url, e);
+		}
+		catch (WebClientResponseException.Unauthorized e) {
+			throw new AuthorizationException(e.getMessage());
+		}
+		catch (WebClientResponseException wcre) {
+			throw requestFailed(get, url, wcre);
+		}
+		catch (WebClientException wce) {
+			throw requestFailed(get, url, wce);
+		}
+
+	}
+
+	/**
+	 * Non-blocking variant of {@link #getSecretWords()}; no thread waits for the resource
+	 * server or, if a new token is needed, the authorization server. Errors are
+	 * translated the same way, an AuthorizationException or a SecretWordsRequestException
+	 * is signalled
+	 */
+	public Mono<List<String>> getSecretWordsAsync() {
+		var get = HttpMethod.GET;
+		var url = config.getUrl();
+		log.info("Making non-blocking HTTP request method={}, url={}", get, url);
+		return withResilience(hedged(replicaUrl -> exchange(reactiveWebClient, get, replicaUrl)), get, url)
+				.onErrorMap(WebClientException.class, e -> translate(get, url, e))
+				.onErrorMap(SecretWordsClient::isUnreadableBody, e -> unreadableBody(get, url, e));
+	}
+
+	/**
+	 * Which of the given words are secret words, asked in a single request with a word
+	 * query parameter per word; the resource server responds with the ones which are.
+	 * Timed out, retried and limited like the other requests, but not answered from the
+	 * last known good words while the circuit breaker is open. Errors are translated like
+	 * those of {@link #getSecretWordsAsync()}
+	 */
+	public Mono<Set<String>> lookUpSecretWords(Collection<String> words) {
+		var get = HttpMethod.GET;
+		var url = config.getUrl();
+		log.info("Making HTTP lookup request method={}, url={}, words={}", get, url, words.size());
+		// @formatter:off
+		Mono<Set<String>> exchange = hedged(replicaUrl -> reactiveWebClient.method(get)
+				// Passing the url as template keeps the words out of the http.client.requests uri tag
+				.uri(replicaUrl, uriBuilder -> uriBuilder.queryParam(LOOKUP_PARAMETER, words.toArray()).build())
+				.attributes(CLIENT_REGISTRATION_ATTRIBUTES)
+				.retrieve()
+				.bodyToMono(SECRET_WORDS_TYPE)
+				.map(secretWords -> (Set<String>) new HashSet<>(secretWords)));
+		return withRetries(exchange, get, url)
+				.onErrorMap(CircuitBreaker.OpenException.class, e -> notSent(get, url, e))
+				.onErrorMap(WebClientException.class, e -> translate(get, url, e))
+				.onErrorMap(SecretWordsClient::isUnreadableBody, e -> unreadableBody(get, url, e));
+		// @formatter:on
+	}
+
+	/**
+	 * Decodes the word array element by element as it arrives instead of aggregating it
+	 * into a list first, so memory use does not grow with the size of the array and the
+	 * codec's max in-memory size only limits the size of a single word. Words may already
+	 * have been emitted when an error occurs, so the stream is neither timed out nor
+	 * retried
+	 */
+	public Flux<String> streamSecretWords() {
+		var get = HttpMethod.GET;
+		var url = config.getUrl();
+		log.info("Making streaming HTTP request method={}, url={}", get, url);
+		// @formatter:off
+		return reactiveWebClient.method(get)
+				.uri(url)
+				.attributes(CLIENT_REGISTRATION_ATTRIBUTES)
+				.retrieve()
+				// Jackson does not decode to String, it is left to the line based StringDecoder
+				.bodyToFlux(JsonNode.class)
+				.map(JsonNode::asText)
+				.onErrorMap(WebClientException.class, e -> translate(get, url, e))
+				.onErrorMap(SecretWordsClient::isUnreadableBody, e -> unreadableBody(get, url, e));
+		// @formatter:on
+	}
+
+	/**
+	 * The resource server's response body as received, for forwarding without decoding
+	 * it. Timed out, retried and limited like the other requests, but only up to the
+	 * response headers, as parts of the body may already have been forwarded when an
+	 * error occurs. Not answered from the last known good words while the circuit breaker
+	 * is open. The caller must consume the body and release its buffers
+	 */
+	public Flux<DataBuffer> getSecretWordsPayload() throws AuthorizationException {
+		var get = HttpMethod.GET;
+		var url = config.getUrl();
+		log.info("Making passthrough HTTP request method={}, url={}", get, url);
+		// @formatter:off
+		Mono<Flux<DataBuffer>> exchange = webClient.method(get)
+				.uri(url)
+				.attributes(CLIENT_REGISTRATION_ATTRIBUTES)
+				.retrieve()
+				.toEntityFlux(DataBuffer.class)
+				.flatMap(entity -> {
+					MediaType contentType = entity.getHeaders().getContentType();
+					if (MediaType.APPLICATION_JSON.isCompatibleWith(contentType)) {
+						return Mono.just(entity.getBody());
+					}
+					return entity.getBody().doOnNext(DataBufferUtils::release).then(Mono.error(() ->
+							new SecretWordsRequestException(String.format(
+									"Secret words request failed; Request: method=%s, url=%s; Response: contentType=%s",
+									get, url, contentType))));
+				});
+		// @formatter:on
+		try {
+			return withRetries(exchange, get, url)
+					.onErrorMap(CircuitBreaker.OpenException.class, e -> notSent(get, url, e)).block();
 		}
 		catch (WebClientResponseException.Unauthorized e) {
 			throw new AuthorizationException(e.getMessage());
 		}
 		catch (WebClientResponseException wcre) {
-			throw new SecretWordsRequestException(String.format(
-					"Secret words request failed; Request: method=%s, url=%s; Response: status=%s, body=%s; Error: %s",
-					get, url, wcre.getRawStatusCode(), wcre.getResponseBodyAsString(), wcre.getMessage()));
+			throw requestFailed(get, url, wcre);
 		}
 		catch (WebClientException wce) {
-			throw new SecretWordsRequestException(String.format(
-					"Secret words request failed; Request: method=%s, url=%s Error: %s", get, url, wce.getMessage()));
+			throw requestFailed(get, url, wce);
+		}
+	}
+
+	/**
+	 * Conditional GET: the validators of the last successful response are sent along and
+	 * on 304 Not Modified the words retained from that response are returned without
+	 * reading a body
+	 */
+	private Mono<List<String>> exchange(WebClient client, HttpMethod method, String url) {
+		ValidatedWords previous = lastResponse.get();
+		// @formatter:off
+		return client.method(method)
+				.uri(url)
+				.attributes(CLIENT_REGISTRATION_ATTRIBUTES)
+				.headers(headers -> {
+					if (previous != null) {
+						previous.addConditionalHeaders(headers);
+					}
+				})
+				.exchangeToMono(response -> {
+					if (response.rawStatusCode() == HttpStatus.NOT_MODIFIED.value() && previous != null) {
+						log.info("Resource server responded not modified, reusing retained words url={}", url);
+						return response.releaseBody().thenReturn(previous.words);
+					}
+					if (HttpStatus.Series.resolve(response.rawStatusCode()) == HttpStatus.Series.SUCCESSFUL) {
+						return response.bodyToMono(SECRET_WORDS_TYPE)
+								.doOnNext(words -> lastResponse.set(ValidatedWords.from(response.headers().asHttpHeaders(), words)));
+					}
+					return response.createException().flatMap(Mono::error);
+				})
+				// Reactor Netty completes without a response when the connection is closed
+				// before one arrives
+				.switchIfEmpty(Mono.error(() -> new WebClientRequestException(
+						new IOException("Connection closed before a response was received"), method, URI.create(url),
+						HttpHeaders.EMPTY)));
+		// @formatter:on
+	}
+
+	/**
+	 * The request to url, or when hedging is enabled to one of the replicas and hedged.
+	 * The bearer filter of the WebClient attaches the stored token to the request and the
+	 * hedge alike, so hedging never causes a token grant of its own. Not used for the
+	 * streamed bodies, which may already be partly forwarded when a hedge would win
+	 */
+	private <T> Mono<T> hedged(Function<String, Mono<T>> request) {
+		if (hedger == null) {
+			return request.apply(config.getUrl());
+		}
+		return hedger.hedge(request);
+	}
+
+	/**
+	 * Each attempt is timed out on its own and passes through the circuit breaker, so
+	 * every attempt counts towards the failure rate and retries stop as soon as it opens.
+	 * Only transient errors are retried: a 401 is left to unauthorized-retry and other
+	 * 4xx responses would fail the same way again. Attempts rejected by the concurrency
+	 * limiter are neither retried nor counted as failures, the
+	 * ConcurrencyLimitExceededException is signalled as is
+	 */
+	private Mono<List<String>> withResilience(Mono<List<String>> exchange, HttpMethod method, String url) {
+		// @formatter:off
+		return withRetries(exchange, method, url)
+				.doOnNext(lastKnownGood::set)
+				.onErrorResume(CircuitBreaker.OpenException.class, e -> lastKnownGoodOrError(method, url, e));
+		// @formatter:on
+	}
+
+	private <T> Mono<T> withRetries(Mono<T> exchange, HttpMethod method, String url) {
+		SecretWordsClientConfig.Call request = config.getRequest();
+		// @formatter:off
+		return circuitBreaker.protect(limitConcurrency(exchange.timeout(request.getTimeout())), SecretWordsClient::isTransient)
+				.retryWhen(request.getRetry().toRetrySpec(SecretWordsClient::isTransient)
+						.doBeforeRetry(signal -> log.warn("Retrying HTTP request method={}, url={}, retry={}, error={}",
+								method, url, signal.totalRetries() + 1, signal.failure().toString())))
+				.onErrorMap(TimeoutException.class, e -> new SecretWordsRequestException(String.format(
+						"Secret words request timed out; Request: method=%s, url=%s; Timeout: %s", method, url,
+						request.getTimeout())));
+		// @formatter:on
+	}
+
+	private <T> Mono<T> limitConcurrency(Mono<T> attempt) {
+		if (concurrencyLimiter == null) {
+			return attempt;
+		}
+		return concurrencyLimiter.limit(attempt, SecretWordsClient::isTransient);
+	}
+
+	private Mono<List<String>> lastKnownGoodOrError(HttpMethod method, String url, CircuitBreaker.OpenException e) {
+		List<String> words = lastKnownGood.get();
+		if (words != null && config.getCircuitBreaker().isFallbackToLastKnownGood()) {
+			log.warn("Circuit breaker is open, returning last known good words method={}, url={}", method, url);
+			return Mono.just(words);
+		}
+		return Mono.error(notSent(method, url, e));
+	}
+
+	private static SecretWordsRequestException notSent(HttpMethod method, String url, CircuitBreaker.OpenException e) {
+		return new SecretWordsRequestException(String.format(
+				"Secret words request not sent; Request: method=%s, url=%s; Error: %s", method, url, e.getMessage()));
+	}
+
+	/**
+	 * Whether the error suggests the resource server is unavailable or overloaded, as
+	 * opposed to the request being rejected
+	 */
+	static boolean isTransient(Throwable e) {
+		if (e instanceof WebClientResponseException) {
+			return TRANSIENT_STATUSES.contains(((WebClientResponseException) e).getRawStatusCode());
+		}
+		return e instanceof WebClientRequestException || e instanceof TimeoutException;
+	}
+
+	static Exception translate(HttpMethod method, String url, WebClientException e) {
+		if (e instanceof WebClientResponseException.Unauthorized) {
+			return new AuthorizationException(e.getMessage());
+		}
+		if (e instanceof WebClientResponseException) {
+			return requestFailed(method, url, (WebClientResponseException) e);
+		}
+		return requestFailed(method, url, e);
+	}
+
+	/**
+	 * Whether the response body could not be decoded into words, because it exceeds the
+	 * codec's max in-memory size, is not a word array or has an unsupported content type
+	 */
+	static boolean isUnreadableBody(Throwable e) {
+		return e instanceof DataBufferLimitException || e instanceof CodecException
+				|| e instanceof UnsupportedMediaTypeException;
+	}
+
+	static SecretWordsRequestException unreadableBody(HttpMethod method, String url, Throwable e) {
+		return new SecretWordsRequestException(
+				String.format("Secret words response could not be read; Request: method=%s, url=%s; Error: %s", method,
+						url, e.getMessage()));
+	}
+
+	private static SecretWordsRequestException requestFailed(HttpMethod method, String url,
+			WebClientResponseException wcre) {
+		return new SecretWordsRequestException(String.format(
+				"Secret words request failed; Request: method=%s, url=%s; Response: status=%s, body=%s; Error: %s",
+				method, url, wcre.getRawStatusCode(), wcre.getResponseBodyAsString(), wcre.getMessage()));
+	}
+
+	private static SecretWordsRequestException requestFailed(HttpMethod method, String url, WebClientException wce) {
+		return new SecretWordsRequestException(String.format(
+				"Secret words request failed; Request: method=%s, url=%s Error: %s", method, url, wce.getMessage()));
+	}
+
+	/**
+	 * Words from a successful response along with its validators, if it had any
+	 */
+	private static final class ValidatedWords {
+
+		private final String etag;
+
+		private final String lastModified;
+
+		private final List<String> words;
+
+		private ValidatedWords(String etag, String lastModified, List<String> words) {
+			this.etag = etag;
+			this.lastModified = lastModified;
+			this.words = words;
+		}
+
+		static ValidatedWords from(HttpHeaders responseHeaders, List<String> words) {
+			String etag = responseHeaders.getETag();
+			String lastModified = responseHeaders.getFirst(HttpHeaders.LAST_MODIFIED);
+			if (etag == null && lastModified == null) {
+				return null;
+			}
+			return new ValidatedWords(etag, lastModified, words);
+		}
+
+		void addConditionalHeaders(HttpHeaders requestHeaders) {
+			if (etag != null) {
+				requestHeaders.setIfNoneMatch(etag);
+			}
+			if (lastModified != null) {
+				requestHeaders.set(HttpHeaders.IF_MODIFIED_SINCE, lastModified);
+			}
 		}
 
 	}
@@ -2,6 +2,13 @@ package com.davidagood.spring.oauth.clientcredentials;
 
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.boot.context.properties.ConstructorBinding;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+import reactor.util.retry.Retry;
+import reactor.util.retry.RetryBackoffSpec;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.function.Predicate;
 
 @ConfigurationProperties("secret-words-client")
 @ConstructorBinding
@@ -9,12 +16,313 @@ public class SecretWordsClientConfig {
 
 	private final String url;
 
-	public SecretWordsClientConfig(String url) {
+	/**
+	 * Timeout and retries of the GET to the resource server, including the grant request
+	 * if a new token is needed first
+	 */
+	private final Call request;
+
+	/**
+	 * Timeout and retries of each client credentials grant request on its own, whether
+	 * made on the request path or in the background
+	 */
+	private final Call tokenGrant;
+
+	private final CircuitBreakerPolicy circuitBreaker;
+
+	private final HedgingPolicy hedging;
+
+	public SecretWordsClientConfig(String url, @DefaultValue Call request, @DefaultValue Call tokenGrant,
+			@DefaultValue CircuitBreakerPolicy circuitBreaker, @DefaultValue HedgingPolicy hedging) {
 		this.url = url;
+		this.request = request;
+		this.tokenGrant = tokenGrant;
+		this.circuitBreaker = circuitBreaker;
+		this.hedging = hedging;
 	}
 
 	public String getUrl() {
 		return url;
 	}
 
+	public Call getRequest() {
+		return request;
+	}
+
+	public Call getTokenGrant() {
+		return tokenGrant;
+	}
+
+	public CircuitBreakerPolicy getCircuitBreaker() {
+		return circuitBreaker;
+	}
+
+	public HedgingPolicy getHedging() {
+		return hedging;
+	}
+
+	public static class Call {
+
+		/**
+		 * Maximum time a single attempt may take, retries each get the full timeout
+		 */
+		private final Duration timeout;
+
+		private final RetryPolicy retry;
+
+		public Call(@DefaultValue("10s") Duration timeout, @DefaultValue RetryPolicy retry) {
+			this.timeout = timeout;
+			this.retry = retry;
+		}
+
+		public Duration getTimeout() {
+			return timeout;
+		}
+
+		public RetryPolicy getRetry() {
+			return retry;
+		}
+
+	}
+
+	public static class RetryPolicy {
+
+		/**
+		 * How many times a call failing with a transient error (connect error, timeout,
+		 * 500, 502, 503 or 504) is retried, 0 disables retries
+		 */
+		private final int maxRetries;
+
+		private final Duration firstBackoff;
+
+		private final Duration maxBackoff;
+
+		/**
+		 * Fraction of each backoff by which it is randomly shortened or lengthened, so
+		 * that callers which failed together do not all retry at the same moment
+		 */
+		private final double jitter;
+
+		public RetryPolicy(@DefaultValue("0") int maxRetries, @DefaultValue("100ms") Duration firstBackoff,
+				@DefaultValue("2s") Duration maxBackoff, @DefaultValue("0.5") double jitter) {
+			if (maxRetries < 0) {
+				throw new IllegalArgumentException("max-retries must not be negative but was " + maxRetries);
+			}
+			if (jitter < 0 || jitter > 1) {
+				throw new IllegalArgumentException("jitter must be between 0 and 1 inclusive but was " + jitter);
+			}
+			this.maxRetries = maxRetries;
+			this.firstBackoff = firstBackoff;
+			this.maxBackoff = maxBackoff;
+			this.jitter = jitter;
+		}
+
+		public int getMaxRetries() {
+			return maxRetries;
+		}
+
+		public Duration getFirstBackoff() {
+			return firstBackoff;
+		}
+
+		public Duration getMaxBackoff() {
+			return maxBackoff;
+		}
+
+		public double getJitter() {
+			return jitter;
+		}
+
+		/**
+		 * Exponential backoff which, once retries are exhausted, signals the last error
+		 * itself rather than Reactor's RetryExhaustedException
+		 */
+		RetryBackoffSpec toRetrySpec(Predicate<Throwable> isRetryable) {
+			// @formatter:off
+			return Retry.backoff(maxRetries, firstBackoff)
+					.maxBackoff(maxBackoff)
+					.jitter(jitter)
+					.filter(isRetryable)
+					.onRetryExhaustedThrow((spec, signal) -> signal.failure());
+			// @formatter:on
+		}
+
+	}
+
+	public static class CircuitBreakerPolicy {
+
+		private final boolean enabled;
+
+		/**
+		 * Share of failed calls among the recorded ones at which the circuit breaker
+		 * opens, e.g. 0.5 opens it once half of them failed
+		 */
+		private final double failureRateThreshold;
+
+		/**
+		 * Number of most recent calls whose outcome is recorded
+		 */
+		private final int slidingWindowSize;
+
+		/**
+		 * Number of calls which have to be recorded before the failure rate is evaluated
+		 */
+		private final int minimumNumberOfCalls;
+
+		/**
+		 * How long calls are rejected once the circuit breaker has opened, before a trial
+		 * call is let through
+		 */
+		private final Duration waitDurationInOpenState;
+
+		/**
+		 * Whether calls rejected by the open circuit breaker return the words of the last
+		 * successful response, if there was one, instead of failing. Off unless set, as
+		 * those words may be stale
+		 */
+		private final boolean fallbackToLastKnownGood;
+
+		public CircuitBreakerPolicy(@DefaultValue("false") boolean enabled,
+				@DefaultValue("0.5") double failureRateThreshold, @DefaultValue("20") int slidingWindowSize,
+				@DefaultValue("10") int minimumNumberOfCalls, @DefaultValue("30s") Duration waitDurationInOpenState,
+				@DefaultValue("false") boolean fallbackToLastKnownGood) {
+			if (failureRateThreshold <= 0 || failureRateThreshold > 1) {
+				throw new IllegalArgumentException(
+						"failure-rate-threshold must be greater than 0 and at most 1 but was " + failureRateThreshold);
+			}
+			if (minimumNumberOfCalls < 1 || minimumNumberOfCalls > slidingWindowSize) {
+				throw new IllegalArgumentException(
+						"minimum-number-of-calls must be between 1 and sliding-window-size but was "
+								+ minimumNumberOfCalls);
+			}
+			this.enabled = enabled;
+			this.failureRateThreshold = failureRateThreshold;
+			this.slidingWindowSize = slidingWindowSize;
+			this.minimumNumberOfCalls = minimumNumberOfCalls;
+			this.waitDurationInOpenState = waitDurationInOpenState;
+			this.fallbackToLastKnownGood = fallbackToLastKnownGood;
+		}
+
+		public boolean isEnabled() {
+			return enabled;
+		}
+
+		public double getFailureRateThreshold() {
+			return failureRateThreshold;
+		}
+
+		public int getSlidingWindowSize() {
+			return slidingWindowSize;
+		}
+
+		public int getMinimumNumberOfCalls() {
+			return minimumNumberOfCalls;
+		}
+
+		public Duration getWaitDurationInOpenState() {
+			return waitDurationInOpenState;
+		}
+
+		public boolean isFallbackToLastKnownGood() {
+			return fallbackToLastKnownGood;
+		}
+
+	}
+
+	public static class HedgingPolicy {
+
+		private final boolean enabled;
+
+		/**
+		 * Further URLs serving the same words as url. Requests are spread over url and
+		 * the replicas in turn, each hedge goes to the replica after the one the request
+		 * went to
+		 */
+		private final List<String> replicas;
+
+		/**
+		 * Percentile of the recent response times after which a request still waiting for
+		 * its response is hedged, e.g. 0.95 hedges the slowest 5%
+		 */
+		private final double delayPercentile;
+
+		/**
+		 * Number of most recent response times the percentile is taken over
+		 */
+		private final int latencyWindowSize;
+
+		/**
+		 * Hedge delay until the latency window is full
+		 */
+		private final Duration initialDelay;
+
+		/**
+		 * Lower bound of the hedge delay, so that a hedge is never sent right away
+		 */
+		private final Duration minDelay;
+
+		/**
+		 * Maximum number of hedges in flight at the same time, requests beyond it are
+		 * left to their first attempt
+		 */
+		private final int maxHedgesInFlight;
+
+		public HedgingPolicy(@DefaultValue("false") boolean enabled, List<String> replicas,
+				@DefaultValue("0.95") double delayPercentile, @DefaultValue("100") int latencyWindowSize,
+				@DefaultValue("100ms") Duration initialDelay, @DefaultValue("5ms") Duration minDelay,
+				@DefaultValue("10") int maxHedgesInFlight) {
+			if (delayPercentile <= 0 || delayPercentile > 1) {
+				throw new IllegalArgumentException(
+						"delay-percentile must be greater than 0 and at most 1 but was " + delayPercentile);
+			}
+			if (latencyWindowSize < 1) {
+				throw new IllegalArgumentException(
+						"latency-window-size must be at least 1 but was " + latencyWindowSize);
+			}
+			if (maxHedgesInFlight < 0) {
+				throw new IllegalArgumentException(
+						"max-hedges-in-flight must not be negative but was " + maxHedgesInFlight);
+			}
+			this.replicas = (replicas != null) ? replicas : List.of();
+			if (enabled && this.replicas.isEmpty()) {
+				throw new IllegalArgumentException("replicas must not be empty when hedging is enabled");
+			}
+			this.enabled = enabled;
+			this.delayPercentile = delayPercentile;
+			this.latencyWindowSize = latencyWindowSize;
+			this.initialDelay = initialDelay;
+			this.minDelay = minDelay;
+			this.maxHedgesInFlight = maxHedgesInFlight;
+		}
+
+		public boolean isEnabled() {
+			return enabled;
+		}
+
+		public List<String> getReplicas() {
+			return replicas;
+		}
+
+		public double getDelayPercentile() {
+			return delayPercentile;
+		}
+
+		public int getLatencyWindowSize() {
+			return latencyWindowSize;
+		}
+
+		public Duration getInitialDelay() {
+			return initialDelay;
+		}
+
+		public Duration getMinDelay() {
+			return minDelay;
+		}
+
+		public int getMaxHedgesInFlight() {
+			return maxHedgesInFlight;
+		}
+
+	}
+
 }
@@ -0,0 +1,143 @@
+package com.davidagood.spring.oauth.clientcredentials;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.security.oauth2.client.OAuth2AuthorizeRequest;
+import org.springframework.security.oauth2.client.OAuth2AuthorizedClient;
+import org.springframework.security.oauth2.client.ReactiveOAuth2AuthorizedClientManager;
+import org.springframework.security.oauth2.core.OAuth2AuthorizationException;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import static com.davidagood.spring.oauth.clientcredentials.AuthorizedWebClientConfig.ANONYMOUS_PRINCIPAL;
+import static com.davidagood.spring.oauth.clientcredentials.AuthorizedWebClientConfig.REGISTRATION_ID;
+import static org.springframework.security.oauth2.client.web.reactive.function.client.ServerOAuth2AuthorizedClientExchangeFilterFunction.oauth2AuthorizedClient;
+
+/**
+ * Combines the word lists of the shards configured under fan-out.urls. The token is
+ * acquired once up front and handed to every shard request, which are then all made at
+ * the same time, so the total latency is that of the slowest shard rather than the sum.
+ * Words are added as each shard responds, each word once, in the order they arrive. A
+ * shard which fails or exceeds the shard timeout is left out and reported in the result
+ * instead of failing the whole request
+ */
+@Component
+public class SecretWordsFanOut {
+
+	private static final Logger log = LoggerFactory.getLogger(SecretWordsFanOut.class);
+
+	private static final ParameterizedTypeReference<List<String>> SECRET_WORDS_TYPE = new ParameterizedTypeReference<>() {
+	};
+
+	private final ReactiveOAuth2AuthorizedClientManager authorizedClientManager;
+
+	private final WebClient webClient;
+
+	private final FanOutConfig config;
+
+	public SecretWordsFanOut(ReactiveOAuth2AuthorizedClientManager authorizedClientManager,
+			@Qualifier("reactiveAuthenticatedWebClient") WebClient webClient, FanOutConfig config) {
+		this.authorizedClientManager = authorizedClientManager;
+		this.webClient = webClient;
+		this.config = config;
+	}
+
+	/**
+	 * Signals an AuthorizationException if no token could be acquired, every other
+	 * failure is confined to its shard
+	 */
+	public Mono<Result> getSecretWords() {
+		OAuth2AuthorizeRequest authorizeRequest = OAuth2AuthorizeRequest.withClientRegistrationId(REGISTRATION_ID)
+				.principal(ANONYMOUS_PRINCIPAL).build();
+		// @formatter:off
+		return authorizedClientManager.authorize(authorizeRequest)
+				.onErrorMap(OAuth2AuthorizationException.class, e -> new AuthorizationException(e.getMessage()))
+				.switchIfEmpty(Mono.error(() -> new AuthorizationException(
+						"No authorized client for clientRegistrationId=" + REGISTRATION_ID)))
+				.flatMap(authorizedClient -> Flux.merge(Flux.fromIterable(config.getUrls())
+								.map(url -> getShardWords(authorizedClient, url)))
+						.collect(Result::new, Result::add));
+		// @formatter:on
+	}
+
+	private Mono<ShardResult> getShardWords(OAuth2AuthorizedClient authorizedClient, String url) {
+		// @formatter:off
+		return webClient.get()
+				.uri(url)
+				.attributes(oauth2AuthorizedClient(authorizedClient))
+				.retrieve()
+				.bodyToMono(SECRET_WORDS_TYPE)
+				.timeout(config.getShardTimeout())
+				.map(words -> new ShardResult(url, words))
+				.onErrorResume(e -> {
+					log.warn("Leaving out shard url={}, error={}", url, e.toString());
+					return Mono.just(new ShardResult(url, null));
+				});
+		// @formatter:on
+	}
+
+	private static final class ShardResult {
+
+		private final String url;
+
+		/**
+		 * Null if the shard failed
+		 */
+		private final List<String> words;
+
+		private ShardResult(String url, List<String> words) {
+			this.url = url;
+			this.words = words;
+		}
+
+	}
+
+	public static final class Result {
+
+		private final Set<String> words = new LinkedHashSet<>();
+
+		private final List<String> failedShards = new ArrayList<>();
+
+		private int succeededShards;
+
+		private void add(ShardResult shardResult) {
+			if (shardResult.words == null) {
+				failedShards.add(shardResult.url);
+			}
+			else {
+				succeededShards++;
+				words.addAll(shardResult.words);
+			}
+		}
+
+		public List<String> getWords() {
+			return List.copyOf(words);
+		}
+
+		public List<String> getFailedShards() {
+			return List.copyOf(failedShards);
+		}
+
+		public boolean isPartial() {
+			return !failedShards.isEmpty();
+		}
+
+		/**
+		 * True if there were shards but none of them succeeded
+		 */
+		public boolean isFailed() {
+			return succeededShards == 0 && !failedShards.isEmpty();
+		}
+
+	}
+
+}
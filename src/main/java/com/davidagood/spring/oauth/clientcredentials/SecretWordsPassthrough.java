@@ -0,0 +1,89 @@
+package com.davidagood.spring.oauth.clientcredentials;
+
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.context.request.async.CallableProcessingInterceptor;
+import org.springframework.web.context.request.async.WebAsyncManager;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Writes the resource server's word array, as received, into a response body shaped like
+ * a serialized {@link SecretWordsDto}. Only the surrounding object and createdAt are
+ * written by this application, the array is neither decoded nor encoded again. Every
+ * buffer of the array is released once written, also when the resource server's body or
+ * the write to the caller fails, and when the body is never written at all
+ */
+final class SecretWordsPassthrough {
+
+	private static final DataBufferFactory BUFFER_FACTORY = new DefaultDataBufferFactory();
+
+	private static final byte[] PREFIX = "{\"words\":".getBytes(StandardCharsets.UTF_8);
+
+	private SecretWordsPassthrough() {
+	}
+
+	/**
+	 * A body which writes the words, or releases them once the async request has
+	 * completed if Spring MVC never got to write it, e.g. because its async task executor
+	 * rejected the task or the request timed out or failed before the task ran
+	 * @param asyncManager the async manager of the request, which will write the body
+	 */
+	static StreamingResponseBody body(Flux<DataBuffer> words, String createdAt, WebAsyncManager asyncManager) {
+		AtomicBoolean subscribed = new AtomicBoolean();
+		asyncManager.registerCallableInterceptor(SecretWordsPassthrough.class.getName(),
+				new CallableProcessingInterceptor() {
+					@Override
+					public <T> void afterCompletion(NativeWebRequest request, Callable<T> task) {
+						if (subscribed.compareAndSet(false, true)) {
+							release(words);
+						}
+					}
+				});
+		return outputStream -> {
+			if (subscribed.compareAndSet(false, true)) {
+				write(words, createdAt, outputStream);
+			}
+		};
+	}
+
+	/**
+	 * Blocks until the whole body has been written
+	 * @param words the resource server's response body, a JSON array of strings
+	 * @param createdAt createdAt serialized as JSON
+	 */
+	static void write(Flux<DataBuffer> words, String createdAt, OutputStream outputStream) {
+		byte[] suffix = (",\"createdAt\":" + createdAt + "}").getBytes(StandardCharsets.UTF_8);
+		// @formatter:off
+		// mergeSequential rather than concat subscribes to the words right away, so they
+		// are cancelled and released also when writing the prefix fails
+		Flux<DataBuffer> body = Flux.mergeSequential(
+				Mono.fromSupplier(() -> BUFFER_FACTORY.wrap(PREFIX)),
+				words,
+				Mono.fromSupplier(() -> BUFFER_FACTORY.wrap(suffix)));
+		DataBufferUtils.write(body, outputStream)
+				.doOnNext(DataBufferUtils::release)
+				.doOnDiscard(DataBuffer.class, DataBufferUtils::release)
+				.blockLast();
+		// @formatter:on
+	}
+
+	private static void release(Flux<DataBuffer> words) {
+		// @formatter:off
+		words.doOnNext(DataBufferUtils::release)
+				.then()
+				.onErrorResume(e -> Mono.empty())
+				.subscribe();
+		// @formatter:on
+	}
+
+}
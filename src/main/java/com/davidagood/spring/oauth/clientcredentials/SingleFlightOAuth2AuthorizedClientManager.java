@@ -0,0 +1,63 @@
+package com.davidagood.spring.oauth.clientcredentials;
+
+import org.springframework.security.oauth2.client.OAuth2AuthorizeRequest;
+import org.springframework.security.oauth2.client.OAuth2AuthorizedClient;
+import org.springframework.security.oauth2.client.OAuth2AuthorizedClientManager;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Coalesces concurrent calls to {@link OAuth2AuthorizedClientManager#authorize} for the
+ * same client registration and principal so that at most one call, and therefore at most
+ * one client credentials grant request, is in flight at a time. The first caller
+ * delegates, every caller arriving while it is in progress waits for and shares its
+ * result (or its exception)
+ */
+public class SingleFlightOAuth2AuthorizedClientManager implements OAuth2AuthorizedClientManager {
+
+	private final OAuth2AuthorizedClientManager delegate;
+
+	private final ConcurrentMap<String, CompletableFuture<OAuth2AuthorizedClient>> inFlight = new ConcurrentHashMap<>();
+
+	public SingleFlightOAuth2AuthorizedClientManager(OAuth2AuthorizedClientManager delegate) {
+		this.delegate = delegate;
+	}
+
+	@Override
+	public OAuth2AuthorizedClient authorize(OAuth2AuthorizeRequest authorizeRequest) {
+		String key = authorizeRequest.getClientRegistrationId() + ":" + authorizeRequest.getPrincipal().getName();
+		var call = new CompletableFuture<OAuth2AuthorizedClient>();
+		CompletableFuture<OAuth2AuthorizedClient> existing = inFlight.putIfAbsent(key, call);
+		if (existing != null) {
+			return await(existing);
+		}
+		try {
+			OAuth2AuthorizedClient authorizedClient = delegate.authorize(authorizeRequest);
+			call.complete(authorizedClient);
+			return authorizedClient;
+		}
+		catch (RuntimeException | Error e) {
+			call.completeExceptionally(e);
+			throw e;
+		}
+		finally {
+			inFlight.remove(key, call);
+		}
+	}
+
+	private static OAuth2AuthorizedClient await(CompletableFuture<OAuth2AuthorizedClient> call) {
+		try {
+			return call.join();
+		}
+		catch (CompletionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw e;
+		}
+	}
+
+}
@@ -0,0 +1,35 @@
+package com.davidagood.spring.oauth.clientcredentials;
+
+import org.springframework.security.oauth2.client.OAuth2AuthorizeRequest;
+import org.springframework.security.oauth2.client.OAuth2AuthorizedClient;
+import org.springframework.security.oauth2.client.ReactiveOAuth2AuthorizedClientManager;
+import reactor.core.publisher.Mono;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Reactive counterpart of {@link SingleFlightOAuth2AuthorizedClientManager}: subscribers
+ * arriving while an authorization for the same client registration and principal is in
+ * progress share its result instead of subscribing to the delegate again
+ */
+public class SingleFlightReactiveOAuth2AuthorizedClientManager implements ReactiveOAuth2AuthorizedClientManager {
+
+	private final ReactiveOAuth2AuthorizedClientManager delegate;
+
+	private final ConcurrentMap<String, Mono<OAuth2AuthorizedClient>> inFlight = new ConcurrentHashMap<>();
+
+	public SingleFlightReactiveOAuth2AuthorizedClientManager(ReactiveOAuth2AuthorizedClientManager delegate) {
+		this.delegate = delegate;
+	}
+
+	@Override
+	public Mono<OAuth2AuthorizedClient> authorize(OAuth2AuthorizeRequest authorizeRequest) {
+		String key = authorizeRequest.getClientRegistrationId() + ":" + authorizeRequest.getPrincipal().getName();
+		// The shared Mono is only created on subscription and removes itself once it
+		// terminates, so a later authorization never sees a stale result
+		return Mono.defer(() -> inFlight.computeIfAbsent(key,
+				k -> delegate.authorize(authorizeRequest).doFinally(signal -> inFlight.remove(k)).cache()));
+	}
+
+}
@@ -1,15 +1,29 @@
 package com.davidagood.spring.oauth.clientcredentials;
 
 import org.springframework.boot.SpringApplication;
+import org.springframework.boot.actuate.autoconfigure.security.servlet.ManagementWebSecurityAutoConfiguration;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.autoconfigure.security.oauth2.client.servlet.OAuth2ClientAutoConfiguration;
+import org.springframework.boot.autoconfigure.security.servlet.SecurityAutoConfiguration;
+import org.springframework.boot.autoconfigure.security.servlet.SecurityFilterAutoConfiguration;
+import org.springframework.boot.autoconfigure.security.servlet.UserDetailsServiceAutoConfiguration;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 import java.time.Instant;
 import java.util.function.Supplier;
 
-@SpringBootApplication
-@EnableConfigurationProperties({ SecretWordsClientConfig.class })
+// Requests are not authenticated, so none of the security filter infrastructure is set
+// up; OAuth2ClientConfig provides the parts of the OAuth2 client auto-configuration used
+@SpringBootApplication(exclude = { SecurityAutoConfiguration.class, SecurityFilterAutoConfiguration.class,
+		UserDetailsServiceAutoConfiguration.class, ManagementWebSecurityAutoConfiguration.class,
+		OAuth2ClientAutoConfiguration.class })
+@EnableConfigurationProperties({ SecretWordsClientConfig.class, SecretWordsCacheConfig.class, TokenRefreshConfig.class,
+		HttpClientConfig.class, TokenStoreConfig.class, AuthorizedClientCacheConfig.class,
+		UnauthorizedRetryConfig.class, ConcurrencyLimitConfig.class, UpstreamsConfig.class, FanOutConfig.class,
+		MicroBatchConfig.class, WarmUpConfig.class })
+@EnableScheduling
 public class SpringBootApp {
 
 	public static void main(String[] args) {
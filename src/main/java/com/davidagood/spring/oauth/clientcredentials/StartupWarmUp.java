@@ -0,0 +1,138 @@
+package com.davidagood.spring.oauth.clientcredentials;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.security.oauth2.client.OAuth2AuthorizeRequest;
+import org.springframework.security.oauth2.client.OAuth2AuthorizedClientManager;
+import org.springframework.security.oauth2.client.registration.ClientRegistration;
+import org.springframework.security.oauth2.client.registration.ClientRegistrationRepository;
+import org.springframework.security.oauth2.core.AuthorizationGrantType;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+import reactor.util.retry.Retry;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.davidagood.spring.oauth.clientcredentials.AuthorizedWebClientConfig.ANONYMOUS_PRINCIPAL;
+
+/**
+ * Makes the client credentials grant of every client registration and opens connections
+ * to the resource server and every upstream before the application reports readiness, so
+ * the first requests neither wait for a token nor for a connection. Spring Boot only
+ * reports ReadinessState.ACCEPTING_TRAFFIC once all ApplicationRunners have returned;
+ * until then /actuator/health/readiness is OUT_OF_SERVICE even though the port is already
+ * open. Failed steps are retried until the warm-up deadline, after which the configured
+ * fallback applies
+ */
+@Component
+@ConditionalOnProperty(prefix = "warm-up", name = "enabled", havingValue = "true")
+public class StartupWarmUp implements ApplicationRunner {
+
+	private static final Logger log = LoggerFactory.getLogger(StartupWarmUp.class);
+
+	private final ClientRegistrationRepository clientRegistrationRepository;
+
+	private final OAuth2AuthorizedClientManager authorizedClientManager;
+
+	private final SecretWordsClient secretWordsClient;
+
+	private final UpstreamClients upstreamClients;
+
+	private final WarmUpConfig config;
+
+	public StartupWarmUp(ClientRegistrationRepository clientRegistrationRepository,
+			OAuth2AuthorizedClientManager authorizedClientManager, SecretWordsClient secretWordsClient,
+			UpstreamClients upstreamClients, WarmUpConfig config) {
+		this.clientRegistrationRepository = clientRegistrationRepository;
+		this.authorizedClientManager = authorizedClientManager;
+		this.secretWordsClient = secretWordsClient;
+		this.upstreamClients = upstreamClients;
+		this.config = config;
+	}
+
+	@Override
+	public void run(ApplicationArguments args) {
+		long start = System.nanoTime();
+		try {
+			// @formatter:off
+			authorizeAll()
+					.then(openConnections())
+					.timeout(config.getDeadline())
+					.block();
+			// @formatter:on
+			log.info("Warmed up in {}", Duration.ofNanos(System.nanoTime() - start));
+		}
+		// Every step is retried, so the deadline is the only way for the warm-up to fail
+		catch (RuntimeException e) {
+			if (config.getFallback() == WarmUpConfig.Fallback.FAIL) {
+				throw new IllegalStateException("Warm-up did not complete within " + config.getDeadline(), e);
+			}
+			log.warn("Warm-up did not complete within {}, accepting traffic anyway", config.getDeadline());
+		}
+	}
+
+	/**
+	 * Through the blocking OAuth2AuthorizedClientManager, whose
+	 * OAuth2AuthorizedClientService the reactive path shares, so the tokens serve both
+	 */
+	private Mono<Void> authorizeAll() {
+		// @formatter:off
+		return Flux.fromIterable(clientCredentialsRegistrationIds(clientRegistrationRepository))
+				.flatMap(registrationId -> retried(Mono.fromCallable(() -> authorizedClientManager.authorize(
+								OAuth2AuthorizeRequest.withClientRegistrationId(registrationId)
+										.principal(ANONYMOUS_PRINCIPAL)
+										.build()))
+						.subscribeOn(Schedulers.boundedElastic())
+						.switchIfEmpty(Mono.error(() -> new IllegalStateException(
+								"No authorized client for clientRegistrationId=" + registrationId))),
+						"token grant for clientRegistrationId=" + registrationId))
+				.then();
+		// @formatter:on
+	}
+
+	/**
+	 * Requests made at the same time cannot share a connection, so each pool keeps that
+	 * many connections open afterwards, at least until http-client.pool.max-idle-time
+	 */
+	private Mono<Void> openConnections() {
+		List<Mono<?>> requests = new ArrayList<>();
+		for (int i = 0; i < config.getConnections(); i++) {
+			requests.add(retried(secretWordsClient.getSecretWordsAsync(), "secret words request"));
+			for (UpstreamClient upstreamClient : upstreamClients.getAll()) {
+				requests.add(
+						retried(upstreamClient.getSecretWords(), "request to upstream=" + upstreamClient.getName()));
+			}
+		}
+		return Mono.when(requests);
+	}
+
+	/**
+	 * Empty unless the repository can be iterated, as the in-memory one Spring Boot
+	 * configures can
+	 */
+	static List<String> clientCredentialsRegistrationIds(ClientRegistrationRepository clientRegistrationRepository) {
+		List<String> registrationIds = new ArrayList<>();
+		if (clientRegistrationRepository instanceof Iterable) {
+			for (Object registration : (Iterable<?>) clientRegistrationRepository) {
+				ClientRegistration clientRegistration = (ClientRegistration) registration;
+				if (AuthorizationGrantType.CLIENT_CREDENTIALS.equals(clientRegistration.getAuthorizationGrantType())) {
+					registrationIds.add(clientRegistration.getRegistrationId());
+				}
+			}
+		}
+		return registrationIds;
+	}
+
+	private <T> Mono<T> retried(Mono<T> step, String description) {
+		return step.retryWhen(Retry.fixedDelay(Long.MAX_VALUE, config.getRetryInterval()).doBeforeRetry(
+				signal -> log.warn("Warm-up {} failed, retrying, error={}", description, signal.failure().toString())));
+	}
+
+}
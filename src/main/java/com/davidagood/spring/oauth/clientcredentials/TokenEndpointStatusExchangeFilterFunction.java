@@ -0,0 +1,44 @@
+package com.davidagood.spring.oauth.clientcredentials;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.security.oauth2.core.OAuth2AuthorizationException;
+import org.springframework.security.oauth2.core.OAuth2Error;
+import org.springframework.security.oauth2.core.OAuth2ErrorCodes;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.ExchangeFilterFunction;
+import org.springframework.web.reactive.function.client.ExchangeFunction;
+import reactor.core.publisher.Mono;
+
+/**
+ * Classifies the token endpoint's 500, 502, 503 and 504 answers by their status: 503
+ * fails with the temporarily_unavailable error code, the others with server_error.
+ * Gateways answer these without an OAuth 2.0 error body, which the token response client
+ * would otherwise report as invalid_token_response, so that they were not retried
+ */
+public class TokenEndpointStatusExchangeFilterFunction implements ExchangeFilterFunction {
+
+	@Override
+	public Mono<ClientResponse> filter(ClientRequest request, ExchangeFunction next) {
+		return next.exchange(request).flatMap(response -> {
+			String errorCode = errorCode(response.rawStatusCode());
+			if (errorCode == null) {
+				return Mono.just(response);
+			}
+			var error = new OAuth2Error(errorCode, "Token endpoint answered status=" + response.rawStatusCode(), null);
+			return response.releaseBody().then(Mono.error(new OAuth2AuthorizationException(error)));
+		});
+	}
+
+	private static String errorCode(int status) {
+		if (status == HttpStatus.SERVICE_UNAVAILABLE.value()) {
+			return OAuth2ErrorCodes.TEMPORARILY_UNAVAILABLE;
+		}
+		if (status == HttpStatus.INTERNAL_SERVER_ERROR.value() || status == HttpStatus.BAD_GATEWAY.value()
+				|| status == HttpStatus.GATEWAY_TIMEOUT.value()) {
+			return OAuth2ErrorCodes.SERVER_ERROR;
+		}
+		return null;
+	}
+
+}
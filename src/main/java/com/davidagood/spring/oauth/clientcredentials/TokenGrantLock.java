@@ -0,0 +1,107 @@
+package com.davidagood.spring.oauth.clientcredentials;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.security.oauth2.client.OAuth2AuthorizedClient;
+import org.springframework.security.oauth2.client.OAuth2AuthorizedClientService;
+
+import java.time.Clock;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Makes nodes sharing a token store take turns at making client credentials grant
+ * requests, so that when the shared token is missing or about to expire one node renews
+ * it and the others pick the renewed token up from the store instead of each making a
+ * grant request of their own
+ */
+public class TokenGrantLock {
+
+	private static final Logger log = LoggerFactory.getLogger(TokenGrantLock.class);
+
+	private final LeaseLock leaseLock;
+
+	private final OAuth2AuthorizedClientService store;
+
+	private final NearCachingOAuth2AuthorizedClientService nearCache;
+
+	private final TokenStoreConfig config;
+
+	private final Clock clock = Clock.systemUTC();
+
+	/**
+	 * @param store the shared store itself rather than a near cache in front of it, so
+	 * that a token renewed by another node is seen as soon as it is saved
+	 * @param nearCache this node's near cache in front of the store, which spares the
+	 * request path the store while it holds a token that is not about to expire
+	 */
+	public TokenGrantLock(LeaseLock leaseLock, OAuth2AuthorizedClientService store,
+			NearCachingOAuth2AuthorizedClientService nearCache, TokenStoreConfig config) {
+		this.leaseLock = leaseLock;
+		this.store = store;
+		this.nearCache = nearCache;
+		this.config = config;
+	}
+
+	/**
+	 * Whether this node's near cache holds a token which is not about to expire, in which
+	 * case there is no grant request to take turns at. Does not block
+	 */
+	public boolean isNearCachedTokenFresh(String clientRegistrationId, String principalName) {
+		return nearCache.loadCachedAuthorizedClient(clientRegistrationId, principalName) != null;
+	}
+
+	/**
+	 * Blocks until either the store holds a token which is not about to expire, or this
+	 * node holds the lock and may make a grant request. Gives up waiting after the
+	 * configured lock wait timeout, in which case the caller goes ahead without the lock
+	 * rather than failing
+	 * @return the lease if the lock is held, which has to be released with
+	 * {@link #unlock}, otherwise null
+	 */
+	public String awaitTurn(String clientRegistrationId, String principalName) {
+		long deadline = System.nanoTime() + config.getLockWaitTimeout().toNanos();
+		while (true) {
+			OAuth2AuthorizedClient stored = loadFromStore(clientRegistrationId, principalName);
+			if (stored != null && !NearCachingOAuth2AuthorizedClientService.isExpiring(stored, clock.instant())) {
+				return null;
+			}
+			String lease = tryLock(clientRegistrationId, principalName);
+			if (lease != null) {
+				return lease;
+			}
+			if (System.nanoTime() > deadline) {
+				log.warn("Timed out waiting for another node to renew the token for clientRegistrationId={}",
+						clientRegistrationId);
+				return null;
+			}
+			try {
+				TimeUnit.MILLISECONDS.sleep(config.getLockPollInterval().toMillis());
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return null;
+			}
+		}
+	}
+
+	/**
+	 * @return the lease if the lock was free, which has to be released with
+	 * {@link #unlock}, otherwise null
+	 */
+	public String tryLock(String clientRegistrationId, String principalName) {
+		return leaseLock.tryAcquire(lockName(clientRegistrationId, principalName), config.getLockLeaseTime());
+	}
+
+	public void unlock(String clientRegistrationId, String principalName, String lease) {
+		leaseLock.release(lockName(clientRegistrationId, principalName), lease);
+	}
+
+	public OAuth2AuthorizedClient loadFromStore(String clientRegistrationId, String principalName) {
+		return store.loadAuthorizedClient(clientRegistrationId, principalName);
+	}
+
+	private static String lockName(String clientRegistrationId, String principalName) {
+		return clientRegistrationId + ":" + principalName;
+	}
+
+}
@@ -0,0 +1,36 @@
+package com.davidagood.spring.oauth.clientcredentials;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.ConstructorBinding;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+@ConfigurationProperties("token-refresh")
+@ConstructorBinding
+public class TokenRefreshConfig {
+
+	private final boolean enabled;
+
+	/**
+	 * Fraction of the access token's lifetime after which it is renewed in the
+	 * background, e.g. 0.75 renews a one hour token 45 minutes after it was issued
+	 */
+	private final double refreshFraction;
+
+	public TokenRefreshConfig(@DefaultValue("false") boolean enabled, @DefaultValue("0.75") double refreshFraction) {
+		if (refreshFraction <= 0 || refreshFraction >= 1) {
+			throw new IllegalArgumentException(
+					"token-refresh.refresh-fraction must be between 0 and 1 exclusive but was " + refreshFraction);
+		}
+		this.enabled = enabled;
+		this.refreshFraction = refreshFraction;
+	}
+
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	public double getRefreshFraction() {
+		return refreshFraction;
+	}
+
+}
@@ -0,0 +1,103 @@
+package com.davidagood.spring.oauth.clientcredentials;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.ConstructorBinding;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+import java.util.UUID;
+
+@ConfigurationProperties("token-store")
+@ConstructorBinding
+public class TokenStoreConfig {
+
+	/**
+	 * The owner column holds 100 characters, of which the lease ID appended by
+	 * JdbcLeaseLock takes 37
+	 */
+	static final int MAX_NODE_ID_LENGTH = 63;
+
+	public enum Type {
+
+		/**
+		 * Spring Boot's InMemoryOAuth2AuthorizedClientService, tokens are per node
+		 */
+		IN_MEMORY,
+
+		/**
+		 * JdbcOAuth2AuthorizedClientService on the application's DataSource, tokens are
+		 * shared by every node using the same database
+		 */
+		JDBC
+
+	}
+
+	private final Type type;
+
+	/**
+	 * How long a node serves an authorized client from memory before reading it from the
+	 * shared store again
+	 */
+	private final Duration nearCacheTtl;
+
+	/**
+	 * How long a node may hold the lock which only lets one node at a time make a grant
+	 * request; outlasts a grant request so the lease only expires if its node died
+	 */
+	private final Duration lockLeaseTime;
+
+	/**
+	 * How long a node waits for the node holding the lock to store a new token before it
+	 * makes its own grant request
+	 */
+	private final Duration lockWaitTimeout;
+
+	private final Duration lockPollInterval;
+
+	/**
+	 * Identifies this node as the owner of the lock, random unless set. At most 63
+	 * characters, as it is followed by a 37 character lease ID in the 100 character owner
+	 * column
+	 */
+	private final String nodeId;
+
+	public TokenStoreConfig(@DefaultValue("in-memory") Type type, @DefaultValue("30s") Duration nearCacheTtl,
+			@DefaultValue("30s") Duration lockLeaseTime, @DefaultValue("15s") Duration lockWaitTimeout,
+			@DefaultValue("100ms") Duration lockPollInterval, String nodeId) {
+		if (nodeId != null && nodeId.length() > MAX_NODE_ID_LENGTH) {
+			throw new IllegalArgumentException(String.format("node-id must be at most %s characters but was %s",
+					MAX_NODE_ID_LENGTH, nodeId.length()));
+		}
+		this.type = type;
+		this.nearCacheTtl = nearCacheTtl;
+		this.lockLeaseTime = lockLeaseTime;
+		this.lockWaitTimeout = lockWaitTimeout;
+		this.lockPollInterval = lockPollInterval;
+		this.nodeId = nodeId == null ? UUID.randomUUID().toString() : nodeId;
+	}
+
+	public Type getType() {
+		return type;
+	}
+
+	public Duration getNearCacheTtl() {
+		return nearCacheTtl;
+	}
+
+	public Duration getLockLeaseTime() {
+		return lockLeaseTime;
+	}
+
+	public Duration getLockWaitTimeout() {
+		return lockWaitTimeout;
+	}
+
+	public Duration getLockPollInterval() {
+		return lockPollInterval;
+	}
+
+	public String getNodeId() {
+		return nodeId;
+	}
+
+}
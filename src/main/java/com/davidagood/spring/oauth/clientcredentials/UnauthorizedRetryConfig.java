@@ -0,0 +1,25 @@
+package com.davidagood.spring.oauth.clientcredentials;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.ConstructorBinding;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+@ConfigurationProperties("unauthorized-retry")
+@ConstructorBinding
+public class UnauthorizedRetryConfig {
+
+	/**
+	 * Whether a request the resource server answers with 401 is retried once with a new
+	 * token instead of failing
+	 */
+	private final boolean enabled;
+
+	public UnauthorizedRetryConfig(@DefaultValue("false") boolean enabled) {
+		this.enabled = enabled;
+	}
+
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+}
@@ -0,0 +1,40 @@
+package com.davidagood.spring.oauth.clientcredentials;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.ExchangeFilterFunction;
+import org.springframework.web.reactive.function.client.ExchangeFunction;
+import reactor.core.publisher.Mono;
+
+/**
+ * Retries a request once when the resource server answers 401. Registered ahead of the
+ * filter functions which attach the bearer token: by the time the 401 reaches this
+ * filter, they have had the failure handler remove the rejected token, unless it has
+ * already been replaced, so the retry goes through the OAuth2AuthorizedClientManager for
+ * a new one. Concurrent retries share the manager's single grant request
+ */
+public class UnauthorizedRetryExchangeFilterFunction implements ExchangeFilterFunction {
+
+	private final Counter retries;
+
+	public UnauthorizedRetryExchangeFilterFunction(MeterRegistry meterRegistry) {
+		this.retries = Counter.builder("oauth2.token.unauthorized.retries")
+				.description("Requests retried with a new token after the resource server answered 401")
+				.register(meterRegistry);
+	}
+
+	@Override
+	public Mono<ClientResponse> filter(ClientRequest request, ExchangeFunction next) {
+		return next.exchange(request).flatMap(response -> {
+			if (response.rawStatusCode() != HttpStatus.UNAUTHORIZED.value()) {
+				return Mono.just(response);
+			}
+			retries.increment();
+			return response.releaseBody().then(Mono.defer(() -> next.exchange(request)));
+		});
+	}
+
+}
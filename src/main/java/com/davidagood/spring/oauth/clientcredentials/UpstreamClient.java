@@ -0,0 +1,96 @@
+package com.davidagood.spring.oauth.clientcredentials;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.HttpMethod;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientException;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeoutException;
+
+import static org.springframework.security.oauth2.client.web.reactive.function.client.ServerOAuth2AuthorizedClientExchangeFilterFunction.clientRegistrationId;
+
+/**
+ * Client of one of the upstreams configured under upstreams.registrations. It has its own
+ * WebClient, connection pool and cached token, and its calls are timed in the
+ * upstream.requests timer tagged with the upstream's name
+ */
+public class UpstreamClient {
+
+	static final String UPSTREAM_REQUESTS_TIMER = "upstream.requests";
+
+	private static final Logger log = LoggerFactory.getLogger(UpstreamClient.class);
+
+	private static final ParameterizedTypeReference<List<String>> SECRET_WORDS_TYPE = new ParameterizedTypeReference<>() {
+	};
+
+	private final String name;
+
+	private final String registrationId;
+
+	private final String url;
+
+	private final Duration timeout;
+
+	private final WebClient webClient;
+
+	private final MeterRegistry meterRegistry;
+
+	public UpstreamClient(String name, UpstreamsConfig.Upstream upstream, WebClient webClient,
+			MeterRegistry meterRegistry) {
+		this.name = name;
+		this.registrationId = upstream.getRegistrationId();
+		this.url = upstream.getUrl();
+		this.timeout = upstream.getTimeout();
+		this.webClient = webClient;
+		this.meterRegistry = meterRegistry;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public String getRegistrationId() {
+		return registrationId;
+	}
+
+	/**
+	 * Errors are translated like those of {@link SecretWordsClient}: an
+	 * AuthorizationException or a SecretWordsRequestException is signalled
+	 */
+	public Mono<List<String>> getSecretWords() {
+		var get = HttpMethod.GET;
+		log.info("Making HTTP request upstream={}, method={}, url={}", name, get, url);
+		return Mono.defer(() -> {
+			Timer.Sample sample = Timer.start(meterRegistry);
+			// @formatter:off
+			return webClient.method(get)
+					.uri(url)
+					.attributes(clientRegistrationId(registrationId))
+					.retrieve()
+					.bodyToMono(SECRET_WORDS_TYPE)
+					.timeout(timeout)
+					.doOnSuccess(words -> record(sample, "SUCCESS"))
+					.doOnError(e -> record(sample, "ERROR"))
+					.onErrorMap(WebClientException.class, e -> SecretWordsClient.translate(get, url, e))
+					.onErrorMap(SecretWordsClient::isUnreadableBody, e -> SecretWordsClient.unreadableBody(get, url, e))
+					.onErrorMap(TimeoutException.class, e -> new SecretWordsRequestException(String.format(
+							"Secret words request timed out; Request: upstream=%s, method=%s, url=%s; Timeout: %s",
+							name, get, url, timeout)));
+			// @formatter:on
+		});
+	}
+
+	private void record(Timer.Sample sample, String outcome) {
+		sample.stop(Timer.builder(UPSTREAM_REQUESTS_TIMER).description("Requests to configured upstreams")
+				.tags("upstream", name, "clientRegistrationId", registrationId, "outcome", outcome)
+				.register(meterRegistry));
+	}
+
+}
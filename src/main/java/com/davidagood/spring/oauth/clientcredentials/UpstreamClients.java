@@ -0,0 +1,41 @@
+package com.davidagood.spring.oauth.clientcredentials;
+
+import org.springframework.beans.factory.DisposableBean;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * The clients of the upstreams configured under upstreams.registrations, created at
+ * startup, by upstream name
+ */
+public class UpstreamClients implements DisposableBean {
+
+	private final Map<String, UpstreamClient> clients;
+
+	private final List<ConnectionProvider> connectionProviders;
+
+	public UpstreamClients(Map<String, UpstreamClient> clients, List<ConnectionProvider> connectionProviders) {
+		this.clients = Collections.unmodifiableMap(new LinkedHashMap<>(clients));
+		this.connectionProviders = List.copyOf(connectionProviders);
+	}
+
+	public Optional<UpstreamClient> get(String name) {
+		return Optional.ofNullable(clients.get(name));
+	}
+
+	public Collection<UpstreamClient> getAll() {
+		return clients.values();
+	}
+
+	@Override
+	public void destroy() {
+		connectionProviders.forEach(ConnectionProvider::dispose);
+	}
+
+}
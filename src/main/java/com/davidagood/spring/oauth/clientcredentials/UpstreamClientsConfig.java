@@ -0,0 +1,70 @@
+package com.davidagood.spring.oauth.clientcredentials;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.security.oauth2.client.OAuth2AuthorizationFailureHandler;
+import org.springframework.security.oauth2.client.OAuth2AuthorizedClientManager;
+import org.springframework.security.oauth2.client.OAuth2AuthorizedClientService;
+import org.springframework.security.oauth2.client.registration.ClientRegistrationRepository;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+@Configuration
+public class UpstreamClientsConfig {
+
+	/**
+	 * Each upstream gets its own connection pool and its own
+	 * CachingBearerExchangeFilterFunction, so neither pending connection acquisitions nor
+	 * cached tokens are shared between upstreams. Tokens are acquired through the shared
+	 * OAuth2AuthorizedClientManager, whose single flight and, with a shared token store,
+	 * grant lock are keyed by client registration. Fails at startup when an upstream
+	 * refers to a client registration which does not exist, also with
+	 * spring.main.lazy-initialization
+	 */
+	@Bean
+	@Lazy(false)
+	UpstreamClients upstreamClients(UpstreamsConfig upstreamsConfig, HttpClientConfig httpClientConfig,
+			ObjectProvider<WebClient.Builder> webClientBuilder,
+			ClientRegistrationRepository clientRegistrationRepository,
+			OAuth2AuthorizedClientManager authorizedClientManager,
+			OAuth2AuthorizedClientService authorizedClientService,
+			@Qualifier("resourceServerAuthorizationFailureHandler") OAuth2AuthorizationFailureHandler failureHandler,
+			UnauthorizedRetryConfig unauthorizedRetryConfig, MeterRegistry meterRegistry) {
+		upstreamsConfig.getRegistrations().forEach((name, upstream) -> {
+			if (clientRegistrationRepository.findByRegistrationId(upstream.getRegistrationId()) == null) {
+				throw new IllegalStateException(String.format(
+						"upstreams.registrations.%s.registration-id refers to unknown client registration %s", name,
+						upstream.getRegistrationId()));
+			}
+		});
+		Map<String, UpstreamClient> clients = new LinkedHashMap<>();
+		List<ConnectionProvider> connectionProviders = new ArrayList<>();
+		upstreamsConfig.getRegistrations().forEach((name, upstream) -> {
+			HttpClientConfig.Pool pool = (upstream.getPool() != null) ? upstream.getPool() : httpClientConfig.getPool();
+			ConnectionProvider connectionProvider = pool.applyTo(ConnectionProvider.builder("upstream-" + name))
+					.build();
+			connectionProviders.add(connectionProvider);
+			// @formatter:off
+			WebClient webClient = AuthorizedWebClientConfig
+					.withUnauthorizedRetry(webClientBuilder.getObject(), unauthorizedRetryConfig, meterRegistry)
+					.clientConnector(new ReactorClientHttpConnector(httpClientConfig.createHttpClient(connectionProvider)))
+					.filter(new CachingBearerExchangeFilterFunction(authorizedClientManager, failureHandler,
+							authorizedClientService))
+					.build();
+			// @formatter:on
+			clients.put(name, new UpstreamClient(name, upstream, webClient, meterRegistry));
+		});
+		return new UpstreamClients(clients, connectionProviders);
+	}
+
+}
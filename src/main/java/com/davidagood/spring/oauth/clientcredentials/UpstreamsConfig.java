@@ -0,0 +1,83 @@
+package com.davidagood.spring.oauth.clientcredentials;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.ConstructorBinding;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+import java.util.Map;
+
+@ConfigurationProperties("upstreams")
+@ConstructorBinding
+public class UpstreamsConfig {
+
+	/**
+	 * Additional secret words resource servers keyed by upstream name, each called with
+	 * the token of its own client registration
+	 */
+	private final Map<String, Upstream> registrations;
+
+	public UpstreamsConfig(Map<String, Upstream> registrations) {
+		this.registrations = (registrations != null) ? registrations : Map.of();
+	}
+
+	public Map<String, Upstream> getRegistrations() {
+		return registrations;
+	}
+
+	public static class Upstream {
+
+		/**
+		 * Id of the spring.security.oauth2.client.registration whose token is sent to
+		 * this upstream
+		 */
+		private final String registrationId;
+
+		private final String url;
+
+		private final Duration timeout;
+
+		/**
+		 * Pool of connections used for this upstream only, http-client.pool settings when
+		 * not set
+		 */
+		private final HttpClientConfig.Pool pool;
+
+		/**
+		 * Timeout and retries of the grant requests of this upstream's client
+		 * registration, secret-words-client.token-grant settings when not set
+		 */
+		private final SecretWordsClientConfig.Call tokenGrant;
+
+		public Upstream(String registrationId, String url, @DefaultValue("10s") Duration timeout,
+				HttpClientConfig.Pool pool, SecretWordsClientConfig.Call tokenGrant) {
+			this.registrationId = registrationId;
+			this.url = url;
+			this.timeout = timeout;
+			this.pool = pool;
+			this.tokenGrant = tokenGrant;
+		}
+
+		public String getRegistrationId() {
+			return registrationId;
+		}
+
+		public String getUrl() {
+			return url;
+		}
+
+		public Duration getTimeout() {
+			return timeout;
+		}
+
+		public HttpClientConfig.Pool getPool() {
+			return pool;
+		}
+
+		public SecretWordsClientConfig.Call getTokenGrant() {
+			return tokenGrant;
+		}
+
+	}
+
+}
@@ -0,0 +1,52 @@
+package com.davidagood.spring.oauth.clientcredentials;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Access to the virtual threads of Java 21 and later while the code is still compiled for
+ * Java 11, through reflection since the API does not exist there
+ */
+final class VirtualThreads {
+
+	private VirtualThreads() {
+	}
+
+	static boolean isSupported() {
+		try {
+			Thread.class.getMethod("ofVirtual");
+			return true;
+		}
+		catch (NoSuchMethodException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Equivalent of
+	 * {@code Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name(namePrefix, 0).factory())}
+	 * @throws IllegalStateException if the running Java version has no virtual threads
+	 */
+	static ExecutorService newVirtualThreadPerTaskExecutor(String namePrefix) {
+		if (!isSupported()) {
+			throw new IllegalStateException(
+					"Virtual threads need Java 21 or later, running on " + System.getProperty("java.version"));
+		}
+		try {
+			Class<?> builderType = Class.forName("java.lang.Thread$Builder");
+			Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+			builder = builderType.getMethod("name", String.class, long.class).invoke(builder, namePrefix, 0L);
+			ThreadFactory threadFactory = (ThreadFactory) builderType.getMethod("factory").invoke(builder);
+			Method newThreadPerTaskExecutor = Executors.class.getMethod("newThreadPerTaskExecutor",
+					ThreadFactory.class);
+			return (ExecutorService) newThreadPerTaskExecutor.invoke(null, threadFactory);
+		}
+		catch (ClassNotFoundException | NoSuchMethodException | IllegalAccessException | InvocationTargetException e) {
+			throw new IllegalStateException("Failed to create virtual thread executor", e);
+		}
+	}
+
+}
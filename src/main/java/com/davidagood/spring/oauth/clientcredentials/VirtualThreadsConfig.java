@@ -0,0 +1,56 @@
+package com.davidagood.spring.oauth.clientcredentials;
+
+import org.apache.coyote.ProtocolHandler;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Runs every request on a virtual thread of its own instead of on Tomcat's thread pool,
+ * so the blocking endpoints, whose threads wait on .block() for the resource server, are
+ * no longer limited to server.tomcat.threads.max concurrent requests. Needs Java 21 or
+ * later at runtime and fails at startup otherwise. Token grants do not run on the request
+ * thread, both the caching and the Spring Security bearer filter hand them to Reactor's
+ * bounded elastic scheduler, so the JDBC driver and lock waits of a shared token store
+ * never pin a virtual thread to its carrier
+ */
+@Configuration
+@ConditionalOnProperty(prefix = "virtual-threads", name = "enabled", havingValue = "true")
+public class VirtualThreadsConfig {
+
+	@Bean
+	VirtualThreadExecutorCustomizer virtualThreadExecutorCustomizer() {
+		return new VirtualThreadExecutorCustomizer(VirtualThreads.newVirtualThreadPerTaskExecutor("http-virtual-"));
+	}
+
+	/**
+	 * Not exposed as an Executor bean, which would make Spring Boot back off from its
+	 * applicationTaskExecutor. Tomcat does not shut down an executor it did not create,
+	 * so this is done when the context closes
+	 */
+	static class VirtualThreadExecutorCustomizer
+			implements TomcatProtocolHandlerCustomizer<ProtocolHandler>, DisposableBean {
+
+		private final ExecutorService executor;
+
+		VirtualThreadExecutorCustomizer(ExecutorService executor) {
+			this.executor = executor;
+		}
+
+		@Override
+		public void customize(ProtocolHandler protocolHandler) {
+			protocolHandler.setExecutor(executor);
+		}
+
+		@Override
+		public void destroy() {
+			executor.shutdown();
+		}
+
+	}
+
+}
@@ -0,0 +1,83 @@
+package com.davidagood.spring.oauth.clientcredentials;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.ConstructorBinding;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+@ConfigurationProperties("warm-up")
+@ConstructorBinding
+public class WarmUpConfig {
+
+	private final boolean enabled;
+
+	/**
+	 * How long the warm-up may take in total before the fallback applies
+	 */
+	private final Duration deadline;
+
+	/**
+	 * Pause before a failed token grant or request is tried again
+	 */
+	private final Duration retryInterval;
+
+	/**
+	 * Number of concurrent requests made to each resource server, and so of connections
+	 * opened in its pool
+	 */
+	private final int connections;
+
+	private final Fallback fallback;
+
+	public WarmUpConfig(@DefaultValue("false") boolean enabled, @DefaultValue("30s") Duration deadline,
+			@DefaultValue("1s") Duration retryInterval, @DefaultValue("4") int connections,
+			@DefaultValue("accept-traffic") Fallback fallback) {
+		if (connections < 0) {
+			throw new IllegalArgumentException("Expected connections >= 0 but was " + connections);
+		}
+		this.enabled = enabled;
+		this.deadline = deadline;
+		this.retryInterval = retryInterval;
+		this.connections = connections;
+		this.fallback = fallback;
+	}
+
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	public Duration getDeadline() {
+		return deadline;
+	}
+
+	public Duration getRetryInterval() {
+		return retryInterval;
+	}
+
+	public int getConnections() {
+		return connections;
+	}
+
+	public Fallback getFallback() {
+		return fallback;
+	}
+
+	/**
+	 * What happens when the warm-up has not succeeded by the deadline
+	 */
+	public enum Fallback {
+
+		/**
+		 * Report readiness anyway, the first requests acquire what is still missing
+		 */
+		ACCEPT_TRAFFIC,
+
+		/**
+		 * Fail startup, so the instance never receives traffic
+		 */
+		FAIL
+
+	}
+
+}
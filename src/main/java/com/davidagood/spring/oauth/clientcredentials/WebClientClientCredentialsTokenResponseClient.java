@@ -0,0 +1,48 @@
+package com.davidagood.spring.oauth.clientcredentials;
+
+import org.springframework.security.oauth2.client.endpoint.OAuth2AccessTokenResponseClient;
+import org.springframework.security.oauth2.client.endpoint.OAuth2ClientCredentialsGrantRequest;
+import org.springframework.security.oauth2.client.endpoint.ReactiveOAuth2AccessTokenResponseClient;
+import org.springframework.security.oauth2.core.OAuth2AuthorizationException;
+import org.springframework.security.oauth2.core.OAuth2Error;
+import org.springframework.security.oauth2.core.endpoint.OAuth2AccessTokenResponse;
+
+/**
+ * Blocking OAuth2AccessTokenResponseClient backed by a WebClient based
+ * ReactiveOAuth2AccessTokenResponseClient, so that grant requests made on the blocking
+ * path go through the same pooled Reactor Netty connections, with the same timeouts, as
+ * every other request instead of DefaultClientCredentialsTokenResponseClient's own
+ * RestTemplate
+ */
+public class WebClientClientCredentialsTokenResponseClient
+		implements OAuth2AccessTokenResponseClient<OAuth2ClientCredentialsGrantRequest> {
+
+	private static final String INVALID_TOKEN_RESPONSE_ERROR_CODE = "invalid_token_response";
+
+	private final ReactiveOAuth2AccessTokenResponseClient<OAuth2ClientCredentialsGrantRequest> delegate;
+
+	public WebClientClientCredentialsTokenResponseClient(
+			ReactiveOAuth2AccessTokenResponseClient<OAuth2ClientCredentialsGrantRequest> delegate) {
+		this.delegate = delegate;
+	}
+
+	@Override
+	public OAuth2AccessTokenResponse getTokenResponse(OAuth2ClientCredentialsGrantRequest grantRequest) {
+		try {
+			return delegate.getTokenResponse(grantRequest).block();
+		}
+		catch (OAuth2AuthorizationException | ConcurrencyLimitExceededException e) {
+			throw e;
+		}
+		catch (RuntimeException e) {
+			// Same error DefaultClientCredentialsTokenResponseClient raises when the
+			// request itself fails, so the failure handlers behave the same
+			OAuth2Error oauth2Error = new OAuth2Error(INVALID_TOKEN_RESPONSE_ERROR_CODE,
+					"An error occurred while attempting to retrieve the OAuth 2.0 Access Token Response: "
+							+ e.getMessage(),
+					null);
+			throw new OAuth2AuthorizationException(oauth2Error, e);
+		}
+	}
+
+}
@@ -0,0 +1,48 @@
+package com.davidagood.spring.oauth.clientcredentials;
+
+import java.util.Objects;
+
+public class WordLookupDto {
+
+	private final String word;
+
+	private final boolean secret;
+
+	private WordLookupDto(String word, boolean secret) {
+		this.word = word;
+		this.secret = secret;
+	}
+
+	public static WordLookupDto from(String word, boolean secret) {
+		return new WordLookupDto(word, secret);
+	}
+
+	public String getWord() {
+		return word;
+	}
+
+	public boolean isSecret() {
+		return secret;
+	}
+
+	@Override
+	public String toString() {
+		return "WordLookupDto{" + "word='" + word + '\'' + ", secret=" + secret + '}';
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (this == o)
+			return true;
+		if (o == null || getClass() != o.getClass())
+			return false;
+		WordLookupDto that = (WordLookupDto) o;
+		return secret == that.secret && word.equals(that.word);
+	}
+
+	@Override
+	public int hashCode() {
+		return Objects.hash(word, secret);
+	}
+
+}
@@ -0,0 +1,6 @@
+CREATE TABLE oauth2_authorized_client_lock (
+  lock_name varchar(200) NOT NULL,
+  owner varchar(100) NOT NULL,
+  lease_expires_at timestamp NOT NULL,
+  PRIMARY KEY (lock_name)
+);
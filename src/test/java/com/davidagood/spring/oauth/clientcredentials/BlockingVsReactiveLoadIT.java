@@ -0,0 +1,129 @@
+package com.davidagood.spring.oauth.clientcredentials;
+
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.web.server.LocalServerPort;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import static com.davidagood.spring.oauth.clientcredentials.TestUtil.createJsonResponse;
+import static com.davidagood.spring.oauth.clientcredentials.TestUtil.createTokenResponse;
+import static com.davidagood.spring.oauth.clientcredentials.TestUtil.getFreePort;
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Compares the blocking and the reactive endpoint under concurrent load with a slow
+ * resource server. The servlet container is limited to a handful of threads so the
+ * difference is visible: the blocking endpoint can only have as many upstream calls in
+ * flight as there are threads. Run with {@code ./gradlew loadTest}
+ */
+@Tag("load")
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+		properties = "server.tomcat.threads.max=" + BlockingVsReactiveLoadIT.SERVLET_THREADS)
+class BlockingVsReactiveLoadIT {
+
+	static final int SERVLET_THREADS = 8;
+
+	private static final Logger log = LoggerFactory.getLogger(BlockingVsReactiveLoadIT.class);
+
+	private static final int MOCK_SERVER_PORT = getFreePort();
+
+	private static final int REQUESTS = 200;
+
+	private static final int CONCURRENCY = 100;
+
+	private static final long RESOURCE_SERVER_LATENCY_MILLIS = 200;
+
+	private static MockWebServer mockWebServer;
+
+	@LocalServerPort
+	int port;
+
+	@DynamicPropertySource
+	static void properties(DynamicPropertyRegistry r) {
+		r.add("secret-words-client.url", () -> "http://localhost:" + MOCK_SERVER_PORT + "/api/words");
+		r.add("spring.security.oauth2.client.provider.my-client-provider.token-uri",
+				() -> "http://localhost:" + MOCK_SERVER_PORT + "/oauth/token");
+	}
+
+	@BeforeEach
+	void setUp() throws IOException {
+		mockWebServer = new MockWebServer();
+		mockWebServer.setDispatcher(new Dispatcher() {
+			@Override
+			public MockResponse dispatch(RecordedRequest request) {
+				if ("/oauth/token".equals(request.getPath())) {
+					return createTokenResponse("dummy-access-token", 3600);
+				}
+				return createJsonResponse("[\"speakers\",\"keyboard\"]").setHeadersDelay(RESOURCE_SERVER_LATENCY_MILLIS,
+						TimeUnit.MILLISECONDS);
+			}
+		});
+		mockWebServer.start(MOCK_SERVER_PORT);
+	}
+
+	@AfterEach
+	void tearDown() throws IOException {
+		mockWebServer.close();
+	}
+
+	@Test
+	void compareBlockingAndReactiveThroughput() {
+		ConnectionProvider connectionProvider = ConnectionProvider.builder("load-generator").maxConnections(CONCURRENCY)
+				.build();
+		WebClient loadGenerator = WebClient.builder()
+				.clientConnector(new ReactorClientHttpConnector(HttpClient.create(connectionProvider)))
+				.baseUrl("http://localhost:" + port).build();
+		try {
+			// Warm up both paths and acquire the token outside of the measurement
+			run(loadGenerator, "/api/words", CONCURRENCY);
+			run(loadGenerator, "/api/words/reactive", CONCURRENCY);
+
+			Duration blocking = run(loadGenerator, "/api/words", REQUESTS);
+			Duration reactive = run(loadGenerator, "/api/words/reactive", REQUESTS);
+
+			log.info("requests={}, concurrency={}, servletThreads={}, resourceServerLatency={}ms", REQUESTS,
+					CONCURRENCY, SERVLET_THREADS, RESOURCE_SERVER_LATENCY_MILLIS);
+			log.info("blocking: elapsed={}, throughput={} req/s", blocking, throughput(blocking));
+			log.info("reactive: elapsed={}, throughput={} req/s", reactive, throughput(reactive));
+		}
+		finally {
+			connectionProvider.dispose();
+		}
+	}
+
+	private static Duration run(WebClient loadGenerator, String path, int requests) {
+		long start = System.nanoTime();
+		// @formatter:off
+		Long succeeded = Flux.range(0, requests)
+				.flatMap(i -> loadGenerator.get().uri(path).retrieve().toBodilessEntity(), CONCURRENCY)
+				.count()
+				.block();
+		// @formatter:on
+		assertThat(succeeded).isEqualTo(requests);
+		return Duration.ofNanos(System.nanoTime() - start);
+	}
+
+	private static long throughput(Duration elapsed) {
+		return REQUESTS * 1000L / Math.max(1, elapsed.toMillis());
+	}
+
+}
@@ -0,0 +1,149 @@
+package com.davidagood.spring.oauth.clientcredentials;
+
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.SpyBean;
+import org.springframework.http.HttpHeaders;
+import org.springframework.security.oauth2.client.OAuth2AuthorizedClient;
+import org.springframework.security.oauth2.client.OAuth2AuthorizedClientManager;
+import org.springframework.security.oauth2.client.OAuth2AuthorizedClientService;
+import org.springframework.security.oauth2.core.OAuth2AccessToken;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+
+import static com.davidagood.spring.oauth.clientcredentials.AuthorizedWebClientConfig.ANONYMOUS_PRINCIPAL;
+import static com.davidagood.spring.oauth.clientcredentials.AuthorizedWebClientConfig.REGISTRATION_ID;
+import static com.davidagood.spring.oauth.clientcredentials.TestUtil.createJsonResponse;
+import static com.davidagood.spring.oauth.clientcredentials.TestUtil.createTokenResponse;
+import static com.davidagood.spring.oauth.clientcredentials.TestUtil.getFreePort;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+@SpringBootTest
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+class CachingBearerExchangeFilterFunctionIT {
+
+	private static final int MOCK_SERVER_PORT = getFreePort();
+
+	private static MockWebServer mockWebServer;
+
+	@Autowired
+	SecretWordsClient secretWordsClient;
+
+	@Autowired
+	OAuth2AuthorizedClientService authorizedClientService;
+
+	@SpyBean(name = "authorizedClientManager")
+	OAuth2AuthorizedClientManager authorizedClientManager;
+
+	@DynamicPropertySource
+	static void properties(DynamicPropertyRegistry r) {
+		r.add("secret-words-client.url", () -> "http://localhost:" + MOCK_SERVER_PORT + "/api/words");
+		r.add("spring.security.oauth2.client.provider.my-client-provider.token-uri",
+				() -> "http://localhost:" + MOCK_SERVER_PORT + "/oauth/token");
+	}
+
+	@BeforeEach
+	void setUp() throws IOException {
+		mockWebServer = new MockWebServer();
+		mockWebServer.start(MOCK_SERVER_PORT);
+	}
+
+	@AfterEach
+	void tearDown() throws IOException {
+		mockWebServer.close();
+	}
+
+	@Test
+	void cachedTokenIsUsedWithoutAuthorizedClientManager() throws Exception {
+		mockWebServer.enqueue(createTokenResponse("first-token", 3600));
+		for (int i = 0; i < 3; i++) {
+			mockWebServer.enqueue(createJsonResponse("[\"speakers\"]"));
+		}
+
+		for (int i = 0; i < 3; i++) {
+			assertThat(secretWordsClient.getSecretWords()).containsExactly("speakers");
+		}
+
+		verify(authorizedClientManager, times(1)).authorize(any());
+		mockWebServer.takeRequest();
+		for (int i = 0; i < 3; i++) {
+			assertThat(mockWebServer.takeRequest().getHeader(HttpHeaders.AUTHORIZATION))
+					.isEqualTo("Bearer first-token");
+		}
+	}
+
+	@Test
+	void unauthorizedResponseDropsCachedToken() throws Exception {
+		mockWebServer.enqueue(createTokenResponse("first-token", 3600));
+		mockWebServer.enqueue(new MockResponse().setResponseCode(401));
+		mockWebServer.enqueue(createTokenResponse("second-token", 3600));
+		mockWebServer.enqueue(createJsonResponse("[\"speakers\"]"));
+
+		assertThatThrownBy(() -> secretWordsClient.getSecretWords()).isInstanceOf(AuthorizationException.class);
+		assertThat(secretWordsClient.getSecretWords()).containsExactly("speakers");
+
+		assertThat(mockWebServer.getRequestCount()).isEqualTo(4);
+		for (int i = 0; i < 3; i++) {
+			mockWebServer.takeRequest();
+		}
+		assertThat(mockWebServer.takeRequest().getHeader(HttpHeaders.AUTHORIZATION)).isEqualTo("Bearer second-token");
+	}
+
+	@Test
+	void tokenReplacedInAuthorizedClientServiceIsUsedInsteadOfCachedToken() throws Exception {
+		mockWebServer.enqueue(createTokenResponse("first-token", 3600));
+		mockWebServer.enqueue(createJsonResponse("[\"speakers\"]"));
+		mockWebServer.enqueue(createJsonResponse("[\"keyboard\"]"));
+
+		assertThat(secretWordsClient.getSecretWords()).containsExactly("speakers");
+		// As the background refresher, or the reactive path, would renew it
+		OAuth2AuthorizedClient authorizedClient = authorizedClientService.loadAuthorizedClient(REGISTRATION_ID,
+				ANONYMOUS_PRINCIPAL.getName());
+		Instant issuedAt = Instant.now();
+		var replacedToken = new OAuth2AccessToken(OAuth2AccessToken.TokenType.BEARER, "replaced-token", issuedAt,
+				issuedAt.plus(1, ChronoUnit.HOURS));
+		authorizedClientService
+				.saveAuthorizedClient(new OAuth2AuthorizedClient(authorizedClient.getClientRegistration(),
+						authorizedClient.getPrincipalName(), replacedToken), ANONYMOUS_PRINCIPAL);
+		assertThat(secretWordsClient.getSecretWords()).containsExactly("keyboard");
+
+		verify(authorizedClientManager, times(1)).authorize(any());
+		mockWebServer.takeRequest();
+		mockWebServer.takeRequest();
+		assertThat(mockWebServer.takeRequest().getHeader(HttpHeaders.AUTHORIZATION)).isEqualTo("Bearer replaced-token");
+	}
+
+	@Test
+	void tokenRemovedFromAuthorizedClientServiceIsNotSentAgain() throws Exception {
+		mockWebServer.enqueue(createTokenResponse("first-token", 3600));
+		mockWebServer.enqueue(createJsonResponse("[\"speakers\"]"));
+		mockWebServer.enqueue(createTokenResponse("second-token", 3600));
+		mockWebServer.enqueue(createJsonResponse("[\"keyboard\"]"));
+
+		assertThat(secretWordsClient.getSecretWords()).containsExactly("speakers");
+		// As the reactive path's failure handler would on a 401
+		authorizedClientService.removeAuthorizedClient(REGISTRATION_ID, ANONYMOUS_PRINCIPAL.getName());
+		assertThat(secretWordsClient.getSecretWords()).containsExactly("keyboard");
+
+		assertThat(mockWebServer.getRequestCount()).isEqualTo(4);
+		for (int i = 0; i < 3; i++) {
+			mockWebServer.takeRequest();
+		}
+		assertThat(mockWebServer.takeRequest().getHeader(HttpHeaders.AUTHORIZATION)).isEqualTo("Bearer second-token");
+	}
+
+}
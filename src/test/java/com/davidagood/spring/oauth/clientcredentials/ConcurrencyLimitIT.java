@@ -0,0 +1,132 @@
+package com.davidagood.spring.oauth.clientcredentials;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.web.servlet.MockMvc;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.davidagood.spring.oauth.clientcredentials.TestUtil.createJsonResponse;
+import static com.davidagood.spring.oauth.clientcredentials.TestUtil.createTokenResponse;
+import static com.davidagood.spring.oauth.clientcredentials.TestUtil.getFreePort;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest(properties = { "concurrency-limit.enabled=true", "concurrency-limit.retry-after=2s",
+		"concurrency-limit.resource-server.initial-limit=2", "concurrency-limit.resource-server.max-limit=3",
+		"concurrency-limit.resource-server.backoff-ratio=0.5", "concurrency-limit.resource-server.latency-threshold=2s",
+		"concurrency-limit.token-grant.initial-limit=1" })
+@AutoConfigureMockMvc
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+class ConcurrencyLimitIT {
+
+	private static final int MOCK_SERVER_PORT = getFreePort();
+
+	private static MockWebServer mockWebServer;
+
+	private final AtomicLong resourceServerLatencyMillis = new AtomicLong();
+
+	@Autowired
+	MockMvc mockMvc;
+
+	@Autowired
+	SecretWordsClient secretWordsClient;
+
+	@Autowired
+	MeterRegistry meterRegistry;
+
+	@DynamicPropertySource
+	static void properties(DynamicPropertyRegistry r) {
+		r.add("secret-words-client.url", () -> "http://localhost:" + MOCK_SERVER_PORT + "/api/words");
+		r.add("spring.security.oauth2.client.provider.my-client-provider.token-uri",
+				() -> "http://localhost:" + MOCK_SERVER_PORT + "/oauth/token");
+	}
+
+	@BeforeEach
+	void setUp() throws IOException {
+		mockWebServer = new MockWebServer();
+		mockWebServer.setDispatcher(new Dispatcher() {
+			@Override
+			public MockResponse dispatch(RecordedRequest request) {
+				if ("/oauth/token".equals(request.getPath())) {
+					return createTokenResponse("dummy-access-token", 3600);
+				}
+				return createJsonResponse("[\"speakers\"]").setHeadersDelay(resourceServerLatencyMillis.get(),
+						TimeUnit.MILLISECONDS);
+			}
+		});
+		mockWebServer.start(MOCK_SERVER_PORT);
+	}
+
+	@AfterEach
+	void tearDown() throws IOException {
+		mockWebServer.close();
+	}
+
+	@Test
+	void requestsBeyondTheLimitAreRejectedWithRetryAfter() throws Exception {
+		assertThat(secretWordsClient.getSecretWords()).containsExactly("speakers");
+		resourceServerLatencyMillis.set(1000);
+		List<Mono<List<String>>> inFlight = List.of(secretWordsClient.getSecretWordsAsync().cache(),
+				secretWordsClient.getSecretWordsAsync().cache(), secretWordsClient.getSecretWordsAsync().cache());
+		inFlight.forEach(Mono::subscribe);
+		assertThat(inFlight("resource-server")).isEqualTo(3);
+
+		assertThatThrownBy(() -> secretWordsClient.getSecretWords())
+				.isInstanceOf(ConcurrencyLimitExceededException.class);
+		mockMvc.perform(get("/api/words")).andExpect(status().isServiceUnavailable())
+				.andExpect(header().string(HttpHeaders.RETRY_AFTER, "2"));
+
+		inFlight.forEach(words -> assertThat(words.block(Duration.ofSeconds(5))).containsExactly("speakers"));
+		assertThat(inFlight("resource-server")).isZero();
+		assertThat(meterRegistry.get(AimdConcurrencyLimiter.REJECTED_COUNTER).tag("name", "resource-server").counter()
+				.count()).isEqualTo(2);
+	}
+
+	@Test
+	void limitGrowsWhileUsedAndShrinksWhenLatencyExceedsTheThreshold() throws Exception {
+		assertThat(limit("resource-server")).isEqualTo(2);
+		assertThat(limit("token-grant-my-client")).isEqualTo(1);
+
+		assertThat(secretWordsClient.getSecretWords()).containsExactly("speakers");
+		assertThat(limit("resource-server")).isEqualTo(3);
+		assertThat(secretWordsClient.getSecretWords()).containsExactly("speakers");
+		assertThat(limit("resource-server")).isEqualTo(3);
+
+		resourceServerLatencyMillis.set(2100);
+		assertThat(secretWordsClient.getSecretWords()).containsExactly("speakers");
+		assertThat(limit("resource-server")).isEqualTo(1);
+		assertThat(secretWordsClient.getSecretWords()).containsExactly("speakers");
+		assertThat(limit("resource-server")).isEqualTo(1);
+	}
+
+	private double limit(String name) {
+		return meterRegistry.get(AimdConcurrencyLimiter.LIMIT_GAUGE).tag("name", name).gauge().value();
+	}
+
+	private double inFlight(String name) {
+		return meterRegistry.get(AimdConcurrencyLimiter.IN_FLIGHT_GAUGE).tag("name", name).gauge().value();
+	}
+
+}
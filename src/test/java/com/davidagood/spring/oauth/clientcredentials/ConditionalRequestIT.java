@@ -0,0 +1,128 @@
+package com.davidagood.spring.oauth.clientcredentials;
+
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.io.IOException;
+
+import static com.davidagood.spring.oauth.clientcredentials.TestUtil.createJsonResponse;
+import static com.davidagood.spring.oauth.clientcredentials.TestUtil.createTokenResponse;
+import static com.davidagood.spring.oauth.clientcredentials.TestUtil.getFreePort;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+class ConditionalRequestIT {
+
+	private static final int MOCK_SERVER_PORT = getFreePort();
+
+	private static MockWebServer mockWebServer;
+
+	@Autowired
+	MockMvc mockMvc;
+
+	@Autowired
+	SecretWordsClient secretWordsClient;
+
+	@DynamicPropertySource
+	static void properties(DynamicPropertyRegistry r) {
+		r.add("secret-words-client.url", () -> "http://localhost:" + MOCK_SERVER_PORT);
+		r.add("spring.security.oauth2.client.provider.my-client-provider.token-uri",
+				() -> "http://localhost:" + MOCK_SERVER_PORT);
+	}
+
+	@BeforeEach
+	void setUp() throws IOException {
+		mockWebServer = new MockWebServer();
+		mockWebServer.start(MOCK_SERVER_PORT);
+	}
+
+	@AfterEach
+	void tearDown() throws IOException {
+		mockWebServer.close();
+	}
+
+	@Test
+	void notModifiedResponseReusesRetainedWords() throws Exception {
+		mockWebServer.enqueue(createTokenResponse("dummy-access-token", 3600));
+		mockWebServer.enqueue(createJsonResponse("[\"speakers\",\"keyboard\"]").setHeader(HttpHeaders.ETAG, "\"v1\"")
+				.setHeader(HttpHeaders.LAST_MODIFIED, "Wed, 08 Jan 2020 05:00:00 GMT"));
+		mockWebServer.enqueue(new MockResponse().setResponseCode(304).setHeader(HttpHeaders.ETAG, "\"v1\""));
+
+		assertThat(secretWordsClient.getSecretWords()).containsExactly("speakers", "keyboard");
+		assertThat(secretWordsClient.getSecretWordsAsync().block()).containsExactly("speakers", "keyboard");
+
+		mockWebServer.takeRequest();
+		RecordedRequest unconditionalRequest = mockWebServer.takeRequest();
+		assertThat(unconditionalRequest.getHeader(HttpHeaders.IF_NONE_MATCH)).isNull();
+		RecordedRequest conditionalRequest = mockWebServer.takeRequest();
+		assertThat(conditionalRequest.getHeader(HttpHeaders.IF_NONE_MATCH)).isEqualTo("\"v1\"");
+		assertThat(conditionalRequest.getHeader(HttpHeaders.IF_MODIFIED_SINCE))
+				.isEqualTo("Wed, 08 Jan 2020 05:00:00 GMT");
+	}
+
+	@Test
+	void modifiedResponseReplacesRetainedWords() throws Exception {
+		mockWebServer.enqueue(createTokenResponse("dummy-access-token", 3600));
+		mockWebServer.enqueue(createJsonResponse("[\"speakers\"]").setHeader(HttpHeaders.ETAG, "\"v1\""));
+		mockWebServer.enqueue(createJsonResponse("[\"keyboard\"]").setHeader(HttpHeaders.ETAG, "\"v2\""));
+		mockWebServer.enqueue(new MockResponse().setResponseCode(304));
+
+		assertThat(secretWordsClient.getSecretWords()).containsExactly("speakers");
+		assertThat(secretWordsClient.getSecretWords()).containsExactly("keyboard");
+		assertThat(secretWordsClient.getSecretWords()).containsExactly("keyboard");
+
+		mockWebServer.takeRequest();
+		mockWebServer.takeRequest();
+		assertThat(mockWebServer.takeRequest().getHeader(HttpHeaders.IF_NONE_MATCH)).isEqualTo("\"v1\"");
+		assertThat(mockWebServer.takeRequest().getHeader(HttpHeaders.IF_NONE_MATCH)).isEqualTo("\"v2\"");
+	}
+
+	@Test
+	void endpointRevalidatesWithIfNoneMatch() throws Exception {
+		mockWebServer.enqueue(createTokenResponse("dummy-access-token", 3600));
+		mockWebServer.enqueue(createJsonResponse("[\"speakers\",\"keyboard\"]"));
+		mockWebServer.enqueue(createJsonResponse("[\"speakers\",\"keyboard\"]"));
+		mockWebServer.enqueue(createJsonResponse("[\"monitor\"]"));
+
+		String etag = mockMvc.perform(get("/api/words")).andExpect(status().isOk())
+				.andExpect(header().exists(HttpHeaders.ETAG)).andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+
+		mockMvc.perform(get("/api/words").header(HttpHeaders.IF_NONE_MATCH, etag)).andExpect(status().isNotModified())
+				.andExpect(header().string(HttpHeaders.ETAG, etag)).andExpect(content().string(""));
+
+		mockMvc.perform(get("/api/words").header(HttpHeaders.IF_NONE_MATCH, etag)).andExpect(status().isOk())
+				.andExpect(content().json("{\"words\":[\"monitor\"]}"));
+	}
+
+	@Test
+	void wordsSplitDifferentlyGetDifferentEtags() throws Exception {
+		mockWebServer.enqueue(createTokenResponse("dummy-access-token", 3600));
+		mockWebServer.enqueue(createJsonResponse("[\"speakers\\nkeyboard\"]"));
+		mockWebServer.enqueue(createJsonResponse("[\"speakers\",\"keyboard\"]"));
+
+		String etag = mockMvc.perform(get("/api/words")).andExpect(status().isOk()).andReturn().getResponse()
+				.getHeader(HttpHeaders.ETAG);
+
+		mockMvc.perform(get("/api/words").header(HttpHeaders.IF_NONE_MATCH, etag)).andExpect(status().isOk())
+				.andExpect(content().json("{\"words\":[\"speakers\",\"keyboard\"]}"));
+	}
+
+}
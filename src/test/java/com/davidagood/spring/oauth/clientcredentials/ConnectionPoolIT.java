@@ -0,0 +1,90 @@
+package com.davidagood.spring.oauth.clientcredentials;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static com.davidagood.spring.oauth.clientcredentials.TestUtil.createJsonResponse;
+import static com.davidagood.spring.oauth.clientcredentials.TestUtil.createTokenResponse;
+import static com.davidagood.spring.oauth.clientcredentials.TestUtil.getFreePort;
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+class ConnectionPoolIT {
+
+	private static final int MOCK_SERVER_PORT = getFreePort();
+
+	private static MockWebServer mockWebServer;
+
+	@Autowired
+	SecretWordsClient secretWordsClient;
+
+	@Autowired
+	MeterRegistry meterRegistry;
+
+	@DynamicPropertySource
+	static void properties(DynamicPropertyRegistry r) {
+		r.add("secret-words-client.url", () -> "http://localhost:" + MOCK_SERVER_PORT + "/api/words");
+		r.add("spring.security.oauth2.client.provider.my-client-provider.token-uri",
+				() -> "http://localhost:" + MOCK_SERVER_PORT + "/oauth/token");
+		String hostPool = "http-client.hosts.[localhost:" + MOCK_SERVER_PORT + "]";
+		r.add(hostPool + ".max-connections", () -> 1);
+		r.add(hostPool + ".pending-acquire-max-count", () -> 1);
+	}
+
+	@BeforeEach
+	void setUp() throws IOException {
+		mockWebServer = new MockWebServer();
+		mockWebServer.setDispatcher(new Dispatcher() {
+			@Override
+			public MockResponse dispatch(RecordedRequest request) {
+				if ("/oauth/token".equals(request.getPath())) {
+					return createTokenResponse("dummy-access-token", 3600);
+				}
+				return createJsonResponse("[\"speakers\"]").setHeadersDelay(200, TimeUnit.MILLISECONDS);
+			}
+		});
+		mockWebServer.start(MOCK_SERVER_PORT);
+	}
+
+	@AfterEach
+	void tearDown() throws IOException {
+		mockWebServer.close();
+	}
+
+	@Test
+	void hostSpecificPoolLimitsAreAppliedAndPoolGaugesExported() throws Exception {
+		assertThat(secretWordsClient.getSecretWords()).containsExactly("speakers");
+
+		// One connection in use and one request waiting for it; the third is rejected
+		// by the host specific pool instead of queueing
+		List<Object> results = Flux.range(0, 3).flatMap(
+				i -> secretWordsClient.getSecretWordsAsync().cast(Object.class).onErrorResume(e -> Mono.just(e)))
+				.collectList().block();
+		assertThat(results).filteredOn(SecretWordsRequestException.class::isInstance).hasSize(1);
+		assertThat(results).filteredOn(List.class::isInstance).hasSize(2);
+
+		for (String gauge : List.of("total", "active", "idle", "pending")) {
+			assertThat(meterRegistry.find("reactor.netty.connection.provider." + gauge + ".connections")
+					.tag("name", "http-client").gauge()).as(gauge).isNotNull();
+		}
+	}
+
+}
@@ -0,0 +1,135 @@
+package com.davidagood.spring.oauth.clientcredentials;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.davidagood.spring.oauth.clientcredentials.TestUtil.createJsonResponse;
+import static com.davidagood.spring.oauth.clientcredentials.TestUtil.createTokenResponse;
+import static com.davidagood.spring.oauth.clientcredentials.TestUtil.getFreePort;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+class FanOutIT {
+
+	private static final int MOCK_SERVER_PORT = getFreePort();
+
+	private static final String BASE_URL = "http://localhost:" + MOCK_SERVER_PORT;
+
+	private static final long SHARD_DELAY_MILLIS = 1000;
+
+	private static MockWebServer mockWebServer;
+
+	private final AtomicInteger tokenRequests = new AtomicInteger();
+
+	private volatile boolean shardsFail;
+
+	@Autowired
+	MockMvc mockMvc;
+
+	@Autowired
+	ObjectMapper objectMapper;
+
+	@DynamicPropertySource
+	static void properties(DynamicPropertyRegistry r) {
+		r.add("spring.security.oauth2.client.provider.my-client-provider.token-uri", () -> BASE_URL + "/oauth/token");
+		r.add("fan-out.urls[0]", () -> BASE_URL + "/shard-1/words");
+		r.add("fan-out.urls[1]", () -> BASE_URL + "/shard-2/words");
+		r.add("fan-out.urls[2]", () -> BASE_URL + "/shard-3/words");
+		r.add("fan-out.urls[3]", () -> BASE_URL + "/shard-4/words");
+		r.add("fan-out.shard-timeout", () -> "3s");
+	}
+
+	@BeforeEach
+	void setUp() throws IOException {
+		mockWebServer = new MockWebServer();
+		mockWebServer.setDispatcher(new Dispatcher() {
+			@Override
+			public MockResponse dispatch(RecordedRequest request) {
+				String path = request.getPath();
+				if (path.equals("/oauth/token")) {
+					tokenRequests.incrementAndGet();
+					return createTokenResponse("dummy-token", 3600);
+				}
+				if (!"Bearer dummy-token".equals(request.getHeader(HttpHeaders.AUTHORIZATION))) {
+					return new MockResponse().setResponseCode(401);
+				}
+				if (shardsFail || path.startsWith("/shard-4")) {
+					return new MockResponse().setResponseCode(500);
+				}
+				if (path.startsWith("/shard-3")) {
+					return createJsonResponse("[\"late\"]").setBodyDelay(5, TimeUnit.SECONDS);
+				}
+				String body = path.startsWith("/shard-1") ? "[\"apple\",\"pear\"]" : "[\"pear\",\"plum\"]";
+				return createJsonResponse(body).setBodyDelay(SHARD_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+			}
+		});
+		mockWebServer.start(MOCK_SERVER_PORT);
+	}
+
+	@AfterEach
+	void tearDown() throws IOException {
+		mockWebServer.close();
+	}
+
+	@Test
+	void shardsAreQueriedInParallelWithOneTokenAndMergedIntoPartialResult() throws Exception {
+		long start = System.nanoTime();
+		MvcResult asyncResult = mockMvc.perform(get("/api/words/fan-out")).andExpect(request().asyncStarted())
+				.andReturn();
+		asyncResult.getAsyncResult(10_000);
+		long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+		MvcResult result = mockMvc.perform(asyncDispatch(asyncResult)).andExpect(status().isOk()).andReturn();
+
+		JsonNode body = objectMapper.readTree(result.getResponse().getContentAsString());
+		List<String> words = new ArrayList<>();
+		body.get("words").forEach(word -> words.add(word.asText()));
+		List<String> failedShards = new ArrayList<>();
+		body.get("failedShards").forEach(url -> failedShards.add(url.asText()));
+		assertThat(words).containsExactlyInAnyOrder("apple", "pear", "plum");
+		assertThat(failedShards).containsExactlyInAnyOrder(BASE_URL + "/shard-3/words", BASE_URL + "/shard-4/words");
+		assertThat(body.get("partial").asBoolean()).isTrue();
+		assertThat(tokenRequests).hasValue(1);
+		// One after the other, shard 1 and 2 and the timed out shard 3 would take at
+		// least 5s
+		assertThat(elapsedMillis).isLessThan(2 * SHARD_DELAY_MILLIS + 3000);
+	}
+
+	@Test
+	void allShardsFailingIsAnError() throws Exception {
+		shardsFail = true;
+
+		MvcResult asyncResult = mockMvc.perform(get("/api/words/fan-out")).andExpect(request().asyncStarted())
+				.andReturn();
+		mockMvc.perform(asyncDispatch(asyncResult)).andExpect(status().isInternalServerError());
+		assertThat(tokenRequests).hasValue(1);
+	}
+
+}
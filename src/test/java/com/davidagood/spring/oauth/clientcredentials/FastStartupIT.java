@@ -0,0 +1,82 @@
+package com.davidagood.spring.oauth.clientcredentials;
+
+import okhttp3.mockwebserver.MockWebServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.io.IOException;
+
+import static com.davidagood.spring.oauth.clientcredentials.TestUtil.createJsonResponse;
+import static com.davidagood.spring.oauth.clientcredentials.TestUtil.createTokenResponse;
+import static com.davidagood.spring.oauth.clientcredentials.TestUtil.getFreePort;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest(properties = "token-refresh.enabled=true")
+@AutoConfigureMockMvc
+@ActiveProfiles("fast-startup")
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+class FastStartupIT {
+
+	private static final int MOCK_SERVER_PORT = getFreePort();
+
+	private static MockWebServer mockWebServer;
+
+	@Autowired
+	MockMvc mockMvc;
+
+	@Autowired
+	ConfigurableApplicationContext context;
+
+	@DynamicPropertySource
+	static void properties(DynamicPropertyRegistry r) {
+		r.add("secret-words-client.url", () -> "http://localhost:" + MOCK_SERVER_PORT);
+		r.add("spring.security.oauth2.client.provider.my-client-provider.token-uri",
+				() -> "http://localhost:" + MOCK_SERVER_PORT);
+	}
+
+	@BeforeEach
+	void setUp() throws IOException {
+		mockWebServer = new MockWebServer();
+		mockWebServer.start(MOCK_SERVER_PORT);
+	}
+
+	@AfterEach
+	void tearDown() throws IOException {
+		mockWebServer.close();
+	}
+
+	@Test
+	void createsTheRequestPathOnFirstUse() throws Exception {
+		mockWebServer.enqueue(createTokenResponse("dummy-access-token", 3600));
+		mockWebServer.enqueue(createJsonResponse("[\"speakers\"]"));
+		var beanFactory = context.getBeanFactory();
+		assertThat(beanFactory.containsSingleton("secretWordsClient")).isFalse();
+		// Scheduled and fail-fast beans are still created at startup
+		assertThat(beanFactory.containsSingleton("authorizedClientRefresher")).isTrue();
+		assertThat(beanFactory.containsSingleton("upstreamClients")).isTrue();
+
+		mockMvc.perform(get("/api/words")).andExpect(status().isOk())
+				.andExpect(content().json("{\"words\":[\"speakers\"]}"));
+
+		assertThat(beanFactory.containsSingleton("secretWordsClient")).isTrue();
+	}
+
+	@Test
+	void doesNotSetUpTheSecurityFilterChain() {
+		assertThat(context.containsBean("springSecurityFilterChain")).isFalse();
+	}
+
+}
@@ -0,0 +1,171 @@
+package com.davidagood.spring.oauth.clientcredentials;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.davidagood.spring.oauth.clientcredentials.TestUtil.createJsonResponse;
+import static com.davidagood.spring.oauth.clientcredentials.TestUtil.createTokenResponse;
+import static com.davidagood.spring.oauth.clientcredentials.TestUtil.getFreePort;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@SpringBootTest(properties = { "secret-words-client.hedging.enabled=true",
+		"secret-words-client.hedging.initial-delay=1s", "secret-words-client.hedging.max-hedges-in-flight=1" })
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+class HedgingIT {
+
+	private static final int MOCK_SERVER_PORT = getFreePort();
+
+	private static final String REPLICA_1 = "/replica-1/api/words";
+
+	private static final String REPLICA_2 = "/replica-2/api/words";
+
+	private static MockWebServer mockWebServer;
+
+	private final Map<String, Long> latencyMillis = new ConcurrentHashMap<>();
+
+	private final Map<String, Integer> status = new ConcurrentHashMap<>();
+
+	private final Map<String, AtomicInteger> requests = new ConcurrentHashMap<>();
+
+	private final List<String> authorizationHeaders = new CopyOnWriteArrayList<>();
+
+	@Autowired
+	SecretWordsClient secretWordsClient;
+
+	@Autowired
+	MeterRegistry meterRegistry;
+
+	@DynamicPropertySource
+	static void properties(DynamicPropertyRegistry r) {
+		r.add("secret-words-client.url", () -> "http://localhost:" + MOCK_SERVER_PORT + REPLICA_1);
+		r.add("secret-words-client.hedging.replicas[0]", () -> "http://localhost:" + MOCK_SERVER_PORT + REPLICA_2);
+		r.add("spring.security.oauth2.client.provider.my-client-provider.token-uri",
+				() -> "http://localhost:" + MOCK_SERVER_PORT + "/oauth/token");
+	}
+
+	@BeforeEach
+	void setUp() throws IOException {
+		mockWebServer = new MockWebServer();
+		mockWebServer.setDispatcher(new Dispatcher() {
+			@Override
+			public MockResponse dispatch(RecordedRequest request) {
+				String path = request.getPath();
+				requests.computeIfAbsent(path, p -> new AtomicInteger()).incrementAndGet();
+				if ("/oauth/token".equals(path)) {
+					return createTokenResponse("dummy-access-token", 3600);
+				}
+				authorizationHeaders.add(request.getHeader(HttpHeaders.AUTHORIZATION));
+				String replica = path.substring(1, path.indexOf("/", 1));
+				return createJsonResponse("[\"" + replica + "\"]").setResponseCode(status.getOrDefault(path, 200))
+						.setHeadersDelay(latencyMillis.getOrDefault(path, 0L), TimeUnit.MILLISECONDS);
+			}
+		});
+		mockWebServer.start(MOCK_SERVER_PORT);
+	}
+
+	@AfterEach
+	void tearDown() throws IOException {
+		mockWebServer.close();
+	}
+
+	@Test
+	void slowReplicaIsHedgedWithTheSameToken() throws Exception {
+		latencyMillis.put(REPLICA_1, 5000L);
+
+		long startNanos = System.nanoTime();
+		assertThat(secretWordsClient.getSecretWords()).containsExactly("replica-2");
+
+		assertThat(Duration.ofNanos(System.nanoTime() - startNanos)).isLessThan(Duration.ofSeconds(4));
+		assertThat(requests.get("/oauth/token")).hasValue(1);
+		assertThat(authorizationHeaders).containsExactly("Bearer dummy-access-token", "Bearer dummy-access-token");
+		assertThat(hedges("sent")).isEqualTo(1);
+		assertThat(hedges("won")).isEqualTo(1);
+	}
+
+	@Test
+	void requestsAnsweredWithinTheDelayAreNotHedgedAndTakeTurns() throws Exception {
+		// The first request includes the token grant and may exceed the initial delay
+		secretWordsClient.getSecretWords();
+		double sentAfterFirstRequest = hedges("sent");
+		int replica1Requests = requests.get(REPLICA_1).get();
+
+		assertThat(secretWordsClient.getSecretWords()).containsExactly("replica-2");
+		assertThat(secretWordsClient.getSecretWords()).containsExactly("replica-1");
+
+		assertThat(requests.get(REPLICA_1)).hasValue(replica1Requests + 1);
+		assertThat(hedges("sent")).isEqualTo(sentAfterFirstRequest);
+	}
+
+	@Test
+	void hedgesInFlightAreCapped() {
+		latencyMillis.put(REPLICA_1, 3000L);
+		latencyMillis.put(REPLICA_2, 3000L);
+
+		// @formatter:off
+		List<List<String>> responses = Flux.range(0, 3)
+				.flatMap(i -> secretWordsClient.getSecretWordsAsync())
+				.collectList()
+				.block(Duration.ofSeconds(15));
+		// @formatter:on
+
+		assertThat(responses).hasSize(3);
+		assertThat(hedges("sent")).isEqualTo(1);
+		assertThat(hedges("skipped")).isEqualTo(2);
+		assertThat(requests.get(REPLICA_1).get() + requests.get(REPLICA_2).get()).isEqualTo(4);
+	}
+
+	@Test
+	void requestFailingBeforeTheDelayIsNotHedged() {
+		status.put(REPLICA_1, 500);
+
+		assertThatThrownBy(() -> secretWordsClient.getSecretWords()).isInstanceOf(SecretWordsRequestException.class)
+				.hasMessageContaining("status=500");
+
+		assertThat(requests).doesNotContainKey(REPLICA_2);
+		assertThat(hedges("sent")).isZero();
+	}
+
+	@Test
+	void winningHedgeRecordsTheLatencySinceTheRequestWasSent() {
+		var policy = new SecretWordsClientConfig.HedgingPolicy(true, List.of("hedge"), 1, 1, Duration.ofMillis(200),
+				Duration.ofMillis(5), 1);
+		var hedger = new RequestHedger("test", "request", policy, new SimpleMeterRegistry());
+
+		String answer = hedger.hedge(
+				url -> "request".equals(url) ? Mono.delay(Duration.ofSeconds(5)).thenReturn(url) : Mono.just(url))
+				.block(Duration.ofSeconds(2));
+
+		assertThat(answer).isEqualTo("hedge");
+		assertThat(hedger.getDelay()).isGreaterThanOrEqualTo(Duration.ofMillis(200));
+	}
+
+	private double hedges(String outcome) {
+		return meterRegistry.get(RequestHedger.HEDGE_COUNTER).tag("outcome", outcome).counter().count();
+	}
+
+}
@@ -0,0 +1,141 @@
+package com.davidagood.spring.oauth.clientcredentials;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import reactor.core.publisher.Flux;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.Collectors;
+
+import static com.davidagood.spring.oauth.clientcredentials.TestUtil.createJsonResponse;
+import static com.davidagood.spring.oauth.clientcredentials.TestUtil.createTokenResponse;
+import static com.davidagood.spring.oauth.clientcredentials.TestUtil.getFreePort;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest(properties = { "micro-batch.enabled=true", "micro-batch.window=200ms", "micro-batch.max-batch-size=3" })
+@AutoConfigureMockMvc
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+class MicroBatchIT {
+
+	private static final int MOCK_SERVER_PORT = getFreePort();
+
+	private static final Set<String> SECRET_WORDS = Set.of("apple", "plum");
+
+	private static MockWebServer mockWebServer;
+
+	private final List<List<String>> lookupRequests = new CopyOnWriteArrayList<>();
+
+	private volatile boolean resourceServerFails;
+
+	@Autowired
+	MockMvc mockMvc;
+
+	@Autowired
+	SecretWordLookup secretWordLookup;
+
+	@Autowired
+	MeterRegistry meterRegistry;
+
+	@DynamicPropertySource
+	static void properties(DynamicPropertyRegistry r) {
+		r.add("secret-words-client.url", () -> "http://localhost:" + MOCK_SERVER_PORT + "/api/words");
+		r.add("spring.security.oauth2.client.provider.my-client-provider.token-uri",
+				() -> "http://localhost:" + MOCK_SERVER_PORT + "/oauth/token");
+	}
+
+	@BeforeEach
+	void setUp() throws IOException {
+		mockWebServer = new MockWebServer();
+		mockWebServer.setDispatcher(new Dispatcher() {
+			@Override
+			public MockResponse dispatch(RecordedRequest request) {
+				if ("/oauth/token".equals(request.getPath())) {
+					return createTokenResponse("dummy-access-token", 3600);
+				}
+				List<String> words = request.getRequestUrl().queryParameterValues(SecretWordsClient.LOOKUP_PARAMETER);
+				lookupRequests.add(words);
+				if (resourceServerFails) {
+					return new MockResponse().setResponseCode(500);
+				}
+				String secretWords = words.stream().filter(SECRET_WORDS::contains).map(word -> "\"" + word + "\"")
+						.collect(Collectors.joining(","));
+				return createJsonResponse("[" + secretWords + "]");
+			}
+		});
+		mockWebServer.start(MOCK_SERVER_PORT);
+	}
+
+	@AfterEach
+	void tearDown() throws IOException {
+		mockWebServer.close();
+	}
+
+	@Test
+	void concurrentLookupsAreSentAsOneBatch() {
+		Map<String, Boolean> results = lookUp("apple", "pear", "apple");
+
+		assertThat(results).containsExactlyInAnyOrderEntriesOf(Map.of("apple", true, "pear", false));
+		assertThat(lookupRequests).containsExactly(List.of("apple", "pear"));
+		assertThat(meterRegistry.get(MicroBatcher.BATCH_SIZE_SUMMARY).summary().count()).isEqualTo(1);
+	}
+
+	@Test
+	void batchIsSentOnceItReachesTheMaxBatchSize() {
+		Map<String, Boolean> results = lookUp("apple", "pear", "plum", "fig");
+
+		assertThat(results)
+				.containsExactlyInAnyOrderEntriesOf(Map.of("apple", true, "pear", false, "plum", true, "fig", false));
+		assertThat(lookupRequests).containsExactly(List.of("apple", "pear", "plum"), List.of("fig"));
+	}
+
+	@Test
+	void failedBatchFailsEveryLookup() {
+		resourceServerFails = true;
+
+		assertThatThrownBy(() -> lookUp("apple", "pear")).isInstanceOf(SecretWordsRequestException.class);
+		assertThat(lookupRequests).hasSize(1);
+	}
+
+	@Test
+	void lookupEndpoint() throws Exception {
+		MvcResult asyncResult = mockMvc.perform(get("/api/words/lookup").param("word", "plum"))
+				.andExpect(request().asyncStarted()).andReturn();
+		mockMvc.perform(asyncDispatch(asyncResult)).andExpect(status().isOk())
+				.andExpect(content().json("{\"word\":\"plum\",\"secret\":true}"));
+	}
+
+	private Map<String, Boolean> lookUp(String... words) {
+		// @formatter:off
+		return Flux.just(words)
+				.flatMap(word -> secretWordLookup.isSecretWord(word).map(secret -> Map.entry(word, secret)))
+				.collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue, (a, b) -> a))
+				.block(Duration.ofSeconds(10));
+		// @formatter:on
+	}
+
+}
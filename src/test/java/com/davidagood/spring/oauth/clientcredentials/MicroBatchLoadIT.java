@@ -0,0 +1,167 @@
+package com.davidagood.spring.oauth.clientcredentials;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static com.davidagood.spring.oauth.clientcredentials.TestUtil.createJsonResponse;
+import static com.davidagood.spring.oauth.clientcredentials.TestUtil.createTokenResponse;
+import static com.davidagood.spring.oauth.clientcredentials.TestUtil.getFreePort;
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Number of resource server requests made for word lookups arriving at a steady rate, one
+ * request per lookup compared to micro-batching with and without flush on idle. Run with
+ * {@code ./gradlew loadTest}
+ */
+@Tag("load")
+@SpringBootTest(properties = { "logging.level.com.davidagood=warn", "logging.level.okhttp3=warn",
+		"logging.level.com.davidagood.spring.oauth.clientcredentials.MicroBatchLoadIT=info" })
+class MicroBatchLoadIT {
+
+	private static final Logger log = LoggerFactory.getLogger(MicroBatchLoadIT.class);
+
+	private static final int MOCK_SERVER_PORT = getFreePort();
+
+	private static final int[] LOOKUPS_PER_SECOND = { 50, 500, 2000 };
+
+	private static final Duration RUN_DURATION = Duration.ofSeconds(3);
+
+	private static final int DISTINCT_WORDS = 1000;
+
+	private static final long RESOURCE_SERVER_LATENCY_MILLIS = 20;
+
+	private static MockWebServer mockWebServer;
+
+	@Autowired
+	SecretWordsClient secretWordsClient;
+
+	@DynamicPropertySource
+	static void properties(DynamicPropertyRegistry r) {
+		r.add("secret-words-client.url", () -> "http://localhost:" + MOCK_SERVER_PORT + "/api/words");
+		r.add("spring.security.oauth2.client.provider.my-client-provider.token-uri",
+				() -> "http://localhost:" + MOCK_SERVER_PORT + "/oauth/token");
+	}
+
+	@BeforeEach
+	void setUp() throws IOException {
+		mockWebServer = new MockWebServer();
+		mockWebServer.setDispatcher(new Dispatcher() {
+			@Override
+			public MockResponse dispatch(RecordedRequest request) {
+				if ("/oauth/token".equals(request.getPath())) {
+					return createTokenResponse("dummy-access-token", 3600);
+				}
+				return createJsonResponse("[]").setHeadersDelay(RESOURCE_SERVER_LATENCY_MILLIS, TimeUnit.MILLISECONDS);
+			}
+		});
+		mockWebServer.start(MOCK_SERVER_PORT);
+	}
+
+	@AfterEach
+	void tearDown() throws IOException {
+		mockWebServer.close();
+	}
+
+	@Test
+	void compareResourceServerRequestsPerLookup() {
+		// Acquire the token outside of the measurement
+		secretWordsClient.lookUpSecretWords(Set.of("warm-up")).block();
+		MicroBatchConfig windowed = new MicroBatchConfig(true, Duration.ofMillis(10), 100, false);
+		MicroBatchConfig flushOnIdle = new MicroBatchConfig(true, Duration.ofMillis(10), 100, true);
+
+		log.info("duration={}, distinctWords={}, resourceServerLatency={}ms", RUN_DURATION, DISTINCT_WORDS,
+				RESOURCE_SERVER_LATENCY_MILLIS);
+		for (int lookupsPerSecond : LOOKUPS_PER_SECOND) {
+			Result unbatched = run(lookupsPerSecond, word -> secretWordsClient.lookUpSecretWords(Set.of(word)));
+			Result batched = run(lookupsPerSecond, batcher(windowed)::load);
+			Result batchedFlushOnIdle = run(lookupsPerSecond, batcher(flushOnIdle)::load);
+			log.info("lookups/s={}, lookups={}", lookupsPerSecond, lookupsPerSecond * RUN_DURATION.toSeconds());
+			log.info("  unbatched:     {}", unbatched);
+			log.info("  window 10ms:   {}", batched);
+			log.info("  flush on idle: {}", batchedFlushOnIdle);
+			assertThat(batched.requests).isLessThanOrEqualTo(unbatched.requests);
+			assertThat(batchedFlushOnIdle.requests).isLessThanOrEqualTo(unbatched.requests);
+		}
+	}
+
+	private MicroBatcher<String, Boolean> batcher(MicroBatchConfig config) {
+		// @formatter:off
+		return new MicroBatcher<>("load-test", config,
+				words -> secretWordsClient.lookUpSecretWords(words)
+						.map(secretWords -> secretWords.stream().collect(Collectors.toMap(Function.identity(), word -> true))),
+				new SimpleMeterRegistry());
+		// @formatter:on
+	}
+
+	/**
+	 * Issues lookups of random words at the given rate, one tick per millisecond. Failed
+	 * lookups, e.g. rejected because the connection pool has too many pending
+	 * acquisitions, are counted rather than ending the run
+	 */
+	private static Result run(int lookupsPerSecond, Function<String, Mono<?>> lookup) {
+		int requestsBefore = mockWebServer.getRequestCount();
+		AtomicLong failed = new AtomicLong();
+		long ticks = RUN_DURATION.toMillis();
+		// @formatter:off
+		Flux.interval(Duration.ofMillis(1))
+				.take(ticks)
+				.flatMap(tick -> Flux.range(0, lookupsForTick(tick, lookupsPerSecond)))
+				.flatMap(i -> lookup.apply("word-" + (int) (Math.random() * DISTINCT_WORDS))
+						.onErrorResume(e -> {
+							failed.incrementAndGet();
+							return Mono.empty();
+						}), Integer.MAX_VALUE)
+				.blockLast(RUN_DURATION.plusSeconds(30));
+		// @formatter:on
+		return new Result(mockWebServer.getRequestCount() - requestsBefore, failed.get());
+	}
+
+	/**
+	 * Spreads the lookups of a second evenly over its milliseconds
+	 */
+	private static int lookupsForTick(long tick, int lookupsPerSecond) {
+		return (int) ((tick + 1) * lookupsPerSecond / 1000 - tick * lookupsPerSecond / 1000);
+	}
+
+	private static final class Result {
+
+		private final long requests;
+
+		private final long failedLookups;
+
+		private Result(long requests, long failedLookups) {
+			this.requests = requests;
+			this.failedLookups = failedLookups;
+		}
+
+		@Override
+		public String toString() {
+			return "requests=" + requests + ", failedLookups=" + failedLookups;
+		}
+
+	}
+
+}
@@ -0,0 +1,182 @@
+package com.davidagood.spring.oauth.clientcredentials;
+
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.SocketPolicy;
+import org.hamcrest.Matcher;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static com.davidagood.spring.oauth.clientcredentials.TestUtil.createJsonResponse;
+import static com.davidagood.spring.oauth.clientcredentials.TestUtil.createTokenResponse;
+import static com.davidagood.spring.oauth.clientcredentials.TestUtil.getFreePort;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.hamcrest.Matchers.startsWith;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+// A single connection, so a body which is not released would block every later request
+@SpringBootTest(properties = { "http-client.pool.max-connections=1", "http-client.pool.pending-acquire-timeout=2s" })
+@AutoConfigureMockMvc
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+class PassthroughIT {
+
+	private static final int MOCK_SERVER_PORT = getFreePort();
+
+	private static MockWebServer mockWebServer;
+
+	@Autowired
+	MockMvc mockMvc;
+
+	@Autowired
+	RejectingTaskExecutor taskExecutor;
+
+	@DynamicPropertySource
+	static void properties(DynamicPropertyRegistry r) {
+		r.add("secret-words-client.url", () -> "http://localhost:" + MOCK_SERVER_PORT);
+		r.add("spring.security.oauth2.client.provider.my-client-provider.token-uri",
+				() -> "http://localhost:" + MOCK_SERVER_PORT);
+	}
+
+	@BeforeEach
+	void setUp() throws IOException {
+		mockWebServer = new MockWebServer();
+		mockWebServer.start(MOCK_SERVER_PORT);
+	}
+
+	@AfterEach
+	void tearDown() throws IOException {
+		mockWebServer.close();
+	}
+
+	@Test
+	void forwardsTheWordsAsReceivedWithCreatedAt() throws Exception {
+		mockWebServer.enqueue(createTokenResponse("dummy-access-token", 3600));
+		mockWebServer.enqueue(createJsonResponse("[ \"speakers\", \"keyboard\" ]"));
+
+		MvcResult asyncResult = mockMvc.perform(get("/api/words/passthrough")).andExpect(request().asyncStarted())
+				.andReturn();
+		mockMvc.perform(asyncDispatch(asyncResult)).andExpect(status().isOk())
+				.andExpect(content().contentTypeCompatibleWith(MediaType.APPLICATION_JSON))
+				.andExpect(content().string(startsWithWords("[ \"speakers\", \"keyboard\" ]")))
+				.andExpect(jsonPath("$.createdAt").isString());
+	}
+
+	@Test
+	void errorResponseIsInternalServerError() throws Exception {
+		mockWebServer.enqueue(createTokenResponse("dummy-access-token", 3600));
+		mockWebServer.enqueue(new MockResponse().setResponseCode(404));
+
+		mockMvc.perform(get("/api/words/passthrough")).andExpect(status().isInternalServerError());
+	}
+
+	@Test
+	void bodyWhichIsNotJsonIsReleasedWithoutForwarding() throws Exception {
+		mockWebServer.enqueue(createTokenResponse("dummy-access-token", 3600));
+		mockWebServer.enqueue(
+				new MockResponse().setHeader(HttpHeaders.CONTENT_TYPE, MediaType.TEXT_HTML_VALUE).setBody("<html/>"));
+		mockWebServer.enqueue(createJsonResponse("[\"speakers\"]"));
+
+		mockMvc.perform(get("/api/words/passthrough")).andExpect(status().isInternalServerError());
+		assertPassthroughSucceeds("[\"speakers\"]");
+	}
+
+	@Test
+	void bodyFailingHalfwayIsReleased() throws Exception {
+		String words = IntStream.range(0, 50_000).mapToObj(i -> "\"secret-word-" + i + "\"")
+				.collect(Collectors.joining(",", "[", "]"));
+		mockWebServer.enqueue(createTokenResponse("dummy-access-token", 3600));
+		mockWebServer.enqueue(createJsonResponse(words).setSocketPolicy(SocketPolicy.DISCONNECT_DURING_RESPONSE_BODY));
+		mockWebServer.enqueue(createJsonResponse("[\"speakers\"]"));
+
+		MvcResult asyncResult = mockMvc.perform(get("/api/words/passthrough")).andExpect(request().asyncStarted())
+				.andReturn();
+		assertThat(asyncResult.getAsyncResult()).isInstanceOf(Exception.class);
+		assertPassthroughSucceeds("[\"speakers\"]");
+	}
+
+	@Test
+	void bodyWhichIsNeverWrittenIsReleased() throws Exception {
+		String words = IntStream.range(0, 50_000).mapToObj(i -> "\"secret-word-" + i + "\"")
+				.collect(Collectors.joining(",", "[", "]"));
+		mockWebServer.enqueue(createTokenResponse("dummy-access-token", 3600));
+		mockWebServer.enqueue(createJsonResponse(words));
+		mockWebServer.enqueue(createJsonResponse("[\"speakers\"]"));
+
+		taskExecutor.rejecting = true;
+		var passthroughRequest = new AtomicReference<MockHttpServletRequest>();
+		assertThatThrownBy(() -> mockMvc.perform(get("/api/words/passthrough").with(r -> {
+			passthroughRequest.set(r);
+			return r;
+		}))).hasRootCauseInstanceOf(TaskRejectedException.class);
+		// As the container does once the error has been dispatched
+		passthroughRequest.get().getAsyncContext().complete();
+		taskExecutor.rejecting = false;
+		assertPassthroughSucceeds("[\"speakers\"]");
+	}
+
+	private void assertPassthroughSucceeds(String words) throws Exception {
+		MvcResult asyncResult = mockMvc.perform(get("/api/words/passthrough")).andExpect(request().asyncStarted())
+				.andReturn();
+		mockMvc.perform(asyncDispatch(asyncResult)).andExpect(status().isOk())
+				.andExpect(content().string(startsWithWords(words)));
+	}
+
+	private static Matcher<String> startsWithWords(String words) {
+		return startsWith("{\"words\":" + words + ",\"createdAt\":");
+	}
+
+	@TestConfiguration
+	static class TestConfig {
+
+		/**
+		 * Spring MVC writes streaming bodies with the applicationTaskExecutor
+		 */
+		@Bean
+		RejectingTaskExecutor applicationTaskExecutor() {
+			return new RejectingTaskExecutor();
+		}
+
+	}
+
+	static class RejectingTaskExecutor extends SimpleAsyncTaskExecutor {
+
+		volatile boolean rejecting;
+
+		@Override
+		public void execute(Runnable task, long startTimeout) {
+			if (rejecting) {
+				throw new TaskRejectedException("Rejecting every task");
+			}
+			super.execute(task, startTimeout);
+		}
+
+	}
+
+}
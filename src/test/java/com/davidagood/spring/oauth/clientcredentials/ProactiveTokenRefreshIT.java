@@ -0,0 +1,144 @@
+package com.davidagood.spring.oauth.clientcredentials;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.davidagood.spring.oauth.clientcredentials.AuthorizedWebClientConfig.REGISTRATION_ID;
+import static com.davidagood.spring.oauth.clientcredentials.TestUtil.createJsonResponse;
+import static com.davidagood.spring.oauth.clientcredentials.TestUtil.createTokenResponse;
+import static com.davidagood.spring.oauth.clientcredentials.TestUtil.getFreePort;
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest(properties = { "token-refresh.enabled=true", "token-refresh.refresh-fraction=0.5",
+		"token-refresh.check-interval=PT0.2S" })
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+class ProactiveTokenRefreshIT {
+
+	private static final int MOCK_SERVER_PORT = getFreePort();
+
+	private static MockWebServer mockWebServer;
+
+	@Autowired
+	SecretWordsClient secretWordsClient;
+
+	@Autowired
+	AuthorizedClientRefresher authorizedClientRefresher;
+
+	@Autowired
+	UpstreamClients upstreamClients;
+
+	@Autowired
+	MeterRegistry meterRegistry;
+
+	@DynamicPropertySource
+	static void properties(DynamicPropertyRegistry r) {
+		r.add("secret-words-client.url", () -> "http://localhost:" + MOCK_SERVER_PORT);
+		r.add("spring.security.oauth2.client.provider.my-client-provider.token-uri",
+				() -> "http://localhost:" + MOCK_SERVER_PORT);
+		String registration = "spring.security.oauth2.client.registration.inventory-client.";
+		r.add(registration + "provider", () -> "inventory-provider");
+		r.add(registration + "client-id", () -> "inventory-client-id");
+		r.add(registration + "client-secret", () -> "dummy-client-secret");
+		r.add(registration + "client-authentication-method", () -> "post");
+		r.add(registration + "authorization-grant-type", () -> "client_credentials");
+		r.add("spring.security.oauth2.client.provider.inventory-provider.token-uri",
+				() -> "http://localhost:" + MOCK_SERVER_PORT + "/inventory/token");
+		r.add("upstreams.registrations.inventory.registration-id", () -> "inventory-client");
+		r.add("upstreams.registrations.inventory.url",
+				() -> "http://localhost:" + MOCK_SERVER_PORT + "/inventory/words");
+	}
+
+	@BeforeEach
+	void setUp() throws IOException {
+		mockWebServer = new MockWebServer();
+		mockWebServer.start(MOCK_SERVER_PORT);
+	}
+
+	@AfterEach
+	void tearDown() throws IOException {
+		mockWebServer.close();
+	}
+
+	@Test
+	void tokenIsRenewedInBackgroundBeforeExpiry() throws Exception {
+		// With a refresh fraction of 0.5 the short-lived first token is renewed in the
+		// background one second after it was issued
+		mockWebServer.enqueue(createTokenResponse("first-token", 2));
+		mockWebServer.enqueue(createJsonResponse("[\"speakers\"]"));
+		mockWebServer.enqueue(createTokenResponse("second-token", 3600));
+		mockWebServer.enqueue(createJsonResponse("[\"keyboard\"]"));
+
+		assertThat(secretWordsClient.getSecretWords()).containsExactly("speakers");
+		mockWebServer.takeRequest();
+		mockWebServer.takeRequest();
+
+		RecordedRequest backgroundGrantRequest = mockWebServer.takeRequest(5, TimeUnit.SECONDS);
+		assertThat(backgroundGrantRequest).isNotNull();
+		assertThat(backgroundGrantRequest.getHeader(HttpHeaders.AUTHORIZATION)).isNull();
+
+		Duration leadTime = awaitLastRefreshLeadTime(REGISTRATION_ID);
+		assertThat(leadTime).isNotNull().isPositive().isLessThanOrEqualTo(Duration.ofSeconds(1));
+		assertThat(meterRegistry.get("oauth2.token.refresh.lead.time").tag("clientRegistrationId", REGISTRATION_ID)
+				.gauge().value()).isEqualTo(leadTime.toMillis() / 1000.0);
+
+		assertThat(secretWordsClient.getSecretWords()).containsExactly("keyboard");
+		RecordedRequest resourceServerRequest = mockWebServer.takeRequest();
+		assertThat(resourceServerRequest.getHeader(HttpHeaders.AUTHORIZATION)).isEqualTo("Bearer second-token");
+	}
+
+	@Test
+	void upstreamTokenIsRenewedInBackgroundBeforeExpiry() throws Exception {
+		AtomicInteger tokenRequests = new AtomicInteger();
+		mockWebServer.setDispatcher(new Dispatcher() {
+			@Override
+			public MockResponse dispatch(RecordedRequest request) {
+				if (request.getPath().equals("/inventory/token")) {
+					int n = tokenRequests.incrementAndGet();
+					return createTokenResponse("inventory-token-" + n, n == 1 ? 2 : 3600);
+				}
+				return createJsonResponse("[\"inventory-word\"]");
+			}
+		});
+
+		assertThat(upstreamClients.get("inventory").orElseThrow().getSecretWords().block())
+				.containsExactly("inventory-word");
+
+		Duration leadTime = awaitLastRefreshLeadTime("inventory-client");
+		assertThat(leadTime).isNotNull().isPositive().isLessThanOrEqualTo(Duration.ofSeconds(1));
+		assertThat(tokenRequests).hasValue(2);
+		assertThat(meterRegistry.get("oauth2.token.refresh.lead.time").tag("clientRegistrationId", "inventory-client")
+				.gauge().value()).isEqualTo(leadTime.toMillis() / 1000.0);
+		assertThat(authorizedClientRefresher.getLastRefreshLeadTime(REGISTRATION_ID)).isNull();
+	}
+
+	/*
+	 * The grant request reaching the mock server does not mean its response has been
+	 * processed yet
+	 */
+	private Duration awaitLastRefreshLeadTime(String registrationId) throws InterruptedException {
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+		while (authorizedClientRefresher.getLastRefreshLeadTime(registrationId) == null
+				&& System.nanoTime() < deadline) {
+			Thread.sleep(50);
+		}
+		return authorizedClientRefresher.getLastRefreshLeadTime(registrationId);
+	}
+
+}
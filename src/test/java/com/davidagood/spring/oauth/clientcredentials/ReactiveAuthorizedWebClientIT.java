@@ -0,0 +1,133 @@
+package com.davidagood.spring.oauth.clientcredentials;
+
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.stubbing.Answer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.SpyBean;
+import org.springframework.http.HttpHeaders;
+import org.springframework.security.oauth2.client.OAuth2AuthorizationFailureHandler;
+import org.springframework.security.oauth2.client.OAuth2AuthorizationSuccessHandler;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static com.davidagood.spring.oauth.clientcredentials.TestUtil.createJsonResponse;
+import static com.davidagood.spring.oauth.clientcredentials.TestUtil.createTokenResponse;
+import static com.davidagood.spring.oauth.clientcredentials.TestUtil.getFreePort;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+class ReactiveAuthorizedWebClientIT {
+
+	private static final int MOCK_SERVER_PORT = getFreePort();
+
+	private static MockWebServer mockWebServer;
+
+	@Autowired
+	MockMvc mockMvc;
+
+	@SpyBean
+	@Qualifier("authorizationServerAuthorizationSuccessHandler")
+	OAuth2AuthorizationSuccessHandler authorizationServerAuthorizationSuccessHandler;
+
+	@SpyBean
+	@Qualifier("resourceServerAuthorizationFailureHandler")
+	OAuth2AuthorizationFailureHandler resourceServerAuthorizationFailureHandler;
+
+	@DynamicPropertySource
+	static void properties(DynamicPropertyRegistry r) {
+		r.add("secret-words-client.url", () -> "http://localhost:" + MOCK_SERVER_PORT);
+		r.add("spring.security.oauth2.client.provider.my-client-provider.token-uri",
+				() -> "http://localhost:" + MOCK_SERVER_PORT);
+	}
+
+	@BeforeEach
+	void setUp() throws IOException {
+		mockWebServer = new MockWebServer();
+		mockWebServer.start(MOCK_SERVER_PORT);
+	}
+
+	@AfterEach
+	void tearDown() throws IOException {
+		mockWebServer.close();
+	}
+
+	@Test
+	void reactiveAndBlockingEndpointsShareTheAuthorizedClient() throws Exception {
+		mockWebServer.enqueue(createTokenResponse("dummy-access-token", 3600));
+		mockWebServer.enqueue(createJsonResponse("[\"speakers\",\"keyboard\"]"));
+		mockWebServer.enqueue(createJsonResponse("[\"speakers\",\"keyboard\"]"));
+
+		MvcResult asyncResult = mockMvc.perform(get("/api/words/reactive")).andExpect(request().asyncStarted())
+				.andReturn();
+		mockMvc.perform(asyncDispatch(asyncResult)).andExpect(status().isOk())
+				.andExpect(content().json("{\"words\":[\"speakers\",\"keyboard\"]}"));
+
+		mockMvc.perform(get("/api/words")).andExpect(status().isOk())
+				.andExpect(content().json("{\"words\":[\"speakers\",\"keyboard\"]}"));
+
+		mockWebServer.takeRequest();
+		RecordedRequest reactiveResourceServerRequest = mockWebServer.takeRequest();
+		assertThat(reactiveResourceServerRequest.getHeader(HttpHeaders.AUTHORIZATION))
+				.isEqualTo("Bearer dummy-access-token");
+		RecordedRequest blockingResourceServerRequest = mockWebServer.takeRequest();
+		assertThat(blockingResourceServerRequest.getHeader(HttpHeaders.AUTHORIZATION))
+				.isEqualTo("Bearer dummy-access-token");
+		assertThat(mockWebServer.getRequestCount()).isEqualTo(3);
+	}
+
+	@Test
+	void reactiveEndpointReturnsServerErrorWhenUnauthorized() throws Exception {
+		mockWebServer.enqueue(createTokenResponse("dummy-access-token", 3600));
+		mockWebServer.enqueue(new MockResponse().setResponseCode(401));
+
+		MvcResult asyncResult = mockMvc.perform(get("/api/words/reactive")).andExpect(request().asyncStarted())
+				.andReturn();
+		mockMvc.perform(asyncDispatch(asyncResult)).andExpect(status().isInternalServerError());
+	}
+
+	@Test
+	void authorizedClientIsSavedAndRemovedOffTheEventLoop() throws Exception {
+		List<String> handlerThreads = new CopyOnWriteArrayList<>();
+		Answer<?> recordThread = invocation -> {
+			handlerThreads.add(Thread.currentThread().getName());
+			return invocation.callRealMethod();
+		};
+		doAnswer(recordThread).when(authorizationServerAuthorizationSuccessHandler).onAuthorizationSuccess(any(), any(),
+				any());
+		doAnswer(recordThread).when(resourceServerAuthorizationFailureHandler).onAuthorizationFailure(any(), any(),
+				any());
+		mockWebServer.enqueue(createTokenResponse("dummy-access-token", 3600));
+		mockWebServer.enqueue(new MockResponse().setResponseCode(401));
+
+		MvcResult asyncResult = mockMvc.perform(get("/api/words/reactive")).andExpect(request().asyncStarted())
+				.andReturn();
+		mockMvc.perform(asyncDispatch(asyncResult)).andExpect(status().isInternalServerError());
+
+		assertThat(handlerThreads).hasSize(2).allSatisfy(thread -> assertThat(thread).startsWith("boundedElastic"));
+	}
+
+}
@@ -0,0 +1,187 @@
+package com.davidagood.spring.oauth.clientcredentials;
+
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.SocketPolicy;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.security.oauth2.client.ClientAuthorizationException;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import static com.davidagood.spring.oauth.clientcredentials.TestUtil.createJsonResponse;
+import static com.davidagood.spring.oauth.clientcredentials.TestUtil.createTokenResponse;
+import static com.davidagood.spring.oauth.clientcredentials.TestUtil.getFreePort;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.springframework.http.HttpHeaders.CONTENT_TYPE;
+import static org.springframework.http.MediaType.APPLICATION_JSON_VALUE;
+
+@SpringBootTest(properties = { "secret-words-client.request.timeout=1s",
+		"secret-words-client.request.retry.max-retries=2", "secret-words-client.request.retry.first-backoff=10ms",
+		"secret-words-client.token-grant.retry.max-retries=2",
+		"secret-words-client.token-grant.retry.first-backoff=10ms", "secret-words-client.circuit-breaker.enabled=true",
+		"secret-words-client.circuit-breaker.fallback-to-last-known-good=true",
+		"secret-words-client.circuit-breaker.sliding-window-size=4",
+		"secret-words-client.circuit-breaker.minimum-number-of-calls=4",
+		"secret-words-client.circuit-breaker.wait-duration-in-open-state=1s" })
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+class ResilienceIT {
+
+	private static final int MOCK_SERVER_PORT = getFreePort();
+
+	private static MockWebServer mockWebServer;
+
+	@Autowired
+	SecretWordsClient secretWordsClient;
+
+	@DynamicPropertySource
+	static void properties(DynamicPropertyRegistry r) {
+		r.add("secret-words-client.url", () -> "http://localhost:" + MOCK_SERVER_PORT);
+		r.add("spring.security.oauth2.client.provider.my-client-provider.token-uri",
+				() -> "http://localhost:" + MOCK_SERVER_PORT);
+	}
+
+	@BeforeEach
+	void setUp() throws IOException {
+		mockWebServer = new MockWebServer();
+		mockWebServer.start(MOCK_SERVER_PORT);
+	}
+
+	@AfterEach
+	void tearDown() throws IOException {
+		mockWebServer.close();
+	}
+
+	@Test
+	void transientResourceServerErrorsAreRetried() throws Exception {
+		mockWebServer.enqueue(createTokenResponse("dummy-access-token", 3600));
+		mockWebServer.enqueue(new MockResponse().setResponseCode(503));
+		mockWebServer.enqueue(new MockResponse().setSocketPolicy(SocketPolicy.DISCONNECT_AT_START));
+		mockWebServer.enqueue(createJsonResponse("[\"speakers\"]"));
+
+		assertThat(secretWordsClient.getSecretWords()).containsExactly("speakers");
+		assertThat(mockWebServer.getRequestCount()).isEqualTo(4);
+	}
+
+	@Test
+	void grantRequestOutlivesTimedOutAttemptAndIsSharedWithTheRetry() throws Exception {
+		mockWebServer
+				.enqueue(createTokenResponse("dummy-access-token", 3600).setHeadersDelay(1200, TimeUnit.MILLISECONDS));
+		mockWebServer.enqueue(createJsonResponse("[\"speakers\"]"));
+
+		assertThat(secretWordsClient.getSecretWords()).containsExactly("speakers");
+		assertThat(mockWebServer.getRequestCount()).isEqualTo(2);
+	}
+
+	@Test
+	void clientErrorsAreNotRetried() {
+		mockWebServer.enqueue(createTokenResponse("dummy-access-token", 3600));
+		mockWebServer.enqueue(new MockResponse().setResponseCode(404));
+
+		assertThatThrownBy(() -> secretWordsClient.getSecretWordsAsync().block())
+				.isInstanceOf(SecretWordsRequestException.class).hasMessageContaining("status=404");
+		assertThat(mockWebServer.getRequestCount()).isEqualTo(2);
+	}
+
+	@Test
+	void notImplementedIsNotRetried() {
+		mockWebServer.enqueue(createTokenResponse("dummy-access-token", 3600));
+		mockWebServer.enqueue(new MockResponse().setResponseCode(501));
+
+		assertThatThrownBy(() -> secretWordsClient.getSecretWords()).isInstanceOf(SecretWordsRequestException.class)
+				.hasMessageContaining("status=501");
+		assertThat(mockWebServer.getRequestCount()).isEqualTo(2);
+	}
+
+	@Test
+	void hungResourceServerTimesOut() {
+		mockWebServer.enqueue(createTokenResponse("dummy-access-token", 3600));
+		for (int i = 0; i < 3; i++) {
+			mockWebServer.enqueue(createJsonResponse("[\"speakers\"]").setHeadersDelay(3, TimeUnit.SECONDS));
+		}
+
+		assertThatThrownBy(() -> secretWordsClient.getSecretWords()).isInstanceOf(SecretWordsRequestException.class)
+				.hasMessageContaining("timed out");
+		assertThat(mockWebServer.getRequestCount()).isEqualTo(4);
+	}
+
+	@Test
+	void temporarilyUnavailableTokenGrantIsRetried() throws Exception {
+		mockWebServer.enqueue(new MockResponse().setResponseCode(503).setHeader(CONTENT_TYPE, APPLICATION_JSON_VALUE)
+				.setBody("{\"error\":\"temporarily_unavailable\"}"));
+		mockWebServer.enqueue(createTokenResponse("dummy-access-token", 3600));
+		mockWebServer.enqueue(createJsonResponse("[\"speakers\"]"));
+
+		assertThat(secretWordsClient.getSecretWords()).containsExactly("speakers");
+		assertThat(mockWebServer.getRequestCount()).isEqualTo(3);
+	}
+
+	@Test
+	void bareServiceUnavailableTokenGrantIsRetried() throws Exception {
+		mockWebServer.enqueue(new MockResponse().setResponseCode(503));
+		mockWebServer.enqueue(createTokenResponse("dummy-access-token", 3600));
+		mockWebServer.enqueue(createJsonResponse("[\"speakers\"]"));
+
+		assertThat(secretWordsClient.getSecretWords()).containsExactly("speakers");
+		assertThat(mockWebServer.getRequestCount()).isEqualTo(3);
+	}
+
+	@Test
+	void invalidTokenGrantResponseIsNotRetried() {
+		mockWebServer.enqueue(new MockResponse().setResponseCode(200).setBody("not a token response"));
+
+		assertThatThrownBy(() -> secretWordsClient.getSecretWords()).isInstanceOf(ClientAuthorizationException.class)
+				.hasMessageContaining("invalid_token_response");
+		assertThat(mockWebServer.getRequestCount()).isEqualTo(1);
+	}
+
+	@Test
+	void openCircuitBreakerServesLastKnownGoodWordsUntilTrialCallSucceeds() throws Exception {
+		mockWebServer.enqueue(createTokenResponse("dummy-access-token", 3600));
+		mockWebServer.enqueue(createJsonResponse("[\"speakers\"]"));
+		for (int i = 0; i < 3; i++) {
+			mockWebServer.enqueue(new MockResponse().setResponseCode(500));
+		}
+		assertThat(secretWordsClient.getSecretWords()).containsExactly("speakers");
+		assertThatThrownBy(() -> secretWordsClient.getSecretWords()).isInstanceOf(SecretWordsRequestException.class)
+				.hasMessageContaining("status=500");
+		assertThat(mockWebServer.getRequestCount()).isEqualTo(5);
+
+		assertThat(secretWordsClient.getSecretWords()).containsExactly("speakers");
+		assertThat(secretWordsClient.getSecretWordsAsync().block()).containsExactly("speakers");
+		assertThat(mockWebServer.getRequestCount()).isEqualTo(5);
+
+		Thread.sleep(1100);
+		mockWebServer.enqueue(createJsonResponse("[\"keyboard\"]"));
+		assertThat(secretWordsClient.getSecretWords()).containsExactly("keyboard");
+		mockWebServer.enqueue(createJsonResponse("[\"mouse\"]"));
+		assertThat(secretWordsClient.getSecretWordsAsync().block()).containsExactly("mouse");
+		assertThat(mockWebServer.getRequestCount()).isEqualTo(7);
+	}
+
+	@Test
+	void openCircuitBreakerStopsRetriesAndFailsFastWithoutLastKnownGoodWords() {
+		mockWebServer.enqueue(createTokenResponse("dummy-access-token", 3600));
+		for (int i = 0; i < 4; i++) {
+			mockWebServer.enqueue(new MockResponse().setResponseCode(500));
+		}
+		assertThatThrownBy(() -> secretWordsClient.getSecretWords()).isInstanceOf(SecretWordsRequestException.class)
+				.hasMessageContaining("status=500");
+
+		assertThatThrownBy(() -> secretWordsClient.getSecretWords()).isInstanceOf(SecretWordsRequestException.class)
+				.hasMessageContaining("Circuit breaker secret-words-client is open");
+		assertThatThrownBy(() -> secretWordsClient.getSecretWordsAsync().block())
+				.isInstanceOf(SecretWordsRequestException.class)
+				.hasMessageContaining("Circuit breaker secret-words-client is open");
+		assertThat(mockWebServer.getRequestCount()).isEqualTo(5);
+	}
+
+}
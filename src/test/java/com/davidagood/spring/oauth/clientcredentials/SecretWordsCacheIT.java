@@ -0,0 +1,87 @@
+package com.davidagood.spring.oauth.clientcredentials;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import okhttp3.mockwebserver.MockWebServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import static com.davidagood.spring.oauth.clientcredentials.TestUtil.createJsonResponse;
+import static com.davidagood.spring.oauth.clientcredentials.TestUtil.createTokenResponse;
+import static com.davidagood.spring.oauth.clientcredentials.TestUtil.getFreePort;
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest(properties = { "secret-words-cache.enabled=true", "secret-words-cache.refresh-after=500ms",
+		"secret-words-cache.ttl=1m" })
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+class SecretWordsCacheIT {
+
+	private static final int MOCK_SERVER_PORT = getFreePort();
+
+	private static MockWebServer mockWebServer;
+
+	@Autowired
+	SecretWordsCache secretWordsCache;
+
+	@Autowired
+	MeterRegistry meterRegistry;
+
+	@DynamicPropertySource
+	static void properties(DynamicPropertyRegistry r) {
+		r.add("secret-words-client.url", () -> "http://localhost:" + MOCK_SERVER_PORT);
+		r.add("spring.security.oauth2.client.provider.my-client-provider.token-uri",
+				() -> "http://localhost:" + MOCK_SERVER_PORT);
+	}
+
+	@BeforeEach
+	void setUp() throws IOException {
+		mockWebServer = new MockWebServer();
+		mockWebServer.start(MOCK_SERVER_PORT);
+	}
+
+	@AfterEach
+	void tearDown() throws IOException {
+		mockWebServer.close();
+	}
+
+	@Test
+	void servesCachedWordsAndRevalidatesInBackground() throws Exception {
+		mockWebServer.enqueue(createTokenResponse("dummy-access-token", 3600));
+		mockWebServer.enqueue(createJsonResponse("[\"speakers\"]"));
+		mockWebServer.enqueue(createJsonResponse("[\"keyboard\"]"));
+
+		assertThat(secretWordsCache.getSecretWords()).containsExactly("speakers");
+		assertThat(secretWordsCache.getSecretWords()).containsExactly("speakers");
+		assertThat(mockWebServer.getRequestCount()).isEqualTo(2);
+
+		Thread.sleep(600);
+		// Stale entry is served immediately while it is being refreshed
+		assertThat(secretWordsCache.getSecretWords()).containsExactly("speakers");
+		mockWebServer.takeRequest();
+		mockWebServer.takeRequest();
+		assertThat(mockWebServer.takeRequest(5, TimeUnit.SECONDS)).isNotNull();
+		awaitWords("keyboard");
+
+		assertThat(meterRegistry.get("cache.gets").tag("cache", "secret-words").tag("result", "hit").functionCounter()
+				.count()).isGreaterThanOrEqualTo(2);
+		assertThat(meterRegistry.get("cache.gets").tag("cache", "secret-words").tag("result", "miss").functionCounter()
+				.count()).isEqualTo(1);
+	}
+
+	private void awaitWords(String expected) throws Exception {
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+		while (!secretWordsCache.getSecretWords().contains(expected) && System.nanoTime() < deadline) {
+			Thread.sleep(50);
+		}
+		assertThat(secretWordsCache.getSecretWords()).containsExactly(expected);
+	}
+
+}
@@ -0,0 +1,247 @@
+package com.davidagood.spring.oauth.clientcredentials;
+
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.http.HttpHeaders;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.io.IOException;
+import java.sql.Timestamp;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.davidagood.spring.oauth.clientcredentials.TestUtil.createJsonResponse;
+import static com.davidagood.spring.oauth.clientcredentials.TestUtil.createTokenResponse;
+import static com.davidagood.spring.oauth.clientcredentials.TestUtil.getFreePort;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * The test's application context is one node, a second context started by the test is
+ * another, and both share an in-memory H2 database
+ */
+@SpringBootTest
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+class SharedTokenStoreIT {
+
+	private static final int MOCK_SERVER_PORT = getFreePort();
+
+	private static final String DATABASE_URL = "jdbc:h2:mem:shared-token-store;DB_CLOSE_DELAY=-1";
+
+	private static final int CALLERS_PER_NODE = 5;
+
+	private static MockWebServer mockWebServer;
+
+	private final AtomicInteger tokenRequestCount = new AtomicInteger();
+
+	private volatile boolean unauthorized;
+
+	/**
+	 * Answered with 401 by the resource server
+	 */
+	private volatile String rejectedAccessToken;
+
+	private ConfigurableApplicationContext otherNode;
+
+	@Autowired
+	SecretWordsClient secretWordsClient;
+
+	@Autowired
+	JdbcTemplate jdbcTemplate;
+
+	@DynamicPropertySource
+	static void properties(DynamicPropertyRegistry r) {
+		r.add("secret-words-client.url", () -> "http://localhost:" + MOCK_SERVER_PORT + "/api/words");
+		r.add("spring.security.oauth2.client.provider.my-client-provider.token-uri",
+				() -> "http://localhost:" + MOCK_SERVER_PORT + "/oauth/token");
+		r.add("token-store.type", () -> "jdbc");
+		r.add("spring.datasource.url", () -> DATABASE_URL);
+		r.add("spring.datasource.type", () -> "org.springframework.jdbc.datasource.DriverManagerDataSource");
+		r.add("spring.datasource.initialization-mode", () -> "always");
+		r.add("spring.datasource.schema",
+				() -> "classpath:org/springframework/security/oauth2/client/oauth2-client-schema.sql,"
+						+ "classpath:token-store-lock-schema.sql");
+		// The tables outlive the context, the next test method's context finds them
+		r.add("spring.datasource.continue-on-error", () -> "true");
+	}
+
+	@BeforeEach
+	void setUp() throws IOException {
+		jdbcTemplate.update("DELETE FROM oauth2_authorized_client");
+		jdbcTemplate.update("DELETE FROM oauth2_authorized_client_lock");
+		mockWebServer = new MockWebServer();
+		mockWebServer.setDispatcher(new Dispatcher() {
+			@Override
+			public MockResponse dispatch(RecordedRequest request) {
+				if ("/oauth/token".equals(request.getPath())) {
+					int n = tokenRequestCount.incrementAndGet();
+					// Slow enough that both nodes ask for a token while the grant is in
+					// flight
+					return createTokenResponse("shared-access-token-" + n, 3600).setBodyDelay(500,
+							TimeUnit.MILLISECONDS);
+				}
+				if (unauthorized
+						|| ("Bearer " + rejectedAccessToken).equals(request.getHeader(HttpHeaders.AUTHORIZATION))) {
+					return new MockResponse().setResponseCode(401);
+				}
+				return createJsonResponse("[\"speakers\",\"keyboard\"]");
+			}
+		});
+		mockWebServer.start(MOCK_SERVER_PORT);
+		// @formatter:off
+		otherNode = new SpringApplicationBuilder(SpringBootApp.class).run(
+				"--server.port=0",
+				"--secret-words-client.url=http://localhost:" + MOCK_SERVER_PORT + "/api/words",
+				"--spring.security.oauth2.client.provider.my-client-provider.token-uri=http://localhost:"
+						+ MOCK_SERVER_PORT + "/oauth/token",
+				"--token-store.type=jdbc",
+				"--spring.datasource.url=" + DATABASE_URL,
+				"--spring.datasource.type=org.springframework.jdbc.datasource.DriverManagerDataSource",
+				"--spring.datasource.initialization-mode=never");
+		// @formatter:on
+	}
+
+	@AfterEach
+	void tearDown() throws IOException {
+		otherNode.close();
+		mockWebServer.close();
+	}
+
+	@Test
+	void otherNodeReusesStoredToken() throws Exception {
+		assertThat(secretWordsClient.getSecretWords()).containsExactly("speakers", "keyboard");
+		assertThat(otherNode.getBean(SecretWordsClient.class).getSecretWords()).containsExactly("speakers", "keyboard");
+
+		assertThat(tokenRequestCount.get()).isEqualTo(1);
+		assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM oauth2_authorized_client", Integer.class))
+				.isEqualTo(1);
+	}
+
+	@Test
+	void concurrentNodesShareOneGrantRequest() throws Exception {
+		SecretWordsClient otherNodeClient = otherNode.getBean(SecretWordsClient.class);
+		ExecutorService executor = Executors.newFixedThreadPool(2 * CALLERS_PER_NODE);
+		try {
+			var startGate = new CountDownLatch(1);
+			List<Future<List<String>>> results = new ArrayList<>();
+			for (int i = 0; i < CALLERS_PER_NODE; i++) {
+				results.add(executor.submit(awaitThenCall(startGate, secretWordsClient)));
+				results.add(executor.submit(awaitThenCall(startGate, otherNodeClient)));
+			}
+			startGate.countDown();
+			for (Future<List<String>> result : results) {
+				assertThat(result.get(10, TimeUnit.SECONDS)).containsExactly("speakers", "keyboard");
+			}
+		}
+		finally {
+			executor.shutdownNow();
+		}
+
+		assertThat(tokenRequestCount.get()).isEqualTo(1);
+	}
+
+	@Test
+	void nearCachedTokenIsUsedWithoutTakingTurns() throws Exception {
+		secretWordsClient.getSecretWords();
+		// Had the request path consulted the store it would find no token and wait for
+		// the
+		// other node to renew it
+		jdbcTemplate.update("DELETE FROM oauth2_authorized_client");
+		jdbcTemplate.update(
+				"INSERT INTO oauth2_authorized_client_lock (lock_name, owner, lease_expires_at) "
+						+ "VALUES (?, 'other-node', ?)",
+				"my-client:anonymousUser", Timestamp.from(Instant.now().plusSeconds(60)));
+
+		assertThat(secretWordsClient.getSecretWords()).containsExactly("speakers", "keyboard");
+		assertThat(secretWordsClient.getSecretWordsAsync().block(Duration.ofSeconds(5))).containsExactly("speakers",
+				"keyboard");
+
+		assertThat(tokenRequestCount.get()).isEqualTo(1);
+	}
+
+	@Test
+	void unauthorizedResponseRemovesTokenFromSharedStore() throws Exception {
+		secretWordsClient.getSecretWords();
+		unauthorized = true;
+
+		assertThatThrownBy(() -> otherNode.getBean(SecretWordsClient.class).getSecretWords())
+				.isInstanceOf(AuthorizationException.class);
+
+		assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM oauth2_authorized_client", Integer.class))
+				.isZero();
+	}
+
+	@Test
+	void staleNodeDoesNotRemoveTokenRenewedByAnotherNode() throws Exception {
+		SecretWordsClient otherNodeClient = otherNode.getBean(SecretWordsClient.class);
+		secretWordsClient.getSecretWords();
+		// The other node now holds the first token in its near cache
+		otherNodeClient.getSecretWords();
+		rejectedAccessToken = "shared-access-token-1";
+		assertThatThrownBy(() -> secretWordsClient.getSecretWords()).isInstanceOf(AuthorizationException.class);
+		assertThat(secretWordsClient.getSecretWords()).containsExactly("speakers", "keyboard");
+
+		assertThatThrownBy(otherNodeClient::getSecretWords).isInstanceOf(AuthorizationException.class);
+
+		assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM oauth2_authorized_client", Integer.class))
+				.isEqualTo(1);
+		// Having dropped the rejected token, the other node picks up the renewed one
+		assertThat(otherNodeClient.getSecretWords()).containsExactly("speakers", "keyboard");
+		assertThat(tokenRequestCount.get()).isEqualTo(2);
+	}
+
+	@Test
+	void leaseLockExcludesOtherLeasesUntilReleasedOrExpired() {
+		Duration leaseTime = Duration.ofSeconds(30);
+		var nodeA = new JdbcLeaseLock(jdbcTemplate, "node-a");
+		var nodeB = new JdbcLeaseLock(jdbcTemplate, "node-b");
+
+		String leaseA = nodeA.tryAcquire("lock", leaseTime);
+		assertThat(leaseA).startsWith("node-a/");
+		assertThat(nodeB.tryAcquire("lock", leaseTime)).isNull();
+		// Another caller on the same node is excluded too
+		assertThat(nodeA.tryAcquire("lock", leaseTime)).isNull();
+
+		nodeA.release("lock", leaseA);
+		String leaseB = nodeB.tryAcquire("lock", leaseTime);
+		assertThat(leaseB).isNotNull();
+
+		var nodeAAfterLease = new JdbcLeaseLock(jdbcTemplate, "node-a",
+				Clock.offset(Clock.systemUTC(), leaseTime.plusSeconds(1)));
+		String takenOver = nodeAAfterLease.tryAcquire("lock", leaseTime);
+		assertThat(takenOver).isNotNull();
+		// The expired lease no longer releases the lock
+		nodeB.release("lock", leaseB);
+		assertThat(nodeB.tryAcquire("lock", leaseTime)).isNull();
+	}
+
+	private static Callable<List<String>> awaitThenCall(CountDownLatch startGate, SecretWordsClient client) {
+		return () -> {
+			startGate.await();
+			return client.getSecretWords();
+		};
+	}
+
+}
@@ -0,0 +1,106 @@
+package com.davidagood.spring.oauth.clientcredentials;
+
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.davidagood.spring.oauth.clientcredentials.TestUtil.createJsonResponse;
+import static com.davidagood.spring.oauth.clientcredentials.TestUtil.createTokenResponse;
+import static com.davidagood.spring.oauth.clientcredentials.TestUtil.getFreePort;
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+class SingleFlightTokenAcquisitionIT {
+
+	private static final int MOCK_SERVER_PORT = getFreePort();
+
+	private static final int CONCURRENT_CALLERS = 20;
+
+	private static MockWebServer mockWebServer;
+
+	private final AtomicInteger tokenRequestCount = new AtomicInteger();
+
+	@Autowired
+	SecretWordsClient secretWordsClient;
+
+	@DynamicPropertySource
+	static void properties(DynamicPropertyRegistry r) {
+		r.add("secret-words-client.url", () -> "http://localhost:" + MOCK_SERVER_PORT + "/api/words");
+		r.add("spring.security.oauth2.client.provider.my-client-provider.token-uri",
+				() -> "http://localhost:" + MOCK_SERVER_PORT + "/oauth/token");
+	}
+
+	@BeforeEach
+	void setUp() throws IOException {
+		mockWebServer = new MockWebServer();
+		mockWebServer.setDispatcher(new Dispatcher() {
+			@Override
+			public MockResponse dispatch(RecordedRequest request) {
+				if ("/oauth/token".equals(request.getPath())) {
+					tokenRequestCount.incrementAndGet();
+					// Slow enough that every caller arrives while the grant is in flight
+					return createTokenResponse("dummy-access-token", 3600).setBodyDelay(500, TimeUnit.MILLISECONDS);
+				}
+				return createJsonResponse("[\"speakers\",\"keyboard\"]");
+			}
+		});
+		mockWebServer.start(MOCK_SERVER_PORT);
+	}
+
+	@AfterEach
+	void tearDown() throws IOException {
+		mockWebServer.close();
+	}
+
+	@Test
+	void concurrentCallersShareOneGrantRequest() throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(CONCURRENT_CALLERS);
+		try {
+			var startGate = new CountDownLatch(1);
+			List<Callable<List<String>>> callers = new ArrayList<>();
+			for (int i = 0; i < CONCURRENT_CALLERS; i++) {
+				callers.add(() -> {
+					startGate.await();
+					return secretWordsClient.getSecretWords();
+				});
+			}
+			List<Future<List<String>>> results = new ArrayList<>();
+			for (Callable<List<String>> caller : callers) {
+				results.add(executor.submit(caller));
+			}
+			startGate.countDown();
+
+			for (Future<List<String>> result : results) {
+				assertThat(result.get(10, TimeUnit.SECONDS)).containsExactly("speakers", "keyboard");
+			}
+		}
+		finally {
+			executor.shutdownNow();
+		}
+
+		assertThat(tokenRequestCount.get()).isEqualTo(1);
+		assertThat(mockWebServer.getRequestCount()).isEqualTo(CONCURRENT_CALLERS + 1);
+	}
+
+}
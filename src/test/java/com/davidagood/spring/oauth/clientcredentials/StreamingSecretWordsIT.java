@@ -0,0 +1,110 @@
+package com.davidagood.spring.oauth.clientcredentials;
+
+import okhttp3.mockwebserver.MockWebServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+import java.io.IOException;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static com.davidagood.spring.oauth.clientcredentials.TestUtil.createJsonResponse;
+import static com.davidagood.spring.oauth.clientcredentials.TestUtil.createTokenResponse;
+import static com.davidagood.spring.oauth.clientcredentials.TestUtil.getFreePort;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest(properties = "spring.codec.max-in-memory-size=" + StreamingSecretWordsIT.MAX_IN_MEMORY_SIZE)
+@AutoConfigureMockMvc
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+class StreamingSecretWordsIT {
+
+	static final String MAX_IN_MEMORY_SIZE = "64KB";
+
+	private static final int MOCK_SERVER_PORT = getFreePort();
+
+	private static final int LARGE_WORD_COUNT = 250_000;
+
+	private static MockWebServer mockWebServer;
+
+	@Autowired
+	MockMvc mockMvc;
+
+	@Autowired
+	SecretWordsClient secretWordsClient;
+
+	@DynamicPropertySource
+	static void properties(DynamicPropertyRegistry r) {
+		r.add("secret-words-client.url", () -> "http://localhost:" + MOCK_SERVER_PORT);
+		r.add("spring.security.oauth2.client.provider.my-client-provider.token-uri",
+				() -> "http://localhost:" + MOCK_SERVER_PORT);
+	}
+
+	@BeforeEach
+	void setUp() throws IOException {
+		mockWebServer = new MockWebServer();
+		mockWebServer.start(MOCK_SERVER_PORT);
+	}
+
+	@AfterEach
+	void tearDown() throws IOException {
+		mockWebServer.close();
+	}
+
+	@Test
+	void multiMegabyteWordListStreamsWithinBufferLimit() {
+		String largeWordList = IntStream.range(0, LARGE_WORD_COUNT).mapToObj(i -> "\"secret-word-" + i + "\"")
+				.collect(Collectors.joining(",", "[", "]"));
+		assertThat(largeWordList.length()).isGreaterThan(4 * 1024 * 1024);
+
+		mockWebServer.enqueue(createTokenResponse("dummy-access-token", 3600));
+		mockWebServer.enqueue(createJsonResponse(largeWordList));
+		mockWebServer.enqueue(createJsonResponse(largeWordList));
+
+		assertThat(secretWordsClient.streamSecretWords().count().block()).isEqualTo(LARGE_WORD_COUNT);
+
+		// Aggregating the same payload into a list exceeds the limit
+		assertThatThrownBy(() -> secretWordsClient.getSecretWords()).isInstanceOf(SecretWordsRequestException.class)
+				.hasMessageContaining("could not be read").hasMessageContaining("buffer");
+	}
+
+	@Test
+	void responseWhichIsNotAWordArrayIsARequestFailure() {
+		mockWebServer.enqueue(createTokenResponse("dummy-access-token", 3600));
+		mockWebServer.enqueue(createJsonResponse("{\"words\":"));
+		mockWebServer.enqueue(createJsonResponse("{\"words\":"));
+
+		assertThatThrownBy(() -> secretWordsClient.getSecretWordsAsync().block())
+				.isInstanceOf(SecretWordsRequestException.class).hasMessageContaining("could not be read");
+		assertThatThrownBy(() -> secretWordsClient.streamSecretWords().blockLast())
+				.isInstanceOf(SecretWordsRequestException.class).hasMessageContaining("could not be read");
+	}
+
+	@Test
+	void streamEndpointWritesNewlineDelimitedJson() throws Exception {
+		mockWebServer.enqueue(createTokenResponse("dummy-access-token", 3600));
+		mockWebServer.enqueue(createJsonResponse("[\"speakers\",\"keyboard\"]"));
+
+		MvcResult asyncResult = mockMvc.perform(get("/api/words/stream")).andExpect(request().asyncStarted())
+				.andReturn();
+		mockMvc.perform(asyncDispatch(asyncResult)).andExpect(status().isOk())
+				.andExpect(content().contentTypeCompatibleWith(MediaType.APPLICATION_NDJSON))
+				.andExpect(content().string("\"speakers\"\n\"keyboard\"\n"));
+	}
+
+}
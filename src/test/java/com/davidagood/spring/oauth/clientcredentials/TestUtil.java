@@ -1,8 +1,13 @@
 package com.davidagood.spring.oauth.clientcredentials;
 
+import okhttp3.mockwebserver.MockResponse;
+
 import java.io.IOException;
 import java.net.ServerSocket;
 
+import static org.springframework.http.HttpHeaders.CONTENT_TYPE;
+import static org.springframework.http.MediaType.APPLICATION_JSON_VALUE;
+
 public class TestUtil {
 
 	public static int getFreePort() {
@@ -18,4 +23,14 @@ public class TestUtil {
 
 	}
 
+	public static MockResponse createTokenResponse(String accessToken, int expiresInSeconds) {
+		return new MockResponse().setResponseCode(200).setHeader(CONTENT_TYPE, APPLICATION_JSON_VALUE)
+				.setBody(String.format("{\"access_token\":\"%s\",\"token_type\":\"Bearer\",\"expires_in\":%d}",
+						accessToken, expiresInSeconds));
+	}
+
+	public static MockResponse createJsonResponse(String body) {
+		return new MockResponse().setResponseCode(200).setHeader(CONTENT_TYPE, APPLICATION_JSON_VALUE).setBody(body);
+	}
+
 }
@@ -0,0 +1,127 @@
+package com.davidagood.spring.oauth.clientcredentials;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.security.oauth2.client.ClientAuthorizationException;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import static com.davidagood.spring.oauth.clientcredentials.AuthorizedWebClientConfig.REGISTRATION_ID;
+import static com.davidagood.spring.oauth.clientcredentials.AuthorizedWebClientConfig.TOKEN_EVICTIONS_COUNTER;
+import static com.davidagood.spring.oauth.clientcredentials.MeteredReactiveTokenResponseClient.TOKEN_GRANT_TIMER;
+import static com.davidagood.spring.oauth.clientcredentials.TestUtil.createJsonResponse;
+import static com.davidagood.spring.oauth.clientcredentials.TestUtil.createTokenResponse;
+import static com.davidagood.spring.oauth.clientcredentials.TestUtil.getFreePort;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.within;
+
+@SpringBootTest(properties = "secret-words-client.token-grant.timeout=1s")
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+class TokenMetricsIT {
+
+	private static final int MOCK_SERVER_PORT = getFreePort();
+
+	private static final String TOKEN_URI = "http://localhost:" + MOCK_SERVER_PORT + "/oauth/token";
+
+	private static MockWebServer mockWebServer;
+
+	@Autowired
+	SecretWordsClient secretWordsClient;
+
+	@Autowired
+	MeterRegistry meterRegistry;
+
+	@DynamicPropertySource
+	static void properties(DynamicPropertyRegistry r) {
+		r.add("secret-words-client.url", () -> "http://localhost:" + MOCK_SERVER_PORT + "/api/words");
+		r.add("spring.security.oauth2.client.provider.my-client-provider.token-uri", () -> TOKEN_URI);
+	}
+
+	@BeforeEach
+	void setUp() throws IOException {
+		mockWebServer = new MockWebServer();
+		mockWebServer.start(MOCK_SERVER_PORT);
+	}
+
+	@AfterEach
+	void tearDown() throws IOException {
+		mockWebServer.close();
+	}
+
+	@Test
+	void grantIsTimedAndTokenExpiryIsGauged() throws Exception {
+		mockWebServer.enqueue(createTokenResponse("dummy-access-token", 3600));
+		mockWebServer.enqueue(createJsonResponse("[\"speakers\",\"keyboard\"]"));
+
+		assertThat(meterRegistry.get("oauth2.token.time.to.expiry").gauge().value()).isNaN();
+
+		secretWordsClient.getSecretWords();
+
+		// @formatter:off
+		assertThat(meterRegistry.get(TOKEN_GRANT_TIMER)
+				.tags("clientRegistrationId", REGISTRATION_ID, "tokenUri", TOKEN_URI, "outcome", "SUCCESS")
+				.timer().count()).isEqualTo(1);
+		// @formatter:on
+		assertThat(meterRegistry.get("oauth2.token.time.to.expiry").tag("clientRegistrationId", REGISTRATION_ID).gauge()
+				.value()).isCloseTo(3600, within(5.0));
+		assertThat(meterRegistry.get("oauth2.token.age").gauge().value()).isCloseTo(0, within(5.0));
+		assertThat(meterRegistry.get("http.client.requests").tag("status", "200").timers()).hasSize(2);
+	}
+
+	@Test
+	void failedGrantIsTimedWithErrorCode() {
+		mockWebServer.enqueue(new MockResponse().setResponseCode(500));
+
+		assertThatThrownBy(() -> secretWordsClient.getSecretWords()).isInstanceOf(ClientAuthorizationException.class);
+
+		// @formatter:off
+		assertThat(meterRegistry.get(TOKEN_GRANT_TIMER)
+				.tags("outcome", "ERROR", "error", "server_error")
+				.timer().count()).isEqualTo(1);
+		// @formatter:on
+	}
+
+	@Test
+	void timedOutGrantIsTimedAsCancelled() {
+		mockWebServer.enqueue(createTokenResponse("dummy-access-token", 3600).setHeadersDelay(3, TimeUnit.SECONDS));
+
+		assertThatThrownBy(() -> secretWordsClient.getSecretWords()).isInstanceOf(ClientAuthorizationException.class);
+
+		// @formatter:off
+		Timer cancelled = meterRegistry.get(TOKEN_GRANT_TIMER)
+				.tags("clientRegistrationId", REGISTRATION_ID, "outcome", "CANCELLED")
+				.timer();
+		// @formatter:on
+		assertThat(cancelled.count()).isEqualTo(1);
+		assertThat(cancelled.totalTime(TimeUnit.MILLISECONDS)).isGreaterThanOrEqualTo(1000);
+	}
+
+	@Test
+	void unauthorizedResourceResponseEvictsTokenAndIsCounted() throws Exception {
+		mockWebServer.enqueue(createTokenResponse("dummy-access-token", 3600));
+		mockWebServer.enqueue(new MockResponse().setResponseCode(401));
+
+		assertThatThrownBy(() -> secretWordsClient.getSecretWords()).isInstanceOf(AuthorizationException.class);
+
+		// @formatter:off
+		assertThat(meterRegistry.get(TOKEN_EVICTIONS_COUNTER)
+				.tags("clientRegistrationId", REGISTRATION_ID, "reason", "resource_server_unauthorized")
+				.counter().count()).isEqualTo(1);
+		// @formatter:on
+		assertThat(meterRegistry.get("oauth2.token.time.to.expiry").gauge().value()).isNaN();
+		assertThat(meterRegistry.get("http.client.requests").tag("status", "401").timer().count()).isEqualTo(1);
+	}
+
+}
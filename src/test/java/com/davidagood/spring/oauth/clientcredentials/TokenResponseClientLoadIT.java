@@ -0,0 +1,137 @@
+package com.davidagood.spring.oauth.clientcredentials;
+
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.security.oauth2.client.endpoint.DefaultClientCredentialsTokenResponseClient;
+import org.springframework.security.oauth2.client.endpoint.OAuth2AccessTokenResponseClient;
+import org.springframework.security.oauth2.client.endpoint.OAuth2ClientCredentialsGrantRequest;
+import org.springframework.security.oauth2.client.registration.ClientRegistrationRepository;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static com.davidagood.spring.oauth.clientcredentials.AuthorizedWebClientConfig.REGISTRATION_ID;
+import static com.davidagood.spring.oauth.clientcredentials.TestUtil.createTokenResponse;
+import static com.davidagood.spring.oauth.clientcredentials.TestUtil.getFreePort;
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Measures the latency of concurrent client credentials grant requests made with
+ * DefaultClientCredentialsTokenResponseClient, the previous default, and with the
+ * WebClient based token response client. Run with {@code ./gradlew loadTest}
+ */
+@Tag("load")
+@SpringBootTest
+class TokenResponseClientLoadIT {
+
+	private static final Logger log = LoggerFactory.getLogger(TokenResponseClientLoadIT.class);
+
+	private static final int MOCK_SERVER_PORT = getFreePort();
+
+	private static final int GRANTS = 500;
+
+	private static final int CONCURRENCY = 32;
+
+	private static final long AUTHORIZATION_SERVER_LATENCY_MILLIS = 10;
+
+	private static MockWebServer mockWebServer;
+
+	@Autowired
+	OAuth2AccessTokenResponseClient<OAuth2ClientCredentialsGrantRequest> tokenResponseClient;
+
+	@Autowired
+	ClientRegistrationRepository clientRegistrationRepository;
+
+	@DynamicPropertySource
+	static void properties(DynamicPropertyRegistry r) {
+		r.add("spring.security.oauth2.client.provider.my-client-provider.token-uri",
+				() -> "http://localhost:" + MOCK_SERVER_PORT);
+	}
+
+	@BeforeEach
+	void setUp() throws IOException {
+		mockWebServer = new MockWebServer();
+		mockWebServer.setDispatcher(new Dispatcher() {
+			@Override
+			public MockResponse dispatch(RecordedRequest request) {
+				return createTokenResponse("dummy-access-token", 3600)
+						.setHeadersDelay(AUTHORIZATION_SERVER_LATENCY_MILLIS, TimeUnit.MILLISECONDS);
+			}
+		});
+		mockWebServer.start(MOCK_SERVER_PORT);
+	}
+
+	@AfterEach
+	void tearDown() throws IOException {
+		mockWebServer.close();
+	}
+
+	@Test
+	void compareTokenResponseClients() throws Exception {
+		var grantRequest = new OAuth2ClientCredentialsGrantRequest(
+				clientRegistrationRepository.findByRegistrationId(REGISTRATION_ID));
+		var restTemplateClient = new DefaultClientCredentialsTokenResponseClient();
+
+		// Warm up both clients before measuring
+		measure(restTemplateClient, grantRequest);
+		measure(tokenResponseClient, grantRequest);
+
+		report("RestTemplate (DefaultClientCredentialsTokenResponseClient)", measure(restTemplateClient, grantRequest));
+		report("WebClient (WebClientClientCredentialsTokenResponseClient)", measure(tokenResponseClient, grantRequest));
+	}
+
+	private static long[] measure(OAuth2AccessTokenResponseClient<OAuth2ClientCredentialsGrantRequest> client,
+			OAuth2ClientCredentialsGrantRequest grantRequest) throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(CONCURRENCY);
+		try {
+			List<Future<Long>> latencies = new ArrayList<>();
+			for (int i = 0; i < GRANTS; i++) {
+				latencies.add(executor.submit(() -> {
+					long start = System.nanoTime();
+					assertThat(client.getTokenResponse(grantRequest).getAccessToken().getTokenValue())
+							.isEqualTo("dummy-access-token");
+					return System.nanoTime() - start;
+				}));
+			}
+			long[] nanos = new long[GRANTS];
+			for (int i = 0; i < GRANTS; i++) {
+				nanos[i] = latencies.get(i).get(30, TimeUnit.SECONDS);
+			}
+			Arrays.sort(nanos);
+			return nanos;
+		}
+		finally {
+			executor.shutdownNow();
+		}
+	}
+
+	private static void report(String name, long[] sortedNanos) {
+		log.info("{}: grants={}, concurrency={}, p50={}ms, p90={}ms, p99={}ms, max={}ms", name, GRANTS, CONCURRENCY,
+				millis(sortedNanos, 0.50), millis(sortedNanos, 0.90), millis(sortedNanos, 0.99),
+				millis(sortedNanos, 1.0));
+	}
+
+	private static double millis(long[] sortedNanos, double percentile) {
+		int index = (int) Math.ceil(percentile * sortedNanos.length) - 1;
+		return sortedNanos[Math.max(0, index)] / 1_000_000.0;
+	}
+
+}
@@ -0,0 +1,192 @@
+package com.davidagood.spring.oauth.clientcredentials;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import reactor.core.publisher.Flux;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.davidagood.spring.oauth.clientcredentials.TestUtil.createJsonResponse;
+import static com.davidagood.spring.oauth.clientcredentials.TestUtil.createTokenResponse;
+import static com.davidagood.spring.oauth.clientcredentials.TestUtil.getFreePort;
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest(properties = "unauthorized-retry.enabled=true")
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+class UnauthorizedRetryIT {
+
+	private static final int MOCK_SERVER_PORT = getFreePort();
+
+	private static final int CONCURRENT_CALLERS = 5;
+
+	private static MockWebServer mockWebServer;
+
+	private final AtomicInteger tokenRequestCount = new AtomicInteger();
+
+	private final Set<String> revokedTokens = ConcurrentHashMap.newKeySet();
+
+	private final AtomicInteger rejections = new AtomicInteger();
+
+	/**
+	 * Each 401 is answered this much later than the previous one
+	 */
+	private volatile long rejectionStaggerMillis;
+
+	/**
+	 * When set, 401s are held back until this many requests have been rejected
+	 */
+	private volatile CountDownLatch rejectedRequests;
+
+	@Autowired
+	SecretWordsClient secretWordsClient;
+
+	@Autowired
+	MeterRegistry meterRegistry;
+
+	@DynamicPropertySource
+	static void properties(DynamicPropertyRegistry r) {
+		r.add("secret-words-client.url", () -> "http://localhost:" + MOCK_SERVER_PORT + "/api/words");
+		r.add("spring.security.oauth2.client.provider.my-client-provider.token-uri",
+				() -> "http://localhost:" + MOCK_SERVER_PORT + "/oauth/token");
+	}
+
+	@BeforeEach
+	void setUp() throws IOException {
+		mockWebServer = new MockWebServer();
+		mockWebServer.setDispatcher(new Dispatcher() {
+			@Override
+			public MockResponse dispatch(RecordedRequest request) {
+				if ("/oauth/token".equals(request.getPath())) {
+					return createTokenResponse("token-" + tokenRequestCount.incrementAndGet(), 3600).setBodyDelay(200,
+							TimeUnit.MILLISECONDS);
+				}
+				String token = request.getHeader(HttpHeaders.AUTHORIZATION).substring("Bearer ".length());
+				if (revokedTokens.contains(token)) {
+					awaitRejectedRequests();
+					return new MockResponse().setResponseCode(401).setBodyDelay(200, TimeUnit.MILLISECONDS)
+							.setHeadersDelay(rejections.getAndIncrement() * rejectionStaggerMillis,
+									TimeUnit.MILLISECONDS);
+				}
+				return createJsonResponse("[\"speakers\"]");
+			}
+		});
+		mockWebServer.start(MOCK_SERVER_PORT);
+	}
+
+	private void awaitRejectedRequests() {
+		CountDownLatch latch = rejectedRequests;
+		if (latch == null) {
+			return;
+		}
+		latch.countDown();
+		try {
+			latch.await(5, TimeUnit.SECONDS);
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	@AfterEach
+	void tearDown() throws IOException {
+		mockWebServer.close();
+	}
+
+	@Test
+	void revokedTokenIsReplacedWithinTheSameCall() throws Exception {
+		assertThat(secretWordsClient.getSecretWords()).containsExactly("speakers");
+		revokedTokens.add("token-1");
+
+		assertThat(secretWordsClient.getSecretWords()).containsExactly("speakers");
+
+		assertThat(tokenRequestCount.get()).isEqualTo(2);
+		assertThat(meterRegistry.get("oauth2.token.unauthorized.retries").counter().count()).isEqualTo(1);
+	}
+
+	@Test
+	void revokedTokenIsReplacedWithinTheSameReactiveCall() {
+		assertThat(secretWordsClient.getSecretWordsAsync().block()).containsExactly("speakers");
+		revokedTokens.add("token-1");
+
+		assertThat(secretWordsClient.getSecretWordsAsync().block()).containsExactly("speakers");
+
+		assertThat(tokenRequestCount.get()).isEqualTo(2);
+	}
+
+	@Test
+	void concurrentlyRejectedRequestsShareOneNewToken() throws Exception {
+		assertThat(secretWordsClient.getSecretWords()).containsExactly("speakers");
+		revokedTokens.add("token-1");
+
+		ExecutorService executor = Executors.newFixedThreadPool(CONCURRENT_CALLERS);
+		try {
+			var startGate = new CountDownLatch(1);
+			List<Future<List<String>>> results = new ArrayList<>();
+			for (int i = 0; i < CONCURRENT_CALLERS; i++) {
+				results.add(executor.submit(awaitThenCall(startGate)));
+			}
+			startGate.countDown();
+			for (Future<List<String>> result : results) {
+				assertThat(result.get(10, TimeUnit.SECONDS)).containsExactly("speakers");
+			}
+		}
+		finally {
+			executor.shutdownNow();
+		}
+
+		assertThat(tokenRequestCount.get()).isEqualTo(2);
+	}
+
+	@Test
+	void lateRejectionsOfTheSameTokenDoNotEvictItsReplacement() {
+		assertThat(secretWordsClient.getSecretWordsAsync().block()).containsExactly("speakers");
+		revokedTokens.add("token-1");
+		// All three requests are sent with the revoked token before the first 401
+		// arrives,
+		// the later 401s once the first one's retry has stored a new token
+		rejectedRequests = new CountDownLatch(3);
+		rejectionStaggerMillis = 1000;
+
+		// @formatter:off
+		List<List<String>> results = Flux.range(0, 3)
+				.flatMap(i -> secretWordsClient.getSecretWordsAsync())
+				.collectList()
+				.block(Duration.ofSeconds(10));
+		// @formatter:on
+
+		assertThat(results).hasSize(3).allSatisfy(words -> assertThat(words).containsExactly("speakers"));
+		assertThat(tokenRequestCount.get()).isEqualTo(2);
+	}
+
+	private Callable<List<String>> awaitThenCall(CountDownLatch startGate) {
+		return () -> {
+			startGate.await();
+			return secretWordsClient.getSecretWords();
+		};
+	}
+
+}
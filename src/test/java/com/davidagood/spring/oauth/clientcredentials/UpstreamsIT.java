@@ -0,0 +1,164 @@
+package com.davidagood.spring.oauth.clientcredentials;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.security.oauth2.core.OAuth2AuthorizationException;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static com.davidagood.spring.oauth.clientcredentials.TestUtil.createJsonResponse;
+import static com.davidagood.spring.oauth.clientcredentials.TestUtil.createTokenResponse;
+import static com.davidagood.spring.oauth.clientcredentials.TestUtil.getFreePort;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest(properties = "concurrency-limit.enabled=true")
+@AutoConfigureMockMvc
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+class UpstreamsIT {
+
+	private static final int MOCK_SERVER_PORT = getFreePort();
+
+	private static final Map<String, String> TOKENS_BY_UPSTREAM = Map.of("inventory", "inventory-token", "catalog",
+			"catalog-token");
+
+	private static MockWebServer mockWebServer;
+
+	private final List<String> tokenRequests = new CopyOnWriteArrayList<>();
+
+	/**
+	 * Upstreams whose token endpoint answers their next grant request with a bare 503
+	 */
+	private final Set<String> unavailableTokenEndpoints = ConcurrentHashMap.newKeySet();
+
+	@Autowired
+	MockMvc mockMvc;
+
+	@Autowired
+	MeterRegistry meterRegistry;
+
+	@DynamicPropertySource
+	static void properties(DynamicPropertyRegistry r) {
+		String baseUrl = "http://localhost:" + MOCK_SERVER_PORT;
+		for (String upstream : TOKENS_BY_UPSTREAM.keySet()) {
+			String registration = "spring.security.oauth2.client.registration." + upstream + "-client.";
+			r.add(registration + "provider", () -> upstream + "-provider");
+			r.add(registration + "client-id", () -> upstream + "-client-id");
+			r.add(registration + "client-secret", () -> "dummy-client-secret");
+			r.add(registration + "client-authentication-method", () -> "post");
+			r.add(registration + "authorization-grant-type", () -> "client_credentials");
+			r.add(registration + "scope", () -> upstream + ".read");
+			r.add("spring.security.oauth2.client.provider." + upstream + "-provider.token-uri",
+					() -> baseUrl + "/" + upstream + "/token");
+			r.add("upstreams.registrations." + upstream + ".registration-id", () -> upstream + "-client");
+			r.add("upstreams.registrations." + upstream + ".url", () -> baseUrl + "/" + upstream + "/words");
+		}
+		r.add("upstreams.registrations.catalog.pool.max-connections", () -> "5");
+		r.add("upstreams.registrations.catalog.token-grant.retry.max-retries", () -> "1");
+		r.add("upstreams.registrations.catalog.token-grant.retry.first-backoff", () -> "10ms");
+	}
+
+	@BeforeEach
+	void setUp() throws IOException {
+		mockWebServer = new MockWebServer();
+		mockWebServer.setDispatcher(new Dispatcher() {
+			@Override
+			public MockResponse dispatch(RecordedRequest request) {
+				String upstream = request.getPath().split("/")[1];
+				if (request.getPath().endsWith("/token")) {
+					tokenRequests.add(request.getBody().readUtf8());
+					if (unavailableTokenEndpoints.remove(upstream)) {
+						return new MockResponse().setResponseCode(503);
+					}
+					return createTokenResponse(TOKENS_BY_UPSTREAM.get(upstream), 3600);
+				}
+				if (!("Bearer " + TOKENS_BY_UPSTREAM.get(upstream))
+						.equals(request.getHeader(HttpHeaders.AUTHORIZATION))) {
+					return new MockResponse().setResponseCode(401);
+				}
+				return createJsonResponse("[\"" + upstream + "-word\"]");
+			}
+		});
+		mockWebServer.start(MOCK_SERVER_PORT);
+	}
+
+	@AfterEach
+	void tearDown() throws IOException {
+		mockWebServer.close();
+	}
+
+	@Test
+	void eachUpstreamIsCalledWithTheTokenOfItsOwnRegistration() throws Exception {
+		for (int i = 0; i < 2; i++) {
+			for (String upstream : TOKENS_BY_UPSTREAM.keySet()) {
+				MvcResult asyncResult = mockMvc.perform(get("/api/upstreams/" + upstream + "/words"))
+						.andExpect(request().asyncStarted()).andReturn();
+				mockMvc.perform(asyncDispatch(asyncResult)).andExpect(status().isOk())
+						.andExpect(content().json("{\"words\":[\"" + upstream + "-word\"]}"));
+			}
+		}
+
+		assertThat(tokenRequests).hasSize(2);
+		assertThat(tokenRequests).anySatisfy(body -> assertThat(body).contains("client_id=inventory-client-id"));
+		assertThat(tokenRequests).anySatisfy(body -> assertThat(body).contains("client_id=catalog-client-id"));
+		for (String upstream : TOKENS_BY_UPSTREAM.keySet()) {
+			assertThat(meterRegistry.get(UpstreamClient.UPSTREAM_REQUESTS_TIMER).tag("upstream", upstream)
+					.tag("outcome", "SUCCESS").timer().count()).isEqualTo(2);
+			assertThat(meterRegistry.get("oauth2.token.time.to.expiry")
+					.tag("clientRegistrationId", upstream + "-client").gauge().value()).isPositive();
+		}
+	}
+
+	@Test
+	void grantRequestsAreRetriedAndLimitedPerRegistration() throws Exception {
+		unavailableTokenEndpoints.add("catalog");
+		unavailableTokenEndpoints.add("inventory");
+
+		MvcResult catalog = mockMvc.perform(get("/api/upstreams/catalog/words")).andExpect(request().asyncStarted())
+				.andReturn();
+		mockMvc.perform(asyncDispatch(catalog)).andExpect(status().isOk());
+		MvcResult inventory = mockMvc.perform(get("/api/upstreams/inventory/words")).andExpect(request().asyncStarted())
+				.andReturn();
+		assertThatThrownBy(() -> mockMvc.perform(asyncDispatch(inventory)))
+				.hasRootCauseInstanceOf(OAuth2AuthorizationException.class)
+				.hasMessageContaining("temporarily_unavailable");
+
+		// Only catalog sets retries, the inventory grant fails on its first 503
+		assertThat(tokenRequests).hasSize(3);
+		for (String registrationId : List.of("my-client", "inventory-client", "catalog-client")) {
+			assertThat(meterRegistry.get(AimdConcurrencyLimiter.LIMIT_GAUGE)
+					.tag("name", "token-grant-" + registrationId).gauge().value()).isPositive();
+		}
+	}
+
+	@Test
+	void unknownUpstreamIsNotFound() throws Exception {
+		mockMvc.perform(get("/api/upstreams/unknown/words")).andExpect(status().isNotFound());
+	}
+
+}
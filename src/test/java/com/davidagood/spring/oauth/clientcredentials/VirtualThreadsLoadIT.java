@@ -0,0 +1,168 @@
+package com.davidagood.spring.oauth.clientcredentials;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIf;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.web.server.LocalServerPort;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import static com.davidagood.spring.oauth.clientcredentials.TestUtil.createJsonResponse;
+import static com.davidagood.spring.oauth.clientcredentials.TestUtil.createTokenResponse;
+import static com.davidagood.spring.oauth.clientcredentials.TestUtil.getFreePort;
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Shows that with virtual-threads.enabled the blocking endpoint has far more requests in
+ * flight at the resource server than the servlet container has platform threads, and that
+ * no virtual thread is pinned to its carrier while waiting. Needs Java 21 or later, run
+ * with {@code ./gradlew loadTest -PloadTestJavaVersion=21}
+ */
+@Tag("load")
+@EnabledIf("virtualThreadsSupported")
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+		properties = { "virtual-threads.enabled=true",
+				"server.tomcat.threads.max=" + VirtualThreadsLoadIT.SERVLET_THREADS,
+				"http-client.pool.max-connections=" + VirtualThreadsLoadIT.CONCURRENCY,
+				"logging.level.com.davidagood=warn", "logging.level.okhttp3=warn",
+				"logging.level.com.davidagood.spring.oauth.clientcredentials.VirtualThreadsLoadIT=info" })
+class VirtualThreadsLoadIT {
+
+	static final int SERVLET_THREADS = 8;
+
+	static final int CONCURRENCY = 400;
+
+	private static final Logger log = LoggerFactory.getLogger(VirtualThreadsLoadIT.class);
+
+	private static final int MOCK_SERVER_PORT = getFreePort();
+
+	private static final long RESOURCE_SERVER_LATENCY_MILLIS = 1000;
+
+	private static final String PINNED_EVENT = "jdk.VirtualThreadPinned";
+
+	private static MockWebServer mockWebServer;
+
+	private final AtomicInteger inFlight = new AtomicInteger();
+
+	private final AtomicInteger peakInFlight = new AtomicInteger();
+
+	@LocalServerPort
+	int port;
+
+	static boolean virtualThreadsSupported() {
+		return VirtualThreads.isSupported();
+	}
+
+	@DynamicPropertySource
+	static void properties(DynamicPropertyRegistry r) {
+		r.add("secret-words-client.url", () -> "http://localhost:" + MOCK_SERVER_PORT + "/api/words");
+		r.add("spring.security.oauth2.client.provider.my-client-provider.token-uri",
+				() -> "http://localhost:" + MOCK_SERVER_PORT + "/oauth/token");
+	}
+
+	@BeforeEach
+	void setUp() throws IOException {
+		mockWebServer = new MockWebServer();
+		mockWebServer.setDispatcher(new Dispatcher() {
+			@Override
+			public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+				if ("/oauth/token".equals(request.getPath())) {
+					return createTokenResponse("dummy-access-token", 3600);
+				}
+				// Every connection is dispatched on a thread of its own, so concurrent
+				// requests are counted while they are being delayed
+				peakInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+				try {
+					Thread.sleep(RESOURCE_SERVER_LATENCY_MILLIS);
+				}
+				finally {
+					inFlight.decrementAndGet();
+				}
+				return createJsonResponse("[\"speakers\",\"keyboard\"]");
+			}
+		});
+		mockWebServer.start(MOCK_SERVER_PORT);
+	}
+
+	@AfterEach
+	void tearDown() throws IOException {
+		mockWebServer.close();
+	}
+
+	@Test
+	void blockingEndpointIsNotLimitedByServletThreads() throws IOException {
+		ConnectionProvider connectionProvider = ConnectionProvider.builder("load-generator").maxConnections(CONCURRENCY)
+				.build();
+		WebClient loadGenerator = WebClient.builder()
+				.clientConnector(new ReactorClientHttpConnector(HttpClient.create(connectionProvider)))
+				.baseUrl("http://localhost:" + port).build();
+		try (Recording recording = new Recording()) {
+			// Acquire the token outside of the measurement
+			loadGenerator.get().uri("/api/words").retrieve().toBodilessEntity().block();
+			peakInFlight.set(0);
+			recording.enable(PINNED_EVENT).withThreshold(Duration.ofMillis(20)).withStackTrace();
+			recording.start();
+
+			long start = System.nanoTime();
+			// @formatter:off
+			Long succeeded = Flux.range(0, CONCURRENCY)
+					.flatMap(i -> loadGenerator.get().uri("/api/words").retrieve().toBodilessEntity(), CONCURRENCY)
+					.count()
+					.block();
+			// @formatter:on
+			Duration elapsed = Duration.ofNanos(System.nanoTime() - start);
+			recording.stop();
+
+			List<RecordedEvent> pinned = pinnedEvents(recording);
+			log.info("requests={}, servletThreads={}, resourceServerLatency={}ms", CONCURRENCY, SERVLET_THREADS,
+					RESOURCE_SERVER_LATENCY_MILLIS);
+			log.info("elapsed={}, peakInFlight={}, pinnedVirtualThreads={}", elapsed, peakInFlight.get(),
+					pinned.size());
+			pinned.stream().limit(1).forEach(event -> log.warn("Pinned virtual thread: {}", event.getStackTrace()));
+			assertThat(succeeded).isEqualTo(CONCURRENCY);
+			assertThat(peakInFlight.get()).isGreaterThan(SERVLET_THREADS * 10);
+			assertThat(pinned).isEmpty();
+		}
+		finally {
+			connectionProvider.dispose();
+		}
+	}
+
+	private static List<RecordedEvent> pinnedEvents(Recording recording) throws IOException {
+		Path file = Files.createTempFile("virtual-threads-load", ".jfr");
+		try {
+			recording.dump(file);
+			return RecordingFile.readAllEvents(file).stream()
+					.filter(event -> PINNED_EVENT.equals(event.getEventType().getName())).collect(Collectors.toList());
+		}
+		finally {
+			Files.delete(file);
+		}
+	}
+
+}
@@ -0,0 +1,115 @@
+package com.davidagood.spring.oauth.clientcredentials;
+
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.availability.ApplicationAvailability;
+import org.springframework.boot.availability.ReadinessState;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.davidagood.spring.oauth.clientcredentials.TestUtil.createJsonResponse;
+import static com.davidagood.spring.oauth.clientcredentials.TestUtil.createTokenResponse;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * The warm-up runs while the application starts, so each test starts its own application
+ * against a MockWebServer which is already running
+ */
+class WarmUpIT {
+
+	private static final int CONNECTIONS = 3;
+
+	private MockWebServer mockWebServer;
+
+	private final AtomicInteger tokenRequests = new AtomicInteger();
+
+	private final List<RecordedRequest> wordsRequests = new CopyOnWriteArrayList<>();
+
+	private volatile boolean tokenEndpointFails;
+
+	@BeforeEach
+	void setUp() throws IOException {
+		mockWebServer = new MockWebServer();
+		mockWebServer.setDispatcher(new Dispatcher() {
+			@Override
+			public MockResponse dispatch(RecordedRequest request) {
+				if ("/oauth/token".equals(request.getPath())) {
+					tokenRequests.incrementAndGet();
+					return tokenEndpointFails ? new MockResponse().setResponseCode(500)
+							: createTokenResponse("dummy-access-token", 3600);
+				}
+				wordsRequests.add(request);
+				return createJsonResponse("[\"speakers\",\"keyboard\"]");
+			}
+		});
+		mockWebServer.start();
+	}
+
+	@AfterEach
+	void tearDown() throws IOException {
+		mockWebServer.close();
+	}
+
+	@Test
+	void tokenAndConnectionsAreReadyBeforeTheApplicationIsReady() throws AuthorizationException {
+		try (ConfigurableApplicationContext context = start("warm-up.fallback=fail")) {
+			assertThat(tokenRequests).hasValue(1);
+			assertThat(wordsRequests).hasSize(CONNECTIONS);
+			assertThat(context.getBean(ApplicationAvailability.class).getReadinessState())
+					.isEqualTo(ReadinessState.ACCEPTING_TRAFFIC);
+
+			context.getBean(SecretWordsClient.class).getSecretWords();
+
+			assertThat(tokenRequests).hasValue(1);
+			assertThat(wordsRequests).hasSize(CONNECTIONS + 1);
+			// The sequence number is 0 for the first request on a new connection
+			assertThat(wordsRequests.get(CONNECTIONS).getSequenceNumber()).isPositive();
+		}
+	}
+
+	@Test
+	void startupFailsAfterTheDeadlineWithFailFallback() {
+		tokenEndpointFails = true;
+
+		assertThatThrownBy(() -> start("warm-up.fallback=fail").close())
+				.hasStackTraceContaining("Warm-up did not complete within PT1S");
+		assertThat(tokenRequests).hasValueGreaterThan(1);
+	}
+
+	@Test
+	void applicationIsReadyAfterTheDeadlineWithAcceptTrafficFallback() {
+		tokenEndpointFails = true;
+
+		try (ConfigurableApplicationContext context = start("warm-up.fallback=accept-traffic")) {
+			assertThat(context.getBean(ApplicationAvailability.class).getReadinessState())
+					.isEqualTo(ReadinessState.ACCEPTING_TRAFFIC);
+		}
+	}
+
+	private ConfigurableApplicationContext start(String fallback) {
+		// @formatter:off
+		return new SpringApplicationBuilder(SpringBootApp.class)
+				.run(
+						"--server.port=0",
+						"--secret-words-client.url=" + mockWebServer.url("/api/words"),
+						"--spring.security.oauth2.client.provider.my-client-provider.token-uri=" + mockWebServer.url("/oauth/token"),
+						"--warm-up.enabled=true",
+						"--warm-up.deadline=1s",
+						"--warm-up.retry-interval=100ms",
+						"--warm-up.connections=" + CONNECTIONS,
+						"--" + fallback);
+		// @formatter:on
+	}
+
+}
@@ -0,0 +1,179 @@
+package com.davidagood.spring.oauth.clientcredentials;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okio.Buffer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.web.server.LocalServerPort;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static com.davidagood.spring.oauth.clientcredentials.TestUtil.createJsonResponse;
+import static com.davidagood.spring.oauth.clientcredentials.TestUtil.createTokenResponse;
+import static com.davidagood.spring.oauth.clientcredentials.TestUtil.getFreePort;
+import static org.assertj.core.api.Assertions.assertThat;
+
+// Mirrors the server.compression settings of the main application.yml
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+		"server.compression.enabled=true",
+		"server.compression.mime-types=application/json,application/x-ndjson,application/x-jackson-smile,application/cbor",
+		"server.compression.min-response-size=2KB" })
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+class WireFormatsIT {
+
+	private static final int MOCK_SERVER_PORT = getFreePort();
+
+	private static final int WORD_COUNT = 1000;
+
+	private static final String WORDS = IntStream.range(0, WORD_COUNT).mapToObj(i -> "\"secret-word-" + i + "\"")
+			.collect(Collectors.joining(",", "[", "]"));
+
+	private static MockWebServer mockWebServer;
+
+	private final HttpClient httpClient = HttpClient.newHttpClient();
+
+	@LocalServerPort
+	int port;
+
+	@DynamicPropertySource
+	static void properties(DynamicPropertyRegistry r) {
+		r.add("secret-words-client.url", () -> "http://localhost:" + MOCK_SERVER_PORT);
+		r.add("spring.security.oauth2.client.provider.my-client-provider.token-uri",
+				() -> "http://localhost:" + MOCK_SERVER_PORT);
+	}
+
+	@BeforeEach
+	void setUp() throws IOException {
+		mockWebServer = new MockWebServer();
+		mockWebServer.start(MOCK_SERVER_PORT);
+	}
+
+	@AfterEach
+	void tearDown() throws IOException {
+		mockWebServer.close();
+	}
+
+	@Test
+	void resourceServerResponsesMayBeCompressed() throws Exception {
+		mockWebServer.enqueue(createTokenResponse("dummy-access-token", 3600));
+		mockWebServer.enqueue(compressedJsonResponse("gzip", gzip(WORDS)));
+		mockWebServer.enqueue(compressedJsonResponse("deflate", deflate(WORDS)));
+
+		for (int i = 0; i < 2; i++) {
+			HttpResponse<byte[]> response = getWords(MediaType.APPLICATION_JSON_VALUE, null);
+			assertThat(response.statusCode()).isEqualTo(200);
+			assertThat(new ObjectMapper().readTree(response.body()).get("words")).hasSize(WORD_COUNT);
+		}
+
+		mockWebServer.takeRequest();
+		assertThat(mockWebServer.takeRequest(5, TimeUnit.SECONDS).getHeader(HttpHeaders.ACCEPT_ENCODING))
+				.isEqualTo("gzip, deflate");
+	}
+
+	@Test
+	void largeResponsesAreCompressedForCallersWhichAcceptGzip() throws Exception {
+		mockWebServer.enqueue(createTokenResponse("dummy-access-token", 3600));
+		mockWebServer.enqueue(createJsonResponse(WORDS));
+
+		HttpResponse<byte[]> response = getWords(MediaType.APPLICATION_JSON_VALUE, "gzip");
+
+		assertThat(response.headers().firstValue(HttpHeaders.CONTENT_ENCODING)).hasValue("gzip");
+		byte[] json = gunzip(response.body());
+		assertThat(response.body().length).isLessThan(json.length / 4);
+		assertThat(new ObjectMapper().readTree(json).get("words")).hasSize(WORD_COUNT);
+	}
+
+	@Test
+	void smileAndCborAreProducedForCallersWhichAcceptThem() throws Exception {
+		mockWebServer.enqueue(createTokenResponse("dummy-access-token", 3600));
+		mockWebServer.enqueue(createJsonResponse(WORDS));
+		mockWebServer.enqueue(createJsonResponse(WORDS));
+
+		assertBinaryWords("application/x-jackson-smile", new ObjectMapper(new SmileFactory()));
+		assertBinaryWords("application/cbor", new ObjectMapper(new CBORFactory()));
+	}
+
+	@Test
+	void callersWhichAcceptAnythingGetJson() throws Exception {
+		mockWebServer.enqueue(createTokenResponse("dummy-access-token", 3600));
+		mockWebServer.enqueue(createJsonResponse(WORDS));
+
+		HttpResponse<byte[]> response = getWords(MediaType.ALL_VALUE, null);
+
+		assertThat(response.headers().firstValue(HttpHeaders.CONTENT_TYPE)).hasValue(MediaType.APPLICATION_JSON_VALUE);
+	}
+
+	private void assertBinaryWords(String mediaType, ObjectMapper objectMapper) throws Exception {
+		HttpResponse<byte[]> response = getWords(mediaType, null);
+		assertThat(response.headers().firstValue(HttpHeaders.CONTENT_TYPE)).hasValue(mediaType);
+		assertThat(response.headers().allValues(HttpHeaders.VARY))
+				.anySatisfy(vary -> assertThat(vary).containsIgnoringCase(HttpHeaders.ACCEPT));
+		JsonNode body = objectMapper.readTree(response.body());
+		assertThat(body.get("words")).hasSize(WORD_COUNT);
+		// The spring.jackson properties apply, so createdAt is not a timestamp
+		assertThat(body.get("createdAt").isTextual()).isTrue();
+	}
+
+	private HttpResponse<byte[]> getWords(String accept, String acceptEncoding) throws Exception {
+		HttpRequest.Builder request = HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/api/words"))
+				.header(HttpHeaders.ACCEPT, accept);
+		if (acceptEncoding != null) {
+			request.header(HttpHeaders.ACCEPT_ENCODING, acceptEncoding);
+		}
+		return httpClient.send(request.build(), HttpResponse.BodyHandlers.ofByteArray());
+	}
+
+	private static MockResponse compressedJsonResponse(String contentEncoding, byte[] body) {
+		return createJsonResponse("").setHeader(HttpHeaders.CONTENT_ENCODING, contentEncoding)
+				.setBody(new Buffer().write(body));
+	}
+
+	private static byte[] gzip(String body) throws IOException {
+		var bytes = new ByteArrayOutputStream();
+		try (var gzip = new GZIPOutputStream(bytes)) {
+			gzip.write(body.getBytes(StandardCharsets.UTF_8));
+		}
+		return bytes.toByteArray();
+	}
+
+	private static byte[] deflate(String body) throws IOException {
+		var bytes = new ByteArrayOutputStream();
+		try (var deflate = new DeflaterOutputStream(bytes)) {
+			deflate.write(body.getBytes(StandardCharsets.UTF_8));
+		}
+		return bytes.toByteArray();
+	}
+
+	private static byte[] gunzip(byte[] body) throws IOException {
+		try (InputStream gunzip = new GZIPInputStream(new ByteArrayInputStream(body))) {
+			return gunzip.readAllBytes();
+		}
+	}
+
+}